@@ -1,17 +1,27 @@
 package com.aiassist.ai.core.ai;
 
-import com.aiassist.ai.core.properties.PromptProperties;
+import com.aiassist.ai.core.config.PromptProvider;
+import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.agent.tool.ToolSpecifications;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.service.AiServices;
-import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.service.tool.DefaultToolExecutor;
+import dev.langchain4j.service.tool.ToolExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.nio.charset.StandardCharsets;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
+@Slf4j
 @Configuration
 public class AgentConfig {
 
@@ -21,15 +31,45 @@ public class AgentConfig {
                                    @Qualifier("chatMemoryProviderOpenAi") ChatMemoryProvider memoryProvider,
                                    @Qualifier("textTools") Object textTools,
                                    @Qualifier("grpcTools") Object grpcTools,
-                                   PromptProperties props) throws Exception {
-        String systemPrompt = props.getPath().getContentAsString(StandardCharsets.UTF_8);
+                                   PromptProvider promptProvider,
+                                   ParallelToolExecutor parallelToolExecutor) {
+        String systemPrompt = promptProvider.systemPrompt();
+        Map<ToolSpecification, ToolExecutor> tools = sortedTools(textTools, grpcTools);
+        // 请求前缀 = 工具定义 + 系统提示词，指纹在各实例间一致时服务端前缀缓存可跨实例命中
+        StringBuilder prefix = new StringBuilder();
+        tools.keySet().forEach(spec -> prefix.append(spec).append('\n'));
+        log.info("Agent 提示词前缀 - 工具数: {}, 指纹: {}", tools.size(),
+                PromptProvider.fingerprint(prefix.append(systemPrompt).toString()));
         return AiServices.builder(OpenAiAgent.class)
                 .chatModel(model)                       // 支持 chat(...)
                 .streamingChatModel(streamingModel)     // 支持 chatStream(...)
                 .chatMemoryProvider(memoryProvider)
-                .tools(textTools, grpcTools)
+                .tools(parallelToolExecutor.wrap(tools)) // 同一响应中的多个工具调用并行执行
                 .systemMessageProvider(ignored -> systemPrompt) // 外部化系统提示词
                 .build();
     }
 
+    /**
+     * 按工具名排序的工具定义
+     * <p>
+     * 反射返回的方法顺序不保证稳定，工具定义位于请求最前面，顺序变化会让整个提示词前缀无法命中缓存
+     */
+    private static Map<ToolSpecification, ToolExecutor> sortedTools(Object... toolObjects) {
+        Map<String, Map.Entry<ToolSpecification, ToolExecutor>> byName = new TreeMap<>();
+        for (Object toolObject : toolObjects) {
+            for (Method method : AopUtils.getTargetClass(toolObject).getDeclaredMethods()) {
+                if (!method.isAnnotationPresent(Tool.class)) {
+                    continue;
+                }
+                ToolSpecification spec = ToolSpecifications.toolSpecificationFrom(method);
+                if (byName.put(spec.name(), Map.entry(spec, new DefaultToolExecutor(toolObject, method))) != null) {
+                    throw new IllegalStateException("工具名重复: " + spec.name());
+                }
+            }
+        }
+        Map<ToolSpecification, ToolExecutor> tools = new LinkedHashMap<>();
+        byName.values().forEach(entry -> tools.put(entry.getKey(), entry.getValue()));
+        return tools;
+    }
+
 }
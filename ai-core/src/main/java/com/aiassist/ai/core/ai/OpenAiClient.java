@@ -20,11 +20,8 @@ public class OpenAiClient {
         String text = resp.aiMessage().text();
         TokenUsage usage = resp.tokenUsage();        // 可能为 null
 
+        // 用量由 ChatModelListener 统一记账，这里只打日志
         log.info("text={}, tokenUsage={}", text, usage);
-        if (usage != null) {
-            System.out.printf("prompt=%d, completion=%d, total=%d%n",
-                    usage.inputTokenCount(), usage.outputTokenCount(), usage.totalTokenCount());
-        }
         return resp;
     }
 
@@ -34,11 +31,8 @@ public class OpenAiClient {
         String text = resp.aiMessage().text();
         TokenUsage usage = resp.tokenUsage();        // 可能为 null
 
+        // 用量由 ChatModelListener 统一记账，这里只打日志
         log.info("text={}, tokenUsage={}", text, usage);
-        if (usage != null) {
-            System.out.printf("prompt=%d, completion=%d, total=%d%n",
-                    usage.inputTokenCount(), usage.outputTokenCount(), usage.totalTokenCount());
-        }
         return text;
     }
 }
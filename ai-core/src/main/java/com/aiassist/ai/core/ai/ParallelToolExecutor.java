@@ -0,0 +1,288 @@
+package com.aiassist.ai.core.ai;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.listener.ChatModelRequestContext;
+import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
+import dev.langchain4j.service.tool.ToolExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 工具并行执行
+ * <p>
+ * 模型一次返回多个工具调用时（例如两次 web_search 加一次 search_knowledge_base），LangChain4j 逐个串行执行。
+ * 这里包装 Agent 的每个 ToolExecutor：
+ * - 作为 ChatModelListener 观察模型响应，把同一条响应中的全部工具调用登记为一批；
+ * 按 ToolExecutionRequest 对象本身（而非模型返回的调用ID）登记，不同会话的调用ID相同也不会串批
+ * - 框架执行这一批的第一个工具时，整批提交到 toolTaskExecutor（与对话执行器分开，提交不阻塞，带 UserContext 传播）并行执行；
+ * 之后框架逐个取结果，尚未被线程池执行或被拒绝的任务由取结果的线程直接执行，对话占满执行器时也不会等待自己
+ * - 一批属于第一次执行它的会话（memoryId），其他会话的调用不会执行或读取这一批，改为自行串行执行
+ * - 每个工具单独计时，超时后取消并把超时说明作为工具结果返回给模型，不让整轮对话失败
+ * - 一轮对话（从用户消息开始的全部模型调用和工具调用）有总截止时间，一批结果取完后按工具调用ID交给下一次模型调用
+ * - 未登记的调用（单个工具、监听器未生效）保持原来的串行执行
+ * <p>
+ * 配置说明：
+ * - chat.tools.parallel.enable: 是否启用并行执行，默认true
+ * - chat.tools.parallel.tool-timeout-seconds: 单个工具超时（秒），默认30
+ * - chat.tools.parallel.turn-timeout-seconds: 一轮对话的工具截止时间（秒），默认120
+ */
+@Slf4j
+@Component
+public class ParallelToolExecutor implements ChatModelListener {
+
+    /**
+     * 本轮截止时间在请求上下文 attributes 中的键
+     */
+    private static final String DEADLINE_ATTRIBUTE = "parallel-tools.turn-deadline";
+
+    @Autowired
+    @Qualifier("toolTaskExecutor")
+    private AsyncTaskExecutor toolTaskExecutor;
+
+    @Value("${chat.tools.parallel.enable:true}")
+    private boolean enable;
+
+    @Value("${chat.tools.parallel.tool-timeout-seconds:30}")
+    private long toolTimeoutSeconds;
+
+    @Value("${chat.tools.parallel.turn-timeout-seconds:120}")
+    private long turnTimeoutSeconds;
+
+    /**
+     * 工具名 -> 原始执行器
+     */
+    private final Map<String, ToolExecutor> delegates = new ConcurrentHashMap<>();
+
+    /**
+     * 工具调用请求（按对象身份） -> 所属批次
+     */
+    private final Map<ToolExecutionRequest, ToolBatch> batches = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * 结果已全部取完的工具调用ID -> 本轮截止时间，供紧接着的下一次模型调用沿用
+     */
+    private final Map<String, Long> turnDeadlines = new ConcurrentHashMap<>();
+
+    /**
+     * 包装工具执行器，保持原有顺序
+     */
+    public Map<ToolSpecification, ToolExecutor> wrap(Map<ToolSpecification, ToolExecutor> tools) {
+        if (!enable) {
+            return tools;
+        }
+        Map<ToolSpecification, ToolExecutor> wrapped = new LinkedHashMap<>();
+        tools.forEach((spec, delegate) -> {
+            delegates.put(spec.name(), delegate);
+            wrapped.put(spec, (request, memoryId) -> execute(request, memoryId, delegate));
+        });
+        return wrapped;
+    }
+
+    @Override
+    public void onRequest(ChatModelRequestContext requestContext) {
+        if (!enable) {
+            return;
+        }
+        Long deadline = null;
+        List<ChatMessage> messages = requestContext.chatRequest().messages();
+        if (!messages.isEmpty() && messages.get(messages.size() - 1) instanceof ToolExecutionResultMessage result
+                && result.id() != null) {
+            // 工具结果回传给模型：沿用上一批所在轮次的截止时间
+            deadline = turnDeadlines.remove(result.id());
+        }
+        if (deadline == null) {
+            deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(turnTimeoutSeconds);
+        }
+        requestContext.attributes().put(DEADLINE_ATTRIBUTE, deadline);
+    }
+
+    @Override
+    public void onResponse(ChatModelResponseContext responseContext) {
+        if (!enable) {
+            return;
+        }
+        AiMessage aiMessage = responseContext.chatResponse().aiMessage();
+        if (aiMessage == null || !aiMessage.hasToolExecutionRequests() || aiMessage.toolExecutionRequests().size() < 2) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        sweep(now);
+        Object deadline = responseContext.attributes().get(DEADLINE_ATTRIBUTE);
+        List<ToolExecutionRequest> requests = aiMessage.toolExecutionRequests();
+        ToolBatch batch = new ToolBatch(requests, deadline instanceof Long value
+                ? value : now + TimeUnit.SECONDS.toMillis(turnTimeoutSeconds));
+        requests.forEach(request -> batches.put(request, batch));
+    }
+
+    private String execute(ToolExecutionRequest request, Object memoryId, ToolExecutor delegate) {
+        ToolBatch batch = batches.get(request);
+        if (batch == null) {
+            return delegate.execute(request, memoryId);
+        }
+        return batch.await(request, memoryId, delegate);
+    }
+
+    /**
+     * 清理异常中断（模型调用失败、流被取消）后未取完结果的批次与过期的截止时间
+     */
+    private void sweep(long now) {
+        long expireBefore = now - TimeUnit.SECONDS.toMillis(turnTimeoutSeconds + toolTimeoutSeconds);
+        synchronized (batches) {
+            batches.values().removeIf(batch -> {
+                if (batch.createdTime < expireBefore) {
+                    batch.cancelAll();
+                    return true;
+                }
+                return false;
+            });
+        }
+        turnDeadlines.values().removeIf(deadline -> deadline < expireBefore);
+    }
+
+    /**
+     * 同一条模型响应中的一批工具调用
+     */
+    private final class ToolBatch {
+        private final List<ToolExecutionRequest> requests;
+        private final long deadline;
+        private final long createdTime = System.currentTimeMillis();
+        private final Map<ToolExecutionRequest, FutureTask<String>> tasks = new IdentityHashMap<>();
+        private boolean started;
+        private Object owner;
+        private long startedTime;
+        private int remaining;
+
+        ToolBatch(List<ToolExecutionRequest> requests, long deadline) {
+            this.requests = requests;
+            this.deadline = deadline;
+            // 模型编造的工具名不会经过包装的执行器，不计入待取结果数
+            this.remaining = (int) requests.stream().filter(request -> delegates.containsKey(request.name())).count();
+        }
+
+        /**
+         * 整批提交到线程池，只在第一次取结果时执行一次，执行者即这一批的所属会话
+         *
+         * @return memoryId 是否为这一批的所属会话
+         */
+        private synchronized boolean start(Object memoryId) {
+            if (started) {
+                return Objects.equals(owner, memoryId);
+            }
+            started = true;
+            owner = memoryId;
+            startedTime = System.currentTimeMillis();
+            if (startedTime >= deadline) {
+                return true;
+            }
+            int submitted = 0;
+            for (ToolExecutionRequest request : requests) {
+                ToolExecutor delegate = delegates.get(request.name());
+                if (delegate == null) {
+                    // 模型编造的工具名由框架处理，不会走到这里取结果
+                    continue;
+                }
+                FutureTask<String> task = new FutureTask<>(() -> delegate.execute(request, memoryId));
+                tasks.put(request, task);
+                try {
+                    toolTaskExecutor.execute(task);
+                    submitted++;
+                } catch (RejectedExecutionException e) {
+                    // 留在 tasks 中，取结果时由调用线程执行
+                    log.warn("工具执行器已满，改为串行执行 - 工具: {}, id: {}", request.name(), request.id());
+                }
+            }
+            log.info("并行执行工具 - memoryId: {}, 数量: {}, 已提交: {}", memoryId, requests.size(), submitted);
+            return true;
+        }
+
+        String await(ToolExecutionRequest request, Object memoryId, ToolExecutor delegate) {
+            if (!start(memoryId)) {
+                log.warn("工具调用不属于该批次的会话，改为串行执行 - 工具: {}, id: {}, memoryId: {}",
+                        request.name(), request.id(), memoryId);
+                return delegate.execute(request, memoryId);
+            }
+            try {
+                return collect(request);
+            } finally {
+                completeOne();
+            }
+        }
+
+        private String collect(ToolExecutionRequest request) {
+            FutureTask<String> task;
+            synchronized (this) {
+                task = tasks.get(request);
+            }
+            if (task == null) {
+                // 批次开始时已超过本轮截止时间
+                return timeoutResult(request);
+            }
+            // 线程池尚未执行（排队中或被拒绝）时由当前线程执行；已在执行或已完成时 run() 直接返回
+            task.run();
+            long left = Math.min(startedTime + TimeUnit.SECONDS.toMillis(toolTimeoutSeconds), deadline)
+                    - System.currentTimeMillis();
+            try {
+                return task.isDone() ? task.get() : task.get(Math.max(left, 0), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                task.cancel(true);
+                return timeoutResult(request);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.warn("工具执行失败 - 工具: {}, id: {}", request.name(), request.id(), cause);
+                return "工具执行失败: " + cause.getMessage();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                task.cancel(true);
+                throw new RuntimeException("工具执行被中断", e);
+            }
+        }
+
+        private String timeoutResult(ToolExecutionRequest request) {
+            log.warn("工具执行超时 - 工具: {}, id: {}", request.name(), request.id());
+            return "工具 " + request.name() + " 执行超时，未返回结果";
+        }
+
+        /**
+         * 一个结果已取走；全部取完后移除登记，截止时间交给下一次模型调用
+         */
+        private void completeOne() {
+            synchronized (this) {
+                if (--remaining > 0) {
+                    return;
+                }
+            }
+            requests.forEach(request -> {
+                batches.remove(request);
+                if (request.id() != null) {
+                    turnDeadlines.put(request.id(), deadline);
+                }
+            });
+        }
+
+        synchronized void cancelAll() {
+            tasks.values().forEach(task -> task.cancel(true));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.aiassist.ai.core.config;
+
+import com.aiassist.ai.core.entity.Conversation;
+import com.aiassist.ai.core.entity.Message;
+import com.aiassist.ai.core.entity.ToolResultRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+/**
+ * MongoDB 查询依赖的索引
+ * <p>
+ * Spring Boot 默认不根据 @Indexed / @CompoundIndex 自动建索引（auto-index-creation=false），
+ * 查询路径依赖的索引在启动时显式确保存在；索引已存在时为空操作
+ */
+@Slf4j
+@Configuration
+public class MongoIndexConfiguration {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        try {
+            // 会话列表 keyset 分页：user_ip 等值 + (created_time, _id) 倒序
+            mongoTemplate.indexOps(Conversation.class).createIndex(new Index()
+                    .on("user_ip", Sort.Direction.ASC)
+                    .on("created_time", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC)
+                    .named("user_ip_created_time_id"));
+            // 后台清理：查找已软删除的会话
+            mongoTemplate.indexOps(Conversation.class).createIndex(new Index()
+                    .on("deleted_at", Sort.Direction.ASC)
+                    .sparse()
+                    .named("deleted_at"));
+            // 消息历史 keyset 分页：memory_id 等值 + turn_index 倒序
+            mongoTemplate.indexOps(Message.class).createIndex(new Index()
+                    .on("memory_id", Sort.Direction.ASC)
+                    .on("turn_index", Sort.Direction.DESC)
+                    .named("memory_id_turn_index"));
+            // 会话清理时按 memory_id 删除压缩前的工具结果
+            mongoTemplate.indexOps(ToolResultRecord.class).createIndex(new Index()
+                    .on("memory_id", Sort.Direction.ASC)
+                    .named("memory_id"));
+            log.info("MongoDB 索引检查完成");
+        } catch (Exception e) {
+            log.warn("创建 MongoDB 索引失败，查询将退化为全集合扫描: {}", e.getMessage());
+        }
+    }
+}
@@ -11,27 +11,60 @@ import org.springframework.util.StreamUtils;
 
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
+/**
+ * 系统提示词的唯一来源
+ * <p>
+ * AgentConfig 的 systemMessageProvider 与 MongoChatMemoryStore 中缓存的第一条 SystemMessage 都取自这里，
+ * 保证每次请求的提示词前缀逐字节一致，服务端的前缀缓存（prompt caching）才能命中：
+ * - 启动时读取一次并规范化（统一换行为 \n、去掉首尾空白），不同平台检出的文件得到相同内容
+ * - 日志输出提示词指纹，多实例部署时可据此确认各实例的前缀一致
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class PromptProvider {
     private final PromptProperties promptProperties;
     private String prompt; // 缓存内容，避免每次 IO
+    private SystemMessage systemMessage;
 
     @PostConstruct
     void init() {
         Resource res = promptProperties.getPath();
         try (InputStream in = res.getInputStream()) {
-            this.prompt = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
-            log.info("Loaded prompt from {}", res);
+            this.prompt = normalize(StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+            log.info("Loaded prompt from {}, fingerprint: {}", res, fingerprint(prompt));
         } catch (Exception e) {
             log.warn("Failed to load prompt from {}. Using default.", res, e);
             this.prompt = "你是一个专业的助手，能够帮助用户解答相关问题。";
         }
+        this.systemMessage = SystemMessage.from(prompt);
     }
 
     public SystemMessage systemMessage() {
-        return SystemMessage.from(prompt);
+        return systemMessage;
+    }
+
+    public String systemPrompt() {
+        return prompt;
+    }
+
+    static String normalize(String text) {
+        return text.replace("\r\n", "\n").replace('\r', '\n').strip();
+    }
+
+    /**
+     * 文本的 SHA-256 指纹（前12位十六进制），用于日志比对
+     */
+    public static String fingerprint(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
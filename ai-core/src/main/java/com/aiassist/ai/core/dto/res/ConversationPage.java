@@ -0,0 +1,23 @@
+package com.aiassist.ai.core.dto.res;
+
+import com.aiassist.ai.core.entity.Conversation;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 会话列表的一页（游标分页）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationPage {
+
+    private List<Conversation> conversations; // 本页会话（仅列表所需字段）
+    private String nextCursor; // 下一页游标，没有更多时为 null
+    private boolean hasMore; // 是否还有下一页
+}
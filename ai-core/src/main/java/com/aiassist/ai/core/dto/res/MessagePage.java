@@ -0,0 +1,23 @@
+package com.aiassist.ai.core.dto.res;
+
+import com.aiassist.ai.core.entity.Message;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 会话消息的一页（按 turn_index 倒序的游标分页）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessagePage {
+
+    private List<Message> messages; // 本页消息
+    private Integer nextCursor; // 下一页游标（本页最小的 turn_index），没有更多时为 null
+    private boolean hasMore; // 是否还有下一页
+}
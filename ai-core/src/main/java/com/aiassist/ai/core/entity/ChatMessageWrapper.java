@@ -1,6 +1,10 @@
 package com.aiassist.ai.core.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.SystemMessage;
@@ -13,7 +17,9 @@ import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * ChatMessage 包装类，用于 Redis 缓存
@@ -59,10 +65,22 @@ public class ChatMessageWrapper {
     @NoArgsConstructor
     @AllArgsConstructor
     public static class SerializableMessage {
+
+        /**
+         * 一次返回多个工具调用时的存储前缀，后接 JSON 数组 [{id, name, arguments}]
+         */
+        public static final String MULTI_TOOL_CALL_PREFIX = "TOOL_CALLS|";
+
+        private static final ObjectMapper TOOL_CALL_MAPPER = new ObjectMapper();
+
         private MessageType type;
         private String content;
         private int turnIndex;
         private LocalDateTime timestamp;
+        /**
+         * 消息的 token 数（按 token 预算裁剪窗口时首次计算后缓存，旧缓存中为空）
+         */
+        private Integer tokenCount;
 
         public enum MessageType {
             USER,           // 用户消息
@@ -90,15 +108,9 @@ public class ChatMessageWrapper {
                     message.setType(MessageType.AI);
                     message.setContent(aiMessage.text());
                 } else if (aiMessage.hasToolExecutionRequests()) {
-                    // 如果有工具调用，设置为TOOL_CALL类型
+                    // 如果有工具调用，设置为TOOL_CALL类型，存储完整的工具调用信息，包括ID
                     message.setType(MessageType.TOOL_CALL);
-                    String toolName = aiMessage.toolExecutionRequests().get(0).name();
-                    String toolArgs = aiMessage.toolExecutionRequests().get(0).arguments();
-                    String toolId = aiMessage.toolExecutionRequests().get(0).id();
-                    // 存储完整的工具调用信息，包括ID
-                    String toolCallInfo = String.format("TOOL_CALL|ID:%s|NAME:%s|ARGS:%s",
-                            toolId, toolName, toolArgs);
-                    message.setContent(toolCallInfo);
+                    message.setContent(formatToolCalls(aiMessage.toolExecutionRequests()));
                 } else {
                     // 如果既没有文本也没有工具调用，使用默认内容
                     message.setType(MessageType.AI);
@@ -130,7 +142,10 @@ public class ChatMessageWrapper {
                     return AiMessage.from(content);
                 case TOOL_CALL:
                     // 处理工具调用信息
-                    if (content.startsWith("TOOL_CALL|")) {
+                    if (content.startsWith(MULTI_TOOL_CALL_PREFIX)) {
+                        AiMessage multiToolCall = parseMultiToolCalls(content);
+                        return multiToolCall != null ? multiToolCall : AiMessage.from("AI正在处理您的请求...");
+                    } else if (content.startsWith("TOOL_CALL|")) {
                         // 解析工具调用信息并重建AI消息
                         String[] parts = content.split("\\|");
                         String id = null;
@@ -168,7 +183,8 @@ public class ChatMessageWrapper {
                 case TOOL_RESULT:
                     // 解析工具执行结果信息
                     if (content.startsWith("ID:") && content.contains("|NAME:") && content.contains("|RESULT:")) {
-                        String[] parts = content.split("\\|");
+                        // 结果正文本身可能包含 |，只拆出前两段
+                        String[] parts = content.split("\\|", 3);
                         String id = parts[0].substring(3); // 去掉 "ID:"
                         String name = parts[1].substring(5); // 去掉 "NAME:"
                         String result = parts[2].substring(7); // 去掉 "RESULT:"
@@ -181,6 +197,52 @@ public class ChatMessageWrapper {
                     throw new IllegalArgumentException("Unknown message type: " + type);
             }
         }
+
+        /**
+         * 格式化工具调用：单个调用沿用 TOOL_CALL|ID|NAME|ARGS 格式，多个调用以 JSON 数组整体保存
+         */
+        public static String formatToolCalls(List<ToolExecutionRequest> requests) {
+            if (requests.size() == 1) {
+                ToolExecutionRequest request = requests.get(0);
+                return String.format("TOOL_CALL|ID:%s|NAME:%s|ARGS:%s",
+                        request.id(), request.name(), request.arguments());
+            }
+            List<Map<String, String>> calls = new ArrayList<>(requests.size());
+            for (ToolExecutionRequest request : requests) {
+                Map<String, String> call = new LinkedHashMap<>();
+                call.put("id", request.id());
+                call.put("name", request.name());
+                call.put("arguments", request.arguments());
+                calls.add(call);
+            }
+            try {
+                return MULTI_TOOL_CALL_PREFIX + TOOL_CALL_MAPPER.writeValueAsString(calls);
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("工具调用序列化失败", e);
+            }
+        }
+
+        /**
+         * 解析多个工具调用，格式错误时返回 null
+         */
+        public static AiMessage parseMultiToolCalls(String content) {
+            try {
+                List<Map<String, String>> calls = TOOL_CALL_MAPPER.readValue(
+                        content.substring(MULTI_TOOL_CALL_PREFIX.length()), new TypeReference<>() {
+                        });
+                List<ToolExecutionRequest> requests = new ArrayList<>(calls.size());
+                for (Map<String, String> call : calls) {
+                    requests.add(ToolExecutionRequest.builder()
+                            .id(call.get("id"))
+                            .name(call.get("name"))
+                            .arguments(call.get("arguments"))
+                            .build());
+                }
+                return requests.isEmpty() ? null : AiMessage.from(requests);
+            } catch (JsonProcessingException e) {
+                return null;
+            }
+        }
     }
 
     /**
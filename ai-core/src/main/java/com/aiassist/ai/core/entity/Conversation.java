@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -19,6 +20,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "conversations")
+@CompoundIndex(name = "user_ip_created_time_id", def = "{'user_ip': 1, 'created_time': -1, '_id': -1}")
 public class Conversation {
 
     @Id
@@ -58,6 +60,37 @@ public class Conversation {
     @Field("last_send_time")
     @Indexed
     private LocalDateTime lastSendTime;
+
+    /**
+     * 软删除时间，非空表示已删除、等待后台清理消息（ConversationReaper）
+     */
+    @Field("deleted_at")
+    @Indexed(sparse = true)
+    private LocalDateTime deletedAt;
+
+    /**
+     * 归档时间，非空表示消息已移入 message_archives（MessageArchiveService）
+     */
+    @Field("archived_at")
+    private LocalDateTime archivedAt;
+
+    /**
+     * 最近一次从归档回迁的时间，用于避免刚回迁的会话被立即重新归档
+     */
+    @Field("rehydrated_at")
+    private LocalDateTime rehydratedAt;
+
+    /**
+     * 已移出上下文窗口的消息的滚动摘要（summary 记忆模式）
+     */
+    @Field("summary")
+    private String summary;
+
+    /**
+     * 摘要已覆盖到的 turn_index（含）
+     */
+    @Field("summary_turn_index")
+    private Integer summaryTurnIndex;
 }
 
 
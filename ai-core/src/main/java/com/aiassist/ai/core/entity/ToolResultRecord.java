@@ -0,0 +1,62 @@
+package com.aiassist.ai.core.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * 压缩前的完整工具结果（tool_results 集合）
+ * <p>
+ * 记忆与 messages 集合中只保留摘录和引用ID（即本文档 _id），完整内容按需通过 read_tool_result 工具分段读取
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "tool_results")
+public class ToolResultRecord {
+
+    /**
+     * 引用ID：{memoryId}-{turnIndex}，同一条工具结果重复压缩时覆盖写入
+     */
+    @Id
+    private String id;
+
+    @Field("memory_id")
+    @Indexed
+    private String memoryId;
+
+    @Field("turn_index")
+    private Integer turnIndex;
+
+    /**
+     * 工具调用ID（对应 TOOL_CALL 中的 ID）
+     */
+    @Field("tool_call_id")
+    private String toolCallId;
+
+    @Field("tool_name")
+    private String toolName;
+
+    /**
+     * 完整结果文本
+     */
+    @Field("content")
+    private String content;
+
+    /**
+     * 完整结果长度（字符）
+     */
+    @Field("length")
+    private Integer length;
+
+    @Field("created_time")
+    private LocalDateTime createdTime;
+}
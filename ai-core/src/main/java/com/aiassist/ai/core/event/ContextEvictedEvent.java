@@ -0,0 +1,30 @@
+package com.aiassist.ai.core.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 消息移出上下文窗口事件
+ * <p>
+ * 由 MongoChatMemoryStore 在滑动窗口淘汰消息时发布（仅 summary 记忆模式），
+ * 供 ConversationSummaryService 在后台把移出窗口的消息合并进会话摘要
+ */
+@Getter
+public class ContextEvictedEvent extends ApplicationEvent {
+
+    /**
+     * 对话ID
+     */
+    private final String memoryId;
+
+    /**
+     * 已移出窗口的最大 turn_index（该值及之前的消息不再出现在上下文中）
+     */
+    private final int evictedUpToTurnIndex;
+
+    public ContextEvictedEvent(Object source, String memoryId, int evictedUpToTurnIndex) {
+        super(source);
+        this.memoryId = memoryId;
+        this.evictedUpToTurnIndex = evictedUpToTurnIndex;
+    }
+}
@@ -0,0 +1,76 @@
+package com.aiassist.ai.core.event;
+
+import com.aiassist.ai.core.entity.Conversation;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.time.LocalDateTime;
+
+/**
+ * 会话元信息变更事件
+ * <p>
+ * 会话的创建、改名、删除以及最后发送时间的更新都会发布该事件，
+ * 由 ConversationCacheService 订阅并同步更新/失效 Redis 中的会话缓存
+ */
+@Getter
+public class ConversationChangedEvent extends ApplicationEvent {
+
+    public enum Type {
+        CREATED, RENAMED, TOUCHED, DELETED
+    }
+
+    private final Type type;
+
+    /**
+     * 对话ID
+     */
+    private final String memoryId;
+
+    /**
+     * 会话所属用户 IP（RENAMED / TOUCHED 时可能为空）
+     */
+    private final String userIp;
+
+    /**
+     * 新建的会话（仅 CREATED）
+     */
+    private final Conversation conversation;
+
+    /**
+     * 新标题（仅 RENAMED）
+     */
+    private final String title;
+
+    /**
+     * 最后发送时间（仅 TOUCHED）
+     */
+    private final LocalDateTime lastSendTime;
+
+    private ConversationChangedEvent(Object source, Type type, String memoryId, String userIp,
+                                     Conversation conversation, String title, LocalDateTime lastSendTime) {
+        super(source);
+        this.type = type;
+        this.memoryId = memoryId;
+        this.userIp = userIp;
+        this.conversation = conversation;
+        this.title = title;
+        this.lastSendTime = lastSendTime;
+    }
+
+    public static ConversationChangedEvent created(Object source, Conversation conversation) {
+        return new ConversationChangedEvent(source, Type.CREATED, conversation.getMemoryId(), conversation.getUserIp(),
+                conversation, null, null);
+    }
+
+    public static ConversationChangedEvent renamed(Object source, String memoryId, String title) {
+        return new ConversationChangedEvent(source, Type.RENAMED, memoryId, null, null, title, null);
+    }
+
+    public static ConversationChangedEvent touched(Object source, String memoryId, LocalDateTime lastSendTime) {
+        return new ConversationChangedEvent(source, Type.TOUCHED, memoryId, null, null, null, lastSendTime);
+    }
+
+    public static ConversationChangedEvent deleted(Object source, String memoryId, String userIp) {
+        return new ConversationChangedEvent(source, Type.DELETED, memoryId, userIp, null, null, null);
+    }
+}
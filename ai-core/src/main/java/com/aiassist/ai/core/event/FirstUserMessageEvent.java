@@ -0,0 +1,30 @@
+package com.aiassist.ai.core.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 会话首条 USER 消息已持久化事件
+ * <p>
+ * 由 MongoChatMemoryStore 在 turn_index=1 的 USER 消息入库后发布，
+ * 供标题生成等后台任务订阅，避免 Store 直接依赖上层服务
+ */
+@Getter
+public class FirstUserMessageEvent extends ApplicationEvent {
+
+    /**
+     * 对话ID
+     */
+    private final String memoryId;
+
+    /**
+     * 用户首条消息内容
+     */
+    private final String userMessage;
+
+    public FirstUserMessageEvent(Object source, String memoryId, String userMessage) {
+        super(source);
+        this.memoryId = memoryId;
+        this.userMessage = userMessage;
+    }
+}
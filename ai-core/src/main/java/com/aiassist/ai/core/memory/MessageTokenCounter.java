@@ -0,0 +1,55 @@
+package com.aiassist.ai.core.memory;
+
+import com.aiassist.ai.core.entity.ChatMessageWrapper;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.openai.OpenAiChatModelName;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 记忆消息的 token 计数
+ * <p>
+ * - 使用与对话模型一致的分词器（jtokkit）本地计算，不调用远程接口
+ * - 计数结果缓存在 {@link ChatMessageWrapper.SerializableMessage#getTokenCount()} 中，随缓存写回 Redis，每条消息只计算一次
+ * - 模型名不在分词器的已知列表中（如代理转发的自定义模型）时，退回 gpt-4o-mini 的编码
+ */
+@Slf4j
+@Component
+public class MessageTokenCounter {
+
+    @Value("${langchain4j.open-ai.chat-model.model-name:gpt-4o-mini}")
+    private String modelName;
+
+    private TokenCountEstimator estimator;
+
+    @PostConstruct
+    void init() {
+        try {
+            estimator = new OpenAiTokenCountEstimator(modelName);
+        } catch (IllegalArgumentException e) {
+            log.warn("未识别的模型 {}，token 计数使用 {} 的编码", modelName, OpenAiChatModelName.GPT_4_O_MINI);
+            estimator = new OpenAiTokenCountEstimator(OpenAiChatModelName.GPT_4_O_MINI);
+        }
+    }
+
+    /**
+     * 缓存消息的 token 数，首次调用时计算并写入消息
+     */
+    public int count(ChatMessageWrapper.SerializableMessage message) {
+        Integer cached = message.getTokenCount();
+        if (cached != null) {
+            return cached;
+        }
+        int tokens = estimate(message.toChatMessage());
+        message.setTokenCount(tokens);
+        return tokens;
+    }
+
+    public int estimate(ChatMessage message) {
+        return estimator.estimateTokenCountInMessage(message);
+    }
+}
@@ -1,5 +1,6 @@
 package com.aiassist.ai.core.memory;
 
+import com.aiassist.ai.core.service.ConversationSummaryService;
 import com.aiassist.ai.core.store.MongoChatMemoryStore;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
@@ -21,12 +22,21 @@ public class MongoChatMemoryConfiguration {
     @Autowired
     private MongoChatMemoryStore mongoChatMemoryStore;
 
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
     /**
      * LangChain框架控制的窗口大小，设置为较大值使其失效
      */
     @Value("${chat.langchain.max-size:10}")
     private int langchainMaxSize;
 
+    /**
+     * 窗口裁剪方式，tokens 模式下窗口完全由 MongoChatMemoryStore 按 token 预算控制
+     */
+    @Value("${chat.memory.window-mode:messages}")
+    private String windowMode;
+
     /**
      * 是否启用MongoDB持久化，可通过配置文件控制
      */
@@ -46,6 +56,9 @@ public class MongoChatMemoryConfiguration {
      * 配置说明：
      * - chat.memory.max-messages: 最大消息数量，默认10
      * - chat.memory.enable-mongodb: 是否启用MongoDB存储，默认true
+     * - chat.memory.window-mode: messages（按条数）或 tokens（按 token 预算，框架窗口不再限制条数）
+     * - chat.memory.mode=summary 时框架窗口多留一条：会话摘要作为第二条 SystemMessage 注入，
+     *   MessageWindowChatMemory 超出窗口时优先淘汰第二条消息，不多留的话摘要会最先被淘汰
      * <p>
      * 设计说明：
      * - 所有聊天接口（包括ChatMemoryController）都通过此Provider统一管理记忆
@@ -54,7 +67,16 @@ public class MongoChatMemoryConfiguration {
      */
     @Bean("chatMemoryProviderOpenAi")
     public ChatMemoryProvider chatMemoryProviderOpenAi() {
-        log.info("初始化统一ChatMemory配置 - MongoDB存储: {}, LangChain框架窗口: {}", enableMongoDbStorage, langchainMaxSize);
+        int maxMessages;
+        if (MongoChatMemoryStore.WINDOW_MODE_TOKENS.equalsIgnoreCase(windowMode)) {
+            maxMessages = Integer.MAX_VALUE;
+        } else if (conversationSummaryService.isEnabled()) {
+            maxMessages = langchainMaxSize + 1;
+        } else {
+            maxMessages = langchainMaxSize;
+        }
+        log.info("初始化统一ChatMemory配置 - MongoDB存储: {}, 窗口模式: {}, LangChain框架窗口: {}",
+                enableMongoDbStorage, windowMode, maxMessages);
 
         if (enableMongoDbStorage) {
             // 使用MongoDB持久化存储 + 消息窗口限制
@@ -62,7 +84,7 @@ public class MongoChatMemoryConfiguration {
                 log.debug("创建MongoDB持久化ChatMemory: memoryId={}", memoryId);
                 return MessageWindowChatMemory.builder()
                         .id(memoryId)
-                        .maxMessages(langchainMaxSize)
+                        .maxMessages(maxMessages)
                         .chatMemoryStore(mongoChatMemoryStore)
                         .build();
             };
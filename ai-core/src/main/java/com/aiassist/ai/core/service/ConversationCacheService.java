@@ -0,0 +1,321 @@
+package com.aiassist.ai.core.service;
+
+import com.aiassist.ai.core.entity.Conversation;
+import com.aiassist.ai.core.event.ConversationChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 会话元信息缓存（Redis，多实例共享）
+ * <p>
+ * - chat:conversation:{memoryId}：Hash，会话元信息（id、userIp、title、createdTime、lastSendTime）
+ * - chat:conversation:ip:{userIp}：String，该用户全部会话的 memoryId（逗号分隔，空串表示没有会话）
+ * <p>
+ * 失效由 {@link ConversationChangedEvent} 驱动：创建时写入会话并删除用户列表，改名与发送消息只就地更新 Hash 中的单个字段
+ * （Key 不存在时不写，避免留下残缺的 Hash），删除时移除会话与用户列表。缓存在 Redis 中，任一实例的写操作对所有实例立即可见
+ * <p>
+ * 列表在构建期间若有新会话创建，可能短暂缺少该会话，最长持续一个 TTL；会话数超过上限的用户不缓存列表，直接查库
+ * <p>
+ * Redis 不可用时所有读操作退回 loader 查库
+ * <p>
+ * 配置说明：
+ * - chat.conversation-cache.enable: 是否启用，默认true
+ * - chat.conversation-cache.ttl-minutes: 缓存有效期（分钟），默认30
+ * - chat.conversation-cache.max-list-size: 缓存列表的用户会话数上限，默认500
+ */
+@Slf4j
+@Service
+public class ConversationCacheService {
+
+    private static final String CONVERSATION_KEY_PREFIX = "chat:conversation:";
+
+    private static final String USER_LIST_KEY_PREFIX = "chat:conversation:ip:";
+
+    /**
+     * Key 存在时才更新单个字段
+     */
+    private static final DefaultRedisScript<Long> HSET_IF_EXISTS_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * 会话列表的排序（与 Mongo 分页一致：created_time 倒序，_id 倒序）
+     */
+    static final Comparator<Conversation> LIST_ORDER = Comparator
+            .comparing(Conversation::getCreatedTime, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Conversation::getId, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${chat.conversation-cache.enable:true}")
+    private boolean enable;
+
+    @Value("${chat.conversation-cache.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Value("${chat.conversation-cache.max-list-size:500}")
+    private int maxListSize;
+
+    public boolean isEnabled() {
+        return enable;
+    }
+
+    /**
+     * 读取会话，未命中时用 loader 查库并回填（查不到不缓存）
+     */
+    public Conversation get(String memoryId, Function<String, Conversation> loader) {
+        if (!enable) {
+            return loader.apply(memoryId);
+        }
+        Conversation cached = peek(memoryId);
+        if (cached != null) {
+            return cached;
+        }
+        Conversation conversation = loader.apply(memoryId);
+        put(conversation);
+        return conversation;
+    }
+
+    /**
+     * 只查缓存，不查库；未命中或 Redis 不可用时返回 null
+     */
+    public Conversation peek(String memoryId) {
+        if (!enable) {
+            return null;
+        }
+        try {
+            Map<Object, Object> hash = stringRedisTemplate.opsForHash().entries(conversationKey(memoryId));
+            return hash.isEmpty() ? null : fromHash(memoryId, hash);
+        } catch (Exception e) {
+            log.warn("读取会话缓存失败 - memoryId: {}, {}", memoryId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入单个会话
+     */
+    public void put(Conversation conversation) {
+        if (!enable || conversation == null || conversation.getMemoryId() == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                writeConversation((StringRedisConnection) connection, conversation);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("写入会话缓存失败 - memoryId: {}, {}", conversation.getMemoryId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 读取用户的全部会话（按 created_time、_id 倒序）
+     *
+     * @param loader 查库：(userIp, limit) -> 会话列表，limit 为列表上限 + 1，用于判断是否超过上限
+     * @return 会话列表；未启用、Redis 不可用或会话数超过上限时返回 null，由调用方直接查库
+     */
+    public List<Conversation> getUserConversations(String userIp, BiFunction<String, Integer, List<Conversation>> loader) {
+        if (!enable) {
+            return null;
+        }
+        try {
+            String ids = stringRedisTemplate.opsForValue().get(userListKey(userIp));
+            if (ids != null) {
+                List<Conversation> cached = hydrate(ids);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取会话列表缓存失败 - IP: {}, {}", userIp, e.getMessage());
+            return null;
+        }
+
+        List<Conversation> conversations = loader.apply(userIp, maxListSize + 1);
+        if (conversations.size() > maxListSize) {
+            return null;
+        }
+        List<Conversation> sorted = new ArrayList<>(conversations.size());
+        conversations.forEach(conversation -> sorted.add(normalize(conversation)));
+        sorted.sort(LIST_ORDER);
+        try {
+            String joined = String.join(",", sorted.stream().map(Conversation::getMemoryId).toList());
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                sorted.forEach(conversation -> writeConversation(conn, conversation));
+                conn.setEx(userListKey(userIp), ttlSeconds(), joined);
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("写入会话列表缓存失败 - IP: {}, {}", userIp, e.getMessage());
+        }
+        return sorted;
+    }
+
+    /**
+     * 会话变更时同步缓存
+     */
+    @EventListener
+    public void onConversationChanged(ConversationChangedEvent event) {
+        if (!enable) {
+            return;
+        }
+        String memoryId = event.getMemoryId();
+        try {
+            switch (event.getType()) {
+                case CREATED -> {
+                    put(event.getConversation());
+                    evictUserList(event.getUserIp());
+                }
+                case RENAMED -> setFieldIfCached(memoryId, "title", event.getTitle());
+                case TOUCHED -> setFieldIfCached(memoryId, "lastSendTime",
+                        event.getLastSendTime().truncatedTo(ChronoUnit.MILLIS).toString());
+                case DELETED -> {
+                    String userIp = event.getUserIp();
+                    if (userIp == null) {
+                        Object cachedIp = stringRedisTemplate.opsForHash().get(conversationKey(memoryId), "userIp");
+                        userIp = cachedIp == null ? null : cachedIp.toString();
+                    }
+                    stringRedisTemplate.delete(conversationKey(memoryId));
+                    evictUserList(userIp);
+                }
+            }
+        } catch (Exception e) {
+            // 更新失败时删除该会话，宁可多一次查库也不返回旧数据
+            log.warn("同步会话缓存失败 - memoryId: {}, 事件: {}, {}", memoryId, event.getType(), e.getMessage());
+            try {
+                stringRedisTemplate.delete(conversationKey(memoryId));
+                evictUserList(event.getUserIp());
+            } catch (Exception ignored) {
+                // Redis 不可用时由 TTL 兜底
+            }
+        }
+    }
+
+    // ==================== 私有辅助方法 ====================
+
+    /**
+     * 按 memoryId 列表批量读取会话；任一会话缺失时返回 null，整体重建
+     */
+    private List<Conversation> hydrate(String ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] memoryIds = ids.split(",");
+        List<Object> hashes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String memoryId : memoryIds) {
+                conn.hGetAll(conversationKey(memoryId));
+            }
+            return null;
+        });
+        List<Conversation> conversations = new ArrayList<>(memoryIds.length);
+        for (int i = 0; i < memoryIds.length; i++) {
+            Object hash = hashes.get(i);
+            if (!(hash instanceof Map<?, ?> map) || map.isEmpty()) {
+                return null;
+            }
+            conversations.add(fromHash(memoryIds[i], map));
+        }
+        return conversations;
+    }
+
+    private void setFieldIfCached(String memoryId, String field, String value) {
+        if (memoryId == null || value == null) {
+            return;
+        }
+        stringRedisTemplate.execute(HSET_IF_EXISTS_SCRIPT, List.of(conversationKey(memoryId)), field, value);
+    }
+
+    private void evictUserList(String userIp) {
+        if (userIp != null) {
+            stringRedisTemplate.delete(userListKey(userIp));
+        }
+    }
+
+    private void writeConversation(StringRedisConnection conn, Conversation conversation) {
+        Map<String, String> hash = new HashMap<>();
+        putIfNotNull(hash, "id", conversation.getId());
+        putIfNotNull(hash, "userIp", conversation.getUserIp());
+        putIfNotNull(hash, "title", conversation.getTitle());
+        putIfNotNull(hash, "createdTime", toText(conversation.getCreatedTime()));
+        putIfNotNull(hash, "lastSendTime", toText(conversation.getLastSendTime()));
+        String key = conversationKey(conversation.getMemoryId());
+        conn.hMSet(key, hash);
+        conn.expire(key, ttlSeconds());
+    }
+
+    private static Conversation fromHash(String memoryId, Map<?, ?> hash) {
+        return Conversation.builder()
+                .id((String) hash.get("id"))
+                .memoryId(memoryId)
+                .userIp((String) hash.get("userIp"))
+                .title((String) hash.get("title"))
+                .createdTime(parseTime((String) hash.get("createdTime")))
+                .lastSendTime(parseTime((String) hash.get("lastSendTime")))
+                .build();
+    }
+
+    /**
+     * 时间统一截断到毫秒，与 MongoDB 中存储的精度一致（分页游标依赖 created_time 精确比较）
+     */
+    private static Conversation normalize(Conversation conversation) {
+        conversation.setCreatedTime(truncate(conversation.getCreatedTime()));
+        conversation.setLastSendTime(truncate(conversation.getLastSendTime()));
+        return conversation;
+    }
+
+    private static LocalDateTime truncate(LocalDateTime time) {
+        return time == null ? null : time.truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    private static String toText(LocalDateTime time) {
+        return time == null ? null : truncate(time).toString();
+    }
+
+    private static LocalDateTime parseTime(String text) {
+        return text == null ? null : LocalDateTime.parse(text);
+    }
+
+    private static void putIfNotNull(Map<String, String> hash, String field, String value) {
+        if (value != null) {
+            hash.put(field, value);
+        }
+    }
+
+    private long ttlSeconds() {
+        return Duration.ofMinutes(ttlMinutes).toSeconds();
+    }
+
+    private static String conversationKey(String memoryId) {
+        return CONVERSATION_KEY_PREFIX + memoryId;
+    }
+
+    private static String userListKey(String userIp) {
+        return USER_LIST_KEY_PREFIX + userIp;
+    }
+}
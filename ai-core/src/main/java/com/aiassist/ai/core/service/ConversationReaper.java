@@ -0,0 +1,178 @@
+package com.aiassist.ai.core.service;
+
+import com.aiassist.ai.core.entity.Conversation;
+import com.aiassist.ai.core.entity.Message;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 已软删除会话的后台清理
+ * <p>
+ * - 删除接口只给会话打上 deleted_at 标记，消息由本任务在后台线程上分批删除，不占用请求线程
+ * - 每批按 _id 删除 batch-size 条消息，批次之间暂停 batch-pause-ms，避免大会话的删除挤占前台读写
+ * - 会话文档在其消息全部删除后才移除，进度即 Mongo 中的数据本身：进程崩溃或重启后重新扫描 deleted_at 即可继续
+ * - 删除操作是幂等的，多实例同时清理同一会话不会出错
+ * <p>
+ * 配置说明：
+ * - chat.reaper.enable: 是否启用，默认true
+ * - chat.reaper.interval-seconds: 定期扫描间隔（秒），默认60
+ * - chat.reaper.batch-size: 每批删除的消息数，默认500
+ * - chat.reaper.batch-pause-ms: 批次之间的暂停（毫秒），默认100
+ * - chat.reaper.max-conversations-per-run: 单轮最多清理的会话数，默认100
+ */
+@Slf4j
+@Service
+public class ConversationReaper {
+
+    /**
+     * 每次从数据库取出的待清理会话数
+     */
+    private static final int SCAN_PAGE_SIZE = 20;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ChatMessageCacheService chatMessageCacheService;
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private ToolResultService toolResultService;
+
+    @Value("${chat.reaper.enable:true}")
+    private boolean enable;
+
+    @Value("${chat.reaper.interval-seconds:60}")
+    private long intervalSeconds;
+
+    @Value("${chat.reaper.batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.reaper.batch-pause-ms:100}")
+    private long batchPauseMs;
+
+    @Value("${chat.reaper.max-conversations-per-run:100}")
+    private int maxConversationsPerRun;
+
+    /**
+     * 已有一次立即清理在排队时不再重复提交
+     */
+    private final AtomicBoolean triggered = new AtomicBoolean();
+
+    private ScheduledExecutorService reaper;
+
+    @PostConstruct
+    void init() {
+        if (!enable) {
+            return;
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "conversation-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        // 启动后先清理上次未完成的会话
+        reaper.scheduleWithFixedDelay(this::reapSafely, 0, intervalSeconds, TimeUnit.SECONDS);
+        log.info("初始化会话清理任务 - 间隔: {}s, 批量: {}, 批次间隔: {}ms", intervalSeconds, batchSize, batchPauseMs);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (reaper != null) {
+            // 未完成的会话保留 deleted_at 标记，下次启动继续
+            reaper.shutdownNow();
+        }
+    }
+
+    /**
+     * 有会话被软删除时调用，尽快开始清理
+     */
+    public void trigger() {
+        if (reaper != null && triggered.compareAndSet(false, true)) {
+            reaper.execute(() -> {
+                triggered.set(false);
+                reapSafely();
+            });
+        }
+    }
+
+    private void reapSafely() {
+        try {
+            reap();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("清理已删除会话失败，下一轮重试", e);
+        }
+    }
+
+    /**
+     * 按软删除时间先后清理会话
+     */
+    void reap() throws InterruptedException {
+        int reaped = 0;
+        while (reaped < maxConversationsPerRun) {
+            Query query = Query.query(Criteria.where("deleted_at").exists(true))
+                    .with(Sort.by(Sort.Direction.ASC, "deleted_at"))
+                    .limit(Math.min(SCAN_PAGE_SIZE, maxConversationsPerRun - reaped));
+            query.fields().include("memory_id");
+            List<Conversation> pending = mongoTemplate.find(query, Conversation.class);
+            if (pending.isEmpty()) {
+                break;
+            }
+            for (Conversation conversation : pending) {
+                reapConversation(conversation.getMemoryId());
+                reaped++;
+            }
+        }
+        if (reaped > 0) {
+            log.info("已清理删除的会话 - 数量: {}", reaped);
+        }
+    }
+
+    /**
+     * 分批删除会话的消息，全部删除后再移除会话文档
+     */
+    private void reapConversation(String memoryId) throws InterruptedException {
+        long deleted = 0;
+        while (true) {
+            Query batchQuery = Query.query(Criteria.where("memory_id").is(memoryId)).limit(batchSize);
+            batchQuery.fields().include("_id");
+            List<Object> ids = mongoTemplate.find(batchQuery, Document.class, mongoTemplate.getCollectionName(Message.class))
+                    .stream()
+                    .map(doc -> doc.get("_id"))
+                    .toList();
+            if (ids.isEmpty()) {
+                break;
+            }
+            deleted += mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), Message.class).getDeletedCount();
+            Thread.sleep(batchPauseMs);
+            if (ids.size() < batchSize) {
+                break;
+            }
+        }
+        messageArchiveService.deleteArchive(memoryId);
+        toolResultService.deleteByMemoryId(memoryId);
+        chatMessageCacheService.deleteMessages(memoryId);
+        mongoTemplate.remove(Query.query(Criteria.where("memory_id").is(memoryId).and("deleted_at").exists(true)),
+                Conversation.class);
+        log.debug("清理会话完成 - memoryId: {}, 删除消息: {}", memoryId, deleted);
+    }
+}
@@ -1,10 +1,12 @@
 package com.aiassist.ai.core.service;
 
+import com.aiassist.ai.core.dto.res.ConversationPage;
 import com.aiassist.ai.core.entity.Conversation;
-import com.aiassist.ai.core.store.MongoChatMemoryStore;
+import com.aiassist.ai.core.event.ConversationChangedEvent;
 import com.mongodb.client.result.UpdateResult;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -12,26 +14,48 @@ import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 /**
  * 会话管理服务
  * <p>
  * 提供会话的创建、查询、管理等功能
+ * <p>
+ * 会话详情、有效性校验与会话列表优先读 {@link ConversationCacheService}，写操作通过 {@link ConversationChangedEvent} 同步缓存
  */
 @Slf4j
 @Service
 public class ConversationService {
 
-    @Autowired
-    private MongoChatMemoryStore mongoChatMemoryStore;
+    /**
+     * 默认标题前缀，用于判断标题是否已被生成/修改过
+     */
+    public static final String DEFAULT_TITLE_PREFIX = "新对话_";
 
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @Autowired
+    private ConversationCacheService conversationCacheService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ChatMessageCacheService chatMessageCacheService;
+
+    @Autowired
+    private ConversationReaper conversationReaper;
+
     /**
      * 创建新会话
      */
@@ -54,6 +78,7 @@ public class ConversationService {
                     .lastSendTime(now)
                     .build();
             mongoTemplate.save(conversation);
+            eventPublisher.publishEvent(ConversationChangedEvent.created(this, conversation));
 
             log.info("创建新会话成功: memoryId={}, userIp={}", memoryId, userIp);
 
@@ -69,18 +94,156 @@ public class ConversationService {
      */
     public List<Conversation> getUserConversations(String userIp) {
         // 构建查询条件
-        Query query = Query.query(Criteria.where("user_ip").is(userIp))
+        Query query = Query.query(Criteria.where("user_ip").is(userIp).and("deleted_at").is(null))
                 .with(Sort.by(Sort.Direction.DESC, "created_time")); // 按创建时间倒序
         // 执行查询
         return mongoTemplate.find(query, Conversation.class);
     }
 
+    /**
+     * 按游标分页获取用户的会话列表（按创建时间倒序）
+     * <p>
+     * 以 (created_time, _id) 作为游标做 keyset 分页，由 (user_ip, created_time desc, _id desc) 复合索引支撑：
+     * 翻页不随页码变慢，翻页期间有新会话插入也不会出现重复或遗漏
+     *
+     * @param cursor 上一页返回的 nextCursor，首页传 null
+     * @param size   每页数量
+     */
+    public ConversationPage getUserConversationsPage(String userIp, String cursor, int size) {
+        List<Conversation> cached = conversationCacheService.getUserConversations(userIp, this::loadUserConversations);
+        if (cached != null) {
+            return pageOf(cached, cursor, size);
+        }
+        List<Conversation> conversations = mongoTemplate.find(pageQuery(userIp, cursor, size), Conversation.class);
+        return toPage(conversations, size);
+    }
+
+    /**
+     * 统计用户的会话总数（仅命中 user_ip 索引，不读取文档）
+     */
+    public long countUserConversations(String userIp) {
+        List<Conversation> cached = conversationCacheService.getUserConversations(userIp, this::loadUserConversations);
+        if (cached != null) {
+            return cached.size();
+        }
+        return mongoTemplate.count(Query.query(Criteria.where("user_ip").is(userIp).and("deleted_at").is(null)),
+                Conversation.class);
+    }
+
+    /**
+     * 构建分页查询：多取一条用于判断是否还有下一页，只返回列表所需字段
+     */
+    static Query pageQuery(String userIp, String cursor, int size) {
+        Criteria criteria = Criteria.where("user_ip").is(userIp).and("deleted_at").is(null);
+        if (cursor != null && !cursor.isBlank()) {
+            PageCursor pageCursor = decodeCursor(cursor);
+            criteria = criteria.orOperator(
+                    Criteria.where("created_time").lt(pageCursor.createdTime()),
+                    Criteria.where("created_time").is(pageCursor.createdTime()).and("_id").lt(pageCursor.id()));
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "created_time").and(Sort.by(Sort.Direction.DESC, "_id")))
+                .limit(size + 1);
+        query.fields().include("memory_id", "title", "created_time", "last_send_time");
+        return query;
+    }
+
+    /**
+     * 加载用户会话列表用于缓存（最多 limit 条，仅列表所需字段）
+     */
+    private List<Conversation> loadUserConversations(String userIp, int limit) {
+        Query query = Query.query(Criteria.where("user_ip").is(userIp).and("deleted_at").is(null))
+                .with(Sort.by(Sort.Direction.DESC, "created_time").and(Sort.by(Sort.Direction.DESC, "_id")))
+                .limit(limit);
+        query.fields().include("memory_id", "user_ip", "title", "created_time", "last_send_time");
+        return mongoTemplate.find(query, Conversation.class);
+    }
+
+    /**
+     * 在已排序的缓存列表上按游标分页，语义与 {@link #pageQuery} 一致
+     */
+    static ConversationPage pageOf(List<Conversation> sorted, String cursor, int size) {
+        LocalDateTime createdTime = null;
+        String id = null;
+        if (cursor != null && !cursor.isBlank()) {
+            PageCursor pageCursor = decodeCursor(cursor);
+            createdTime = pageCursor.createdTime();
+            id = pageCursor.id();
+        }
+        List<Conversation> conversations = new ArrayList<>(Math.min(sorted.size(), size + 1));
+        for (Conversation conversation : sorted) {
+            if (createdTime != null && !isAfterCursor(conversation, createdTime, id)) {
+                continue;
+            }
+            // 与查库分页返回的字段保持一致
+            conversation.setUserIp(null);
+            conversations.add(conversation);
+            if (conversations.size() > size) {
+                break;
+            }
+        }
+        return toPage(conversations, size);
+    }
+
+    private static boolean isAfterCursor(Conversation conversation, LocalDateTime createdTime, String id) {
+        LocalDateTime time = conversation.getCreatedTime();
+        if (time == null) {
+            return false;
+        }
+        int cmp = time.compareTo(createdTime);
+        return cmp < 0 || (cmp == 0 && conversation.getId() != null && conversation.getId().compareTo(id) < 0);
+    }
+
+    static ConversationPage toPage(List<Conversation> conversations, int size) {
+        boolean hasMore = conversations.size() > size;
+        List<Conversation> page = hasMore ? conversations.subList(0, size) : conversations;
+        String nextCursor = null;
+        if (hasMore) {
+            Conversation last = page.get(page.size() - 1);
+            nextCursor = encodeCursor(last.getCreatedTime(), last.getId());
+        }
+        return ConversationPage.builder()
+                .conversations(page)
+                .nextCursor(nextCursor)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    private static String encodeCursor(LocalDateTime createdTime, String id) {
+        String raw = createdTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码后的分页游标：上一页最后一条的创建时间与 _id
+     */
+    private record PageCursor(LocalDateTime createdTime, String id) {
+    }
+
+    /**
+     * 解码并校验游标，任何格式问题（Base64、分隔符、时间格式）都转换为 IllegalArgumentException
+     */
+    private static PageCursor decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            if (sep <= 0) {
+                throw new IllegalArgumentException("游标格式错误");
+            }
+            return new PageCursor(LocalDateTime.parse(raw.substring(0, sep)), raw.substring(sep + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor, e);
+        }
+    }
+
     /**
      * 获取会话详情
      */
     public Conversation getConversation(String memoryId) {
-        Query query = Query.query(Criteria.where("memory_id").is(memoryId));
-        return mongoTemplate.findOne(query, Conversation.class);
+        return conversationCacheService.get(memoryId, id -> {
+            Query query = Query.query(Criteria.where("memory_id").is(id).and("deleted_at").is(null));
+            return mongoTemplate.findOne(query, Conversation.class);
+        });
     }
 
     /**
@@ -92,7 +255,7 @@ public class ConversationService {
      */
     public boolean updateConversationTitle(String memoryId, String newTitle) {
         // 构建查询条件：通过 memory_id 匹配目标文档
-        Query query = Query.query(Criteria.where("memory_id").is(memoryId));
+        Query query = Query.query(Criteria.where("memory_id").is(memoryId).and("deleted_at").is(null));
 
         // 构建更新操作：设置 title 的新值
         Update update = new Update();
@@ -100,20 +263,83 @@ public class ConversationService {
 
         // 执行更新操作
         UpdateResult result = mongoTemplate.updateFirst(query, update, Conversation.class);
+        boolean changed = result.getModifiedCount() > 0;
+        if (changed) {
+            eventPublisher.publishEvent(ConversationChangedEvent.renamed(this, memoryId, newTitle));
+        }
 
         // 返回是否成功更新（受影响的文档数量 > 0）
-        return result.getModifiedCount() > 0;
+        return changed;
+    }
+
+    /**
+     * 仅当会话标题仍为默认标题时更新（自动生成标题使用）
+     * <p>
+     * 默认标题的判断放在更新条件中：生成标题期间用户手动改名，不会被生成的标题覆盖
+     *
+     * @return 是否更新；标题已不是默认值或会话不存在时返回 false
+     */
+    public boolean updateDefaultTitle(String memoryId, String newTitle) {
+        Query query = Query.query(new Criteria().andOperator(
+                Criteria.where("memory_id").is(memoryId),
+                Criteria.where("deleted_at").is(null),
+                new Criteria().orOperator(
+                        Criteria.where("title").is(null),
+                        Criteria.where("title").regex("^" + Pattern.quote(DEFAULT_TITLE_PREFIX)))));
+        UpdateResult result = mongoTemplate.updateFirst(query, new Update().set("title", newTitle), Conversation.class);
+        boolean changed = result.getModifiedCount() > 0;
+        if (changed) {
+            eventPublisher.publishEvent(ConversationChangedEvent.renamed(this, memoryId, newTitle));
+        }
+        return changed;
     }
 
     // TODO 更新会话最后发送时间
 
     /**
-     * 删除会话
+     * 删除会话（软删除）
+     * <p>
+     * 只给会话打上 deleted_at 标记并清掉缓存，之后所有查询都看不到该会话；
+     * 消息与会话文档由 {@link ConversationReaper} 在后台分批删除
      */
     public void deleteConversation(String memoryId) {
-        mongoChatMemoryStore.deleteMessages(memoryId);
+        Query query = Query.query(Criteria.where("memory_id").is(memoryId).and("deleted_at").is(null));
+        Conversation deleted = mongoTemplate.findAndModify(query, new Update().set("deleted_at", LocalDateTime.now()),
+                Conversation.class);
+        if (deleted == null) {
+            log.info("会话不存在或已删除: memoryId={}", memoryId);
+            return;
+        }
+        chatMessageCacheService.deleteMessages(memoryId);
+        eventPublisher.publishEvent(ConversationChangedEvent.deleted(this, memoryId, deleted.getUserIp()));
+        conversationReaper.trigger();
         log.info("删除会话: memoryId={}", memoryId);
-        // TODO messages 级联删除
+    }
+
+    /**
+     * 删除用户的全部会话（软删除，后台清理同 {@link #deleteConversation}）
+     *
+     * @return 本次标记删除的会话数
+     */
+    public long deleteUserConversations(String userIp) {
+        Query query = Query.query(Criteria.where("user_ip").is(userIp).and("deleted_at").is(null));
+        query.fields().include("memory_id");
+        List<Conversation> conversations = mongoTemplate.find(query, Conversation.class);
+        if (conversations.isEmpty()) {
+            return 0;
+        }
+        List<String> memoryIds = conversations.stream().map(Conversation::getMemoryId).toList();
+        long deleted = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("memory_id").in(memoryIds).and("deleted_at").is(null)),
+                new Update().set("deleted_at", LocalDateTime.now()),
+                Conversation.class).getModifiedCount();
+        for (String memoryId : memoryIds) {
+            chatMessageCacheService.deleteMessages(memoryId);
+            eventPublisher.publishEvent(ConversationChangedEvent.deleted(this, memoryId, userIp));
+        }
+        conversationReaper.trigger();
+        log.info("删除用户全部会话: userIp={}, 数量={}", userIp, deleted);
+        return deleted;
     }
 
     // ==================== 私有辅助方法 ====================
@@ -121,44 +347,60 @@ public class ConversationService {
     /**
      * 生成默认标题
      */
-    private String generateDefaultTitle(LocalDateTime time) {
+    static String generateDefaultTitle(LocalDateTime time) {
         // 格式化时间为 "MMdd_HH:mm"，如 "0827_16:30"
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMdd_HH:mm");
         String formattedTime = time.format(formatter);
         // 根据格式化时间生成标题 "新对话_0827_16:30"
-        String newTitle = "新对话_" + formattedTime;
+        String newTitle = DEFAULT_TITLE_PREFIX + formattedTime;
         return newTitle;
     }
 
+    /**
+     * 判断标题是否仍为创建时的默认标题
+     */
+    public boolean isDefaultTitle(String title) {
+        return title == null || title.startsWith(DEFAULT_TITLE_PREFIX);
+    }
+
     /**
      * 生成唯一的 memoryId
      * 格式: 时间戳_UUID前8位
      */
-    private String generateMemoryId() {
+    static String generateMemoryId() {
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
         String uuid = UUID.randomUUID().toString().substring(0, 8);
         return timestamp + "_" + uuid;
     }
 
     /**
-     * 检查会话是否存在且有效
+     * 检查会话是否存在且有效（缓存命中时不访问 MongoDB）
      */
     public boolean isValidConversation(String memoryId) {
         if (memoryId == null || memoryId.trim().isEmpty()) {
             return false;
         }
-        Query query = Query.query(Criteria.where("memory_id").is(memoryId));
-        return mongoTemplate.exists(query, Conversation.class);
+        return getConversation(memoryId) != null;
+    }
+
+    /**
+     * 检查会话是否存在且属于该用户
+     */
+    public boolean isOwnedBy(String memoryId, String userIp) {
+        if (memoryId == null || memoryId.trim().isEmpty()) {
+            return false;
+        }
+        Conversation conversation = getConversation(memoryId.trim());
+        return conversation != null && Objects.equals(conversation.getUserIp(), userIp);
     }
 
     /**
      * 处理和验证 memoryId
-     * 如果客户端提供的 memoryId 无效或为空，则自动创建新会话
+     * 如果客户端提供的 memoryId 无效、为空或不属于该用户，则自动创建新会话
      */
     public String processMemoryId(String clientMemoryId, String userIp) {
-        // 如果客户端没有提供 memoryId 或者无效，创建新会话
-        if (clientMemoryId == null || clientMemoryId.trim().isEmpty() ||
-                !isValidConversation(clientMemoryId)) {
+        // 如果客户端没有提供 memoryId、无效或属于其他用户，创建新会话
+        if (!isOwnedBy(clientMemoryId, userIp)) {
 
             Conversation conversation = createNewConversation(userIp);
             String newMemoryId = conversation.getMemoryId();
@@ -0,0 +1,279 @@
+package com.aiassist.ai.core.service;
+
+import com.aiassist.ai.core.ai.OpenAiClient;
+import com.aiassist.ai.core.entity.Conversation;
+import com.aiassist.ai.core.entity.Message;
+import com.aiassist.ai.core.event.ContextEvictedEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 会话滚动摘要服务（summary 记忆模式）
+ * <p>
+ * 功能特性：
+ * - 滑动窗口淘汰消息时，后台把移出窗口的消息与已有摘要合并成新摘要，写回 conversations.summary
+ * - MongoChatMemoryStore 读取记忆时把摘要作为第二条 SystemMessage 放在系统提示词之后，提示词长度保持恒定
+ * - 摘要带 summary_turn_index 水位，按水位做条件更新，重复或并发的任务不会重复合并同一段消息
+ * - 有界队列 + 按 memoryId 去重，固定并发数，与标题生成一样不占用请求线程
+ * - 摘要在 Redis 中缓存（chat:summary:{memoryId}），读取记忆时不访问 MongoDB
+ * <p>
+ * 配置说明：
+ * - chat.memory.mode: 记忆模式，window（默认，超出窗口直接丢弃）或 summary
+ * - chat.memory.summary.concurrency: 同时进行的摘要任务数，默认1
+ * - chat.memory.summary.queue-capacity: 排队上限，超出则留待下次淘汰时再合并，默认100
+ * - chat.memory.summary.max-chars: 摘要最大长度（字符），默认1000
+ * - chat.memory.summary.max-messages-per-run: 单次合并的消息数上限，默认40
+ */
+@Slf4j
+@Service
+public class ConversationSummaryService {
+
+    public static final String MODE_SUMMARY = "summary";
+
+    private static final String SUMMARY_KEY_PREFIX = "chat:summary:";
+
+    /**
+     * 摘要作为 SystemMessage 注入时的前缀
+     */
+    public static final String SUMMARY_MESSAGE_PREFIX = "以下是本次对话较早部分的摘要，回答时可作为背景参考：\n";
+
+    private static final String SUMMARY_PROMPT = """
+            你负责维护一段对话的滚动摘要。请把“新增对话”合并进“已有摘要”，输出更新后的完整摘要。
+            要求：保留用户的身份、偏好、目标、已确认的事实与结论、未解决的问题；省略寒暄和工具调用细节；
+            使用中文第三人称陈述，不超过%d字，只输出摘要正文。
+
+            已有摘要：
+            %s
+
+            新增对话：
+            %s""";
+
+    /**
+     * 单条消息写入摘要提示词时的最大长度
+     */
+    private static final int MAX_MESSAGE_CHARS = 500;
+
+    @Autowired
+    private OpenAiClient openAiClient;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${chat.memory.mode:window}")
+    private String mode;
+
+    @Value("${chat.memory.summary.concurrency:1}")
+    private int concurrency;
+
+    @Value("${chat.memory.summary.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${chat.memory.summary.max-chars:1000}")
+    private int maxChars;
+
+    @Value("${chat.memory.summary.max-messages-per-run:40}")
+    private int maxMessagesPerRun;
+
+    @Value("${chat.cache.expire-hours:24}")
+    private int cacheExpireHours;
+
+    /**
+     * 排队中或执行中的 memoryId，用于去重
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(concurrency, concurrency,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "summary-gen-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        log.info("初始化会话摘要服务 - 并发: {}, 队列容量: {}, 摘要上限: {}字", concurrency, queueCapacity, maxChars);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return MODE_SUMMARY.equalsIgnoreCase(mode);
+    }
+
+    /**
+     * 读取会话摘要
+     *
+     * @return 摘要；没有摘要或读取失败时返回 null
+     */
+    public String getSummary(String memoryId) {
+        if (!isEnabled()) {
+            return null;
+        }
+        String key = SUMMARY_KEY_PREFIX + memoryId;
+        try {
+            String cached = stringRedisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                return cached.isEmpty() ? null : cached;
+            }
+            Query query = Query.query(Criteria.where("memory_id").is(memoryId));
+            query.fields().include("summary");
+            Conversation conversation = mongoTemplate.findOne(query, Conversation.class);
+            String summary = conversation == null ? null : conversation.getSummary();
+            // 空串表示没有摘要，同样缓存，避免每次读取记忆都查库
+            stringRedisTemplate.opsForValue().set(key, summary == null ? "" : summary, Duration.ofHours(cacheExpireHours));
+            return summary;
+        } catch (Exception e) {
+            log.warn("读取会话摘要失败 - memoryId: {}, {}", memoryId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 消息移出上下文窗口后触发
+     */
+    @EventListener
+    public void onContextEvicted(ContextEvictedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        String memoryId = event.getMemoryId();
+        if (!pending.add(memoryId)) {
+            // 正在合并的任务完成后，剩余消息会在下一次淘汰时继续合并
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    summarize(memoryId, event.getEvictedUpToTurnIndex());
+                } finally {
+                    pending.remove(memoryId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(memoryId);
+            log.warn("摘要队列已满，留待下次合并: memoryId={}", memoryId);
+        }
+    }
+
+    /**
+     * 把 (summary_turn_index, upToTurnIndex] 区间的消息合并进摘要
+     */
+    void summarize(String memoryId, int upToTurnIndex) {
+        try {
+            Query conversationQuery = Query.query(Criteria.where("memory_id").is(memoryId));
+            conversationQuery.fields().include("summary", "summary_turn_index");
+            Conversation conversation = mongoTemplate.findOne(conversationQuery, Conversation.class);
+            if (conversation == null) {
+                return;
+            }
+            int from = conversation.getSummaryTurnIndex() == null ? 0 : conversation.getSummaryTurnIndex();
+            if (upToTurnIndex <= from) {
+                return;
+            }
+
+            Query messageQuery = Query.query(Criteria.where("memory_id").is(memoryId)
+                            .and("turn_index").gt(from).lte(upToTurnIndex))
+                    .with(Sort.by(Sort.Direction.ASC, "turn_index"))
+                    .limit(maxMessagesPerRun);
+            List<Message> messages = mongoTemplate.find(messageQuery, Message.class);
+            if (messages.isEmpty()) {
+                return;
+            }
+
+            String existing = conversation.getSummary() == null ? "（无）" : conversation.getSummary();
+            String prompt = String.format(SUMMARY_PROMPT, maxChars, existing, render(messages));
+            String summary = normalize(openAiClient.chatStr(prompt));
+            if (summary.isEmpty()) {
+                return;
+            }
+            int to = messages.get(messages.size() - 1).getTurnIndex();
+
+            // 以水位做条件更新，水位已被其他任务推进时放弃本次结果
+            Criteria watermark = conversation.getSummaryTurnIndex() == null
+                    ? Criteria.where("summary_turn_index").exists(false)
+                    : Criteria.where("summary_turn_index").is(from);
+            boolean updated = mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("memory_id").is(memoryId).andOperator(watermark)),
+                    new Update().set("summary", summary).set("summary_turn_index", to).set("summary_time", LocalDateTime.now()),
+                    Conversation.class).getModifiedCount() > 0;
+            if (updated) {
+                stringRedisTemplate.opsForValue().set(SUMMARY_KEY_PREFIX + memoryId, summary, Duration.ofHours(cacheExpireHours));
+            }
+            log.info("会话摘要已更新 - memoryId: {}, turn_index: {} -> {}, 长度: {}, 已写入: {}",
+                    memoryId, from, to, summary.length(), updated);
+        } catch (Exception e) {
+            log.error("生成会话摘要失败: memoryId={}", memoryId, e);
+        }
+    }
+
+    /**
+     * 把消息渲染成摘要提示词中的对话文本
+     */
+    private static String render(List<Message> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (Message message : messages) {
+            Message.Content content = message.getContent();
+            String text = switch (message.getMessageType()) {
+                case USER -> "用户：" + (content == null ? "" : content.getPrompt());
+                case AI -> "助手：" + (content == null ? "" : content.getCompletion());
+                case TOOL_RESULT -> "工具结果：" + (content == null ? "" : content.getCompletion());
+                default -> null;
+            };
+            if (text == null) {
+                continue;
+            }
+            sb.append(text.length() > MAX_MESSAGE_CHARS ? text.substring(0, MAX_MESSAGE_CHARS) + "..." : text)
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    private String normalize(String summary) {
+        if (summary == null) {
+            return "";
+        }
+        String s = summary.strip();
+        // 模型偶尔超长，保留余量后截断
+        int limit = maxChars * 2;
+        return s.length() > limit ? s.substring(0, limit) : s;
+    }
+}
@@ -0,0 +1,358 @@
+package com.aiassist.ai.core.service;
+
+import com.aiassist.ai.core.entity.Conversation;
+import com.aiassist.ai.core.entity.Message;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.ReplaceOptions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.ByteBuf;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.types.Binary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * 消息冷热分层
+ * <p>
+ * - 归档：空闲超过 idle-days 天的会话，其全部消息按原始 BSON 编码、GZIP 压缩后整体存入 message_archives 集合
+ *   （每个会话一个文档，_id 为 memoryId），再从 messages 集合删除，热集合及其索引只保留活跃会话
+ * - 回迁：读取已归档会话的消息（聊天记忆加载、消息历史查询）时，先把归档中的消息原样写回 messages 集合，调用方无感知；
+ *   回迁后记录 rehydrated_at，在再次空闲 idle-days 天之前不会被重新归档
+ * - 每一步都可重复执行：归档时与已有归档合并、只删除已写入归档的消息；回迁时忽略已存在的消息，
+ *   中途崩溃后下一轮（或下一次读取）会继续完成
+ * - 归档期间有新消息写入时不标记 archived_at 并立即回迁；标记之后才写入的，下一轮按 last_send_time 找出并回迁
+ * <p>
+ * 配置说明：
+ * - chat.archive.enable: 是否启用归档任务，默认true（回迁始终可用）
+ * - chat.archive.idle-days: 会话空闲多少天后归档，默认30
+ * - chat.archive.interval-minutes: 归档任务间隔（分钟），默认60
+ * - chat.archive.max-conversations-per-run: 单轮最多归档的会话数，默认200
+ */
+@Slf4j
+@Service
+public class MessageArchiveService {
+
+    static final String ARCHIVE_COLLECTION = "message_archives";
+
+    static final String CODEC_GZIP = "gzip";
+
+    /**
+     * 单个归档文档中压缩数据的上限，留出余量避开 MongoDB 16MB 文档限制
+     */
+    private static final int MAX_BLOB_BYTES = 15 * 1024 * 1024;
+
+    /**
+     * 回迁时每批写回的消息数
+     */
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    private static final int DUPLICATE_KEY_CODE = 11000;
+
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${chat.archive.enable:true}")
+    private boolean enable;
+
+    @Value("${chat.archive.idle-days:30}")
+    private long idleDays;
+
+    @Value("${chat.archive.interval-minutes:60}")
+    private long intervalMinutes;
+
+    @Value("${chat.archive.max-conversations-per-run:200}")
+    private int maxConversationsPerRun;
+
+    private ScheduledExecutorService archiver;
+
+    @PostConstruct
+    void init() {
+        if (!enable) {
+            return;
+        }
+        archiver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "message-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        archiver.scheduleWithFixedDelay(this::archiveSafely, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        log.info("初始化消息归档任务 - 空闲: {}天, 间隔: {}min", idleDays, intervalMinutes);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (archiver != null) {
+            archiver.shutdownNow();
+        }
+    }
+
+    // ==================== 回迁 ====================
+
+    /**
+     * 会话有归档时把消息写回热集合
+     *
+     * @return 是否发生了回迁
+     */
+    public boolean rehydrateIfArchived(String memoryId) {
+        Document archive = mongoTemplate.getCollection(ARCHIVE_COLLECTION).find(eq("_id", memoryId)).first();
+        if (archive == null) {
+            return false;
+        }
+        List<Document> messages = decode(archive);
+        for (int from = 0; from < messages.size(); from += INSERT_BATCH_SIZE) {
+            insertIgnoringDuplicates(messages.subList(from, Math.min(from + INSERT_BATCH_SIZE, messages.size())));
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("memory_id").is(memoryId)),
+                new Update().unset("archived_at").set("rehydrated_at", LocalDateTime.now()),
+                Conversation.class);
+        mongoTemplate.getCollection(ARCHIVE_COLLECTION).deleteOne(eq("_id", memoryId));
+        log.info("会话消息已从归档回迁 - memoryId: {}, 消息数: {}", memoryId, messages.size());
+        return true;
+    }
+
+    /**
+     * 删除会话的归档（会话被清理时）
+     */
+    public void deleteArchive(String memoryId) {
+        mongoTemplate.getCollection(ARCHIVE_COLLECTION).deleteOne(eq("_id", memoryId));
+    }
+
+    // ==================== 归档 ====================
+
+    private void archiveSafely() {
+        try {
+            archiveIdleConversations();
+        } catch (Exception e) {
+            log.error("归档空闲会话失败，下一轮重试", e);
+        }
+    }
+
+    /**
+     * 归档空闲超过 idle-days 天的会话
+     */
+    void archiveIdleConversations() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(idleDays);
+        repairArchivedWithNewMessages(cutoff);
+
+        Query query = Query.query(new Criteria().andOperator(
+                        Criteria.where("archived_at").exists(false),
+                        Criteria.where("deleted_at").exists(false),
+                        Criteria.where("last_send_time").lt(cutoff),
+                        new Criteria().orOperator(
+                                Criteria.where("rehydrated_at").exists(false),
+                                Criteria.where("rehydrated_at").lt(cutoff))))
+                .with(Sort.by(Sort.Direction.ASC, "last_send_time"))
+                .limit(maxConversationsPerRun);
+        query.fields().include("memory_id");
+        List<Conversation> candidates = mongoTemplate.find(query, Conversation.class);
+
+        int archived = 0;
+        for (Conversation conversation : candidates) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            try {
+                if (archiveConversation(conversation.getMemoryId(), cutoff)) {
+                    archived++;
+                }
+            } catch (Exception e) {
+                log.warn("归档会话失败 - memoryId: {}, {}", conversation.getMemoryId(), e.getMessage());
+            }
+        }
+        if (archived > 0) {
+            log.info("已归档空闲会话 - 数量: {}/{}", archived, candidates.size());
+        }
+    }
+
+    /**
+     * 归档单个会话
+     *
+     * @return 是否完成归档；会话仍有近期消息时返回 false
+     */
+    boolean archiveConversation(String memoryId, LocalDateTime cutoff) {
+        String messageCollection = mongoTemplate.getCollectionName(Message.class);
+        List<Document> hot = mongoTemplate.find(Query.query(Criteria.where("memory_id").is(memoryId))
+                .with(Sort.by(Sort.Direction.ASC, "turn_index")), Document.class, messageCollection);
+
+        // last_send_time 只是候选条件，以最后一条消息的实际时间为准
+        if (!hot.isEmpty()) {
+            Date lastSent = hot.get(hot.size() - 1).getDate("send_time");
+            if (lastSent != null && !lastSent.toInstant().isBefore(cutoff.atZone(ZoneId.systemDefault()).toInstant())) {
+                mongoTemplate.updateFirst(Query.query(Criteria.where("memory_id").is(memoryId)),
+                        new Update().set("last_send_time", lastSent), Conversation.class);
+                return false;
+            }
+        }
+
+        // 与已有归档合并（上次归档中途失败时）
+        Map<Object, Document> merged = new LinkedHashMap<>();
+        Document existing = mongoTemplate.getCollection(ARCHIVE_COLLECTION).find(eq("_id", memoryId)).first();
+        if (existing != null) {
+            decode(existing).forEach(doc -> merged.put(doc.get("_id"), doc));
+        }
+        hot.forEach(doc -> merged.put(doc.get("_id"), doc));
+        List<Document> messages = new ArrayList<>(merged.values());
+        messages.sort(Comparator.comparing(doc -> doc.getInteger("turn_index", 0)));
+
+        if (!messages.isEmpty()) {
+            Document archive = encode(memoryId, messages);
+            if (archive.get("data", Binary.class).length() > MAX_BLOB_BYTES) {
+                log.warn("会话消息压缩后超过归档上限，保留在热集合 - memoryId: {}", memoryId);
+                return false;
+            }
+            mongoTemplate.getCollection(ARCHIVE_COLLECTION)
+                    .replaceOne(eq("_id", memoryId), archive, new ReplaceOptions().upsert(true));
+        }
+
+        // 只删除已写入归档的消息，归档期间新写入的消息保留
+        List<Object> hotIds = hot.stream().map(doc -> doc.get("_id")).toList();
+        for (int from = 0; from < hotIds.size(); from += INSERT_BATCH_SIZE) {
+            List<Object> ids = hotIds.subList(from, Math.min(from + INSERT_BATCH_SIZE, hotIds.size()));
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), messageCollection);
+        }
+
+        // 归档期间写入的消息会留在热集合并刷新 last_send_time；此时不能标记 archived_at
+        // （读取只在热集合为空时回迁，归档中的历史会一直不可见），改为立即回迁
+        if (hasHotMessages(messageCollection, memoryId)) {
+            return abortArchive(memoryId);
+        }
+        long marked = mongoTemplate.updateFirst(Query.query(Criteria.where("memory_id").is(memoryId)
+                                .and("last_send_time").lt(cutoff)),
+                new Update().set("archived_at", LocalDateTime.now()).unset("rehydrated_at"),
+                Conversation.class).getMatchedCount();
+        // 标记前后都可能有消息写入，标记后再检查一次
+        if (marked == 0 || hasHotMessages(messageCollection, memoryId)) {
+            return abortArchive(memoryId);
+        }
+        log.debug("会话已归档 - memoryId: {}, 消息数: {}", memoryId, messages.size());
+        return true;
+    }
+
+    private boolean hasHotMessages(String messageCollection, String memoryId) {
+        return mongoTemplate.exists(Query.query(Criteria.where("memory_id").is(memoryId)), messageCollection);
+    }
+
+    private boolean abortArchive(String memoryId) {
+        log.info("归档期间会话有新消息，回迁已归档的消息 - memoryId: {}", memoryId);
+        rehydrateIfArchived(memoryId);
+        return false;
+    }
+
+    /**
+     * 修复已标记归档、但之后又写入了消息的会话
+     * <p>
+     * 写入者在归档删除前读到了最大 turn_index，消息在最后一次检查之后才写入时，热集合非空而 archived_at 仍在；
+     * 写入会把 last_send_time 刷新到 cutoff 之后，据此找出并回迁
+     */
+    void repairArchivedWithNewMessages(LocalDateTime cutoff) {
+        Query query = Query.query(new Criteria().andOperator(
+                        Criteria.where("archived_at").exists(true),
+                        Criteria.where("last_send_time").gte(cutoff)))
+                .limit(maxConversationsPerRun);
+        query.fields().include("memory_id");
+        for (Conversation conversation : mongoTemplate.find(query, Conversation.class)) {
+            try {
+                if (rehydrateIfArchived(conversation.getMemoryId())) {
+                    log.info("已回迁归档后又有新消息的会话 - memoryId: {}", conversation.getMemoryId());
+                } else {
+                    mongoTemplate.updateFirst(Query.query(Criteria.where("memory_id").is(conversation.getMemoryId())),
+                            new Update().unset("archived_at"), Conversation.class);
+                }
+            } catch (Exception e) {
+                log.warn("回迁会话失败 - memoryId: {}, {}", conversation.getMemoryId(), e.getMessage());
+            }
+        }
+    }
+
+    // ==================== 编解码 ====================
+
+    static Document encode(String memoryId, List<Document> messages) {
+        RawBsonDocument raw = new RawBsonDocument(new Document("messages", messages), DOCUMENT_CODEC);
+        ByteBuf buffer = raw.getByteBuffer();
+        byte[] bson = new byte[buffer.remaining()];
+        buffer.get(bson);
+        byte[] compressed = gzip(bson);
+        return new Document("_id", memoryId)
+                .append("codec", CODEC_GZIP)
+                .append("message_count", messages.size())
+                .append("max_turn_index", messages.get(messages.size() - 1).getInteger("turn_index"))
+                .append("raw_size", bson.length)
+                .append("compressed_size", compressed.length)
+                .append("archived_at", new Date())
+                .append("data", new Binary(compressed));
+    }
+
+    static List<Document> decode(Document archive) {
+        if (!CODEC_GZIP.equals(archive.getString("codec"))) {
+            throw new IllegalStateException("不支持的归档编码: " + archive.getString("codec"));
+        }
+        byte[] bson = gunzip(archive.get("data", Binary.class).getData());
+        return new RawBsonDocument(bson).decode(DOCUMENT_CODEC).getList("messages", Document.class);
+    }
+
+    private void insertIgnoringDuplicates(List<Document> messages) {
+        try {
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(Message.class))
+                    .insertMany(messages, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // 上次回迁中途失败时部分消息已写回
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() != DUPLICATE_KEY_CODE) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new RuntimeException("压缩归档数据失败", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gzip.readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("解压归档数据失败", e);
+        }
+    }
+}
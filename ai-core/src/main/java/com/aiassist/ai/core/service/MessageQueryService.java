@@ -0,0 +1,154 @@
+package com.aiassist.ai.core.service;
+
+import com.aiassist.ai.core.dto.res.MessagePage;
+import com.aiassist.ai.core.entity.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
+import org.springframework.data.mongodb.core.aggregation.UnsetOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 消息明细查询（messages 集合）
+ * <p>
+ * - 按 turn_index 倒序做 keyset 分页，由 (memory_id, turn_index desc) 复合索引支撑
+ * - 默认不返回工具结果正文：去掉 tool_calls.result，TOOL_RESULT 消息的 content.completion 只保留前若干字符作为预览；
+ *   需要完整内容时传 includeToolResults=true，已压缩的工具结果按引用ID从 tool_results 集合回填全文
+ * - 流式读取直接迭代 Mongo 游标，逐条交给调用方写出，不在内存中攒整个会话
+ * - 已归档的会话在首次查询时由 {@link MessageArchiveService} 回迁到热集合
+ */
+@Slf4j
+@Service
+public class MessageQueryService {
+
+    /**
+     * 省略工具结果时 TOOL_RESULT 消息保留的预览长度（字符）
+     */
+    static final int TOOL_RESULT_PREVIEW_LENGTH = 200;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    /**
+     * 分页查询消息（按 turn_index 倒序）
+     *
+     * @param beforeTurn 只返回 turn_index 小于该值的消息，首页传 null
+     * @param size       每页数量
+     */
+    public MessagePage getMessagesPage(String memoryId, Integer beforeTurn, int size, boolean includeToolResults) {
+        Aggregation aggregation = messagesAggregation(memoryId, beforeTurn, size + 1, includeToolResults);
+        List<Message> messages = mongoTemplate.aggregate(aggregation, "messages", Message.class).getMappedResults();
+        // 热集合中没有消息时可能已归档
+        if (messages.isEmpty() && beforeTurn == null && messageArchiveService.rehydrateIfArchived(memoryId)) {
+            messages = mongoTemplate.aggregate(aggregation, "messages", Message.class).getMappedResults();
+        }
+        return toPage(messages, size);
+    }
+
+    /**
+     * 流式读取消息（按 turn_index 倒序），调用方负责关闭 Stream
+     */
+    public Stream<Message> streamMessages(String memoryId, Integer beforeTurn, boolean includeToolResults) {
+        messageArchiveService.rehydrateIfArchived(memoryId);
+        return mongoTemplate.aggregateStream(messagesAggregation(memoryId, beforeTurn, null, includeToolResults),
+                "messages", Message.class);
+    }
+
+    /**
+     * 会话消息总数（仅命中 memory_id 索引）
+     */
+    public long countMessages(String memoryId) {
+        return mongoTemplate.count(Query.query(Criteria.where("memory_id").is(memoryId)), Message.class);
+    }
+
+    /**
+     * 多查的一条只用于判断是否还有下一页，不返回给调用方
+     */
+    static MessagePage toPage(List<Message> messages, int size) {
+        boolean hasMore = messages.size() > size;
+        List<Message> page = hasMore ? messages.subList(0, size) : messages;
+        return MessagePage.builder()
+                .messages(page)
+                .nextCursor(hasMore ? page.get(page.size() - 1).getTurnIndex() : null)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * 构建消息查询管道
+     *
+     * @param limit 为空时不限制条数（流式读取）
+     */
+    static Aggregation messagesAggregation(String memoryId, Integer beforeTurn, Integer limit, boolean includeToolResults) {
+        Criteria criteria = Criteria.where("memory_id").is(memoryId);
+        if (beforeTurn != null) {
+            criteria = criteria.and("turn_index").lt(beforeTurn);
+        }
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(criteria));
+        operations.add(Aggregation.sort(Sort.by(Sort.Direction.DESC, "turn_index")));
+        if (limit != null) {
+            operations.add(Aggregation.limit(limit));
+        }
+        if (includeToolResults) {
+            operations.addAll(restoreCompactedToolResults());
+        } else {
+            operations.add(UnsetOperation.unset("tool_calls.result"));
+            operations.add(Aggregation.addFields()
+                    .addField("content.completion")
+                    .withValue(ConditionalOperators
+                            .when(ComparisonOperators.valueOf("message_type").equalToValue(Message.MessageType.TOOL_RESULT.name()))
+                            .thenValueOf(StringOperators.valueOf("content.completion").substringCP(0, TOOL_RESULT_PREVIEW_LENGTH))
+                            .otherwiseValueOf("content.completion"))
+                    .build());
+        }
+        return Aggregation.newAggregation(operations);
+    }
+
+    /**
+     * 回填已压缩的工具结果：引用ID（{memoryId}-{turnIndex}）即 tool_results 的 _id，
+     * 有对应记录的 TOOL_RESULT 消息用完整内容替换 content.completion 与 tool_calls.result
+     */
+    private static List<AggregationOperation> restoreCompactedToolResults() {
+        Document compacted = new Document("$and", Arrays.asList(
+                new Document("$eq", Arrays.asList("$message_type", Message.MessageType.TOOL_RESULT.name())),
+                new Document("$ne", Arrays.asList(new Document("$type", "$_tool_full"), "missing"))));
+        Document completion = new Document("$concat", Arrays.asList(
+                "ID:", new Document("$ifNull", Arrays.asList("$_tool_full.tool_call_id", "null")),
+                "|NAME:", new Document("$ifNull", Arrays.asList("$_tool_full.tool_name", "null")),
+                "|RESULT:", "$_tool_full.content"));
+        Document toolCalls = new Document("$map", new Document("input", "$tool_calls")
+                .append("as", "t")
+                .append("in", new Document("$mergeObjects", Arrays.asList(
+                        "$$t", new Document("result", "$_tool_full.content")))));
+
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(context -> new Document("$addFields", new Document("_tool_ref",
+                new Document("$concat", Arrays.asList("$memory_id", "-", new Document("$toString", "$turn_index"))))));
+        operations.add(Aggregation.lookup("tool_results", "_tool_ref", "_id", "_tool_full"));
+        operations.add(context -> new Document("$addFields", new Document("_tool_full",
+                new Document("$arrayElemAt", Arrays.asList("$_tool_full", 0)))));
+        operations.add(context -> new Document("$addFields", new Document()
+                .append("content.completion", new Document("$cond", Arrays.asList(compacted, completion, "$content.completion")))
+                .append("tool_calls", new Document("$cond", Arrays.asList(compacted, toolCalls, "$tool_calls")))));
+        operations.add(UnsetOperation.unset("_tool_ref", "_tool_full"));
+        return operations;
+    }
+}
@@ -0,0 +1,198 @@
+package com.aiassist.ai.core.service;
+
+import com.aiassist.ai.core.dto.res.ConversationPage;
+import com.aiassist.ai.core.dto.res.MessagePage;
+import com.aiassist.ai.core.entity.Conversation;
+import com.aiassist.ai.core.entity.Message;
+import com.aiassist.ai.core.event.ConversationChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * 会话管理服务（响应式）
+ * <p>
+ * reactive 部署模式（WebFlux/Netty）下请求链路上的 MongoDB 访问，基于 ReactiveMongoTemplate，不阻塞事件循环线程；
+ * 语义与 {@link ConversationService} 保持一致
+ * <p>
+ * 聊天记忆的读写（MongoChatMemoryStore）不在此处：LangChain4j 的 ChatMemoryStore 是同步接口，
+ * 只在模型回调线程上被调用，不会占用事件循环
+ * <p>
+ * 会话详情与有效性校验同样先读 {@link ConversationCacheService}（Redis 调用放到 boundedElastic 上）；
+ * 会话列表仍直接走 ReactiveMongoTemplate
+ */
+@Slf4j
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConversationService {
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private ConversationCacheService conversationCacheService;
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    /**
+     * 创建新会话
+     */
+    public Mono<Conversation> createNewConversation(String userIp) {
+        String memoryId = ConversationService.generateMemoryId();
+        LocalDateTime now = LocalDateTime.now();
+        Conversation conversation = Conversation.builder()
+                .id(UUID.randomUUID().toString())
+                .memoryId(memoryId)
+                .title(ConversationService.generateDefaultTitle(now))
+                .userIp(userIp)
+                .createdTime(now)
+                .lastSendTime(now)
+                .build();
+        return reactiveMongoTemplate.save(conversation)
+                .publishOn(Schedulers.boundedElastic())
+                .doOnSuccess(saved -> {
+                    eventPublisher.publishEvent(ConversationChangedEvent.created(this, saved));
+                    log.info("创建新会话成功: memoryId={}, userIp={}", memoryId, userIp);
+                })
+                .onErrorMap(e -> new RuntimeException("创建会话失败", e));
+    }
+
+    /**
+     * 获取用户的会话列表（按创建时间倒序）
+     */
+    public Flux<Conversation> getUserConversations(String userIp) {
+        Query query = Query.query(Criteria.where("user_ip").is(userIp).and("deleted_at").is(null))
+                .with(Sort.by(Sort.Direction.DESC, "created_time"));
+        return reactiveMongoTemplate.find(query, Conversation.class);
+    }
+
+    /**
+     * 按游标分页获取用户的会话列表，语义同 {@link ConversationService#getUserConversationsPage}
+     */
+    public Mono<ConversationPage> getUserConversationsPage(String userIp, String cursor, int size) {
+        return Mono.defer(() -> reactiveMongoTemplate
+                        .find(ConversationService.pageQuery(userIp, cursor, size), Conversation.class)
+                        .collectList())
+                .map(conversations -> ConversationService.toPage(conversations, size));
+    }
+
+    /**
+     * 统计用户的会话总数
+     */
+    public Mono<Long> countUserConversations(String userIp) {
+        return reactiveMongoTemplate.count(Query.query(Criteria.where("user_ip").is(userIp).and("deleted_at").is(null)),
+                Conversation.class);
+    }
+
+    /**
+     * 获取会话详情
+     */
+    public Mono<Conversation> getConversation(String memoryId) {
+        if (!conversationCacheService.isEnabled()) {
+            return findConversation(memoryId);
+        }
+        return Mono.fromCallable(() -> conversationCacheService.peek(memoryId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .switchIfEmpty(Mono.defer(() -> findConversation(memoryId))
+                        .publishOn(Schedulers.boundedElastic())
+                        .doOnNext(conversationCacheService::put));
+    }
+
+    private Mono<Conversation> findConversation(String memoryId) {
+        Query query = Query.query(Criteria.where("memory_id").is(memoryId).and("deleted_at").is(null));
+        return reactiveMongoTemplate.findOne(query, Conversation.class);
+    }
+
+    /**
+     * 按 turn_index 游标分页查询消息，语义同 {@link MessageQueryService#getMessagesPage}
+     */
+    public Mono<MessagePage> getMessagesPage(String memoryId, Integer beforeTurn, int size, boolean includeToolResults) {
+        Mono<List<Message>> query = Mono.defer(() -> reactiveMongoTemplate
+                .aggregate(MessageQueryService.messagesAggregation(memoryId, beforeTurn, size + 1, includeToolResults),
+                        "messages", Message.class)
+                .collectList());
+        return query
+                .flatMap(messages -> messages.isEmpty() && beforeTurn == null
+                        // 热集合中没有消息时可能已归档，回迁是阻塞调用
+                        ? rehydrate(memoryId).flatMap(rehydrated -> rehydrated ? query : Mono.just(messages))
+                        : Mono.just(messages))
+                .map(messages -> MessageQueryService.toPage(messages, size));
+    }
+
+    /**
+     * 流式读取消息（按 turn_index 倒序），随游标逐条发出
+     */
+    public Flux<Message> streamMessages(String memoryId, Integer beforeTurn, boolean includeToolResults) {
+        return rehydrate(memoryId).thenMany(Flux.defer(() -> reactiveMongoTemplate.aggregate(
+                MessageQueryService.messagesAggregation(memoryId, beforeTurn, null, includeToolResults),
+                "messages", Message.class)));
+    }
+
+    private Mono<Boolean> rehydrate(String memoryId) {
+        return Mono.fromCallable(() -> messageArchiveService.rehydrateIfArchived(memoryId))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 统计会话消息总数
+     */
+    public Mono<Long> countMessages(String memoryId) {
+        return reactiveMongoTemplate.count(Query.query(Criteria.where("memory_id").is(memoryId)), Message.class);
+    }
+
+    /**
+     * 检查会话是否存在且有效
+     */
+    public Mono<Boolean> isValidConversation(String memoryId) {
+        if (memoryId == null || memoryId.trim().isEmpty()) {
+            return Mono.just(false);
+        }
+        return getConversation(memoryId).hasElement();
+    }
+
+    /**
+     * 检查会话是否存在且属于该用户
+     */
+    public Mono<Boolean> isOwnedBy(String memoryId, String userIp) {
+        if (memoryId == null || memoryId.trim().isEmpty()) {
+            return Mono.just(false);
+        }
+        return getConversation(memoryId.trim())
+                .map(conversation -> Objects.equals(conversation.getUserIp(), userIp))
+                .defaultIfEmpty(false);
+    }
+
+    /**
+     * 处理和验证 memoryId
+     * 如果客户端提供的 memoryId 无效、为空或不属于该用户，则自动创建新会话
+     */
+    public Mono<String> processMemoryId(String clientMemoryId, String userIp) {
+        return isOwnedBy(clientMemoryId, userIp)
+                .flatMap(valid -> {
+                    if (valid) {
+                        return Mono.just(clientMemoryId.trim());
+                    }
+                    return createNewConversation(userIp)
+                            .map(Conversation::getMemoryId)
+                            .doOnNext(newMemoryId -> log.info("客户端memoryId无效 '{}', 自动创建新会话: {}", clientMemoryId, newMemoryId));
+                });
+    }
+}
@@ -0,0 +1,227 @@
+package com.aiassist.ai.core.service;
+
+import com.aiassist.ai.core.ai.OpenAiClient;
+import com.aiassist.ai.core.entity.Conversation;
+import com.aiassist.ai.core.event.FirstUserMessageEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 会话标题后台生成服务
+ * <p>
+ * 功能特性：
+ * - 监听首条 USER 消息入库事件，在请求线程之外异步生成标题
+ * - 有界队列 + 按 memoryId 去重，同一会话在排队/执行期间只会生成一次
+ * - 仅当标题仍为默认标题时写回（条件更新），生成期间用户手动改名不会被覆盖
+ * - 手动生成接口（{@link #generateForConversation}）遇到进行中的后台任务时等待其完成并返回已保存的标题
+ * - 固定并发数，保护 LLM 调用频率限制
+ * - 结果直接写回 conversations 集合，下一次 getConversationsByIp 即可返回
+ * <p>
+ * 配置说明：
+ * - chat.title.async.enable: 是否启用后台生成，默认true
+ * - chat.title.async.concurrency: 同时进行的标题生成数量，默认2
+ * - chat.title.async.queue-capacity: 排队上限，超出直接丢弃（保留默认标题），默认100
+ */
+@Slf4j
+@Service
+public class TitleGenerationService {
+
+    private static final String TITLE_PROMPT = "请根据用户的第一条消息，给当前新会话创建一个标题。你只需要返回标题内容，不要返回其余的内容。以下是用户的第一条消息：";
+
+    /**
+     * 标题最大长度，避免模型返回过长内容污染侧边栏
+     */
+    private static final int MAX_TITLE_LENGTH = 30;
+
+    /**
+     * 手动生成时等待进行中的后台任务的最长时间
+     */
+    private static final long AWAIT_PENDING_SECONDS = 30;
+
+    @Autowired
+    private OpenAiClient openAiClient;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Value("${chat.title.async.enable:true}")
+    private boolean asyncEnable;
+
+    @Value("${chat.title.async.concurrency:2}")
+    private int concurrency;
+
+    @Value("${chat.title.async.queue-capacity:100}")
+    private int queueCapacity;
+
+    /**
+     * 排队中或执行中的 memoryId -> 任务结束信号，用于去重与手动生成时等待
+     */
+    private final Map<String, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(concurrency, concurrency,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "title-gen-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        log.info("初始化标题生成服务 - 启用: {}, 并发: {}, 队列容量: {}", asyncEnable, concurrency, queueCapacity);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 首条 USER 消息入库后触发
+     */
+    @EventListener
+    public void onFirstUserMessage(FirstUserMessageEvent event) {
+        if (!asyncEnable) {
+            return;
+        }
+        submit(event.getMemoryId(), event.getUserMessage());
+    }
+
+    /**
+     * 提交后台标题生成任务
+     *
+     * @return 是否成功入队（重复或队列已满返回 false）
+     */
+    public boolean submit(String memoryId, String userMessage) {
+        if (memoryId == null || userMessage == null || userMessage.isBlank()) {
+            return false;
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (pending.putIfAbsent(memoryId, done) != null) {
+            log.debug("标题生成任务已在队列中，跳过: memoryId={}", memoryId);
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    generateAndSave(memoryId, userMessage);
+                } finally {
+                    finish(memoryId, done);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            finish(memoryId, done);
+            log.warn("标题生成队列已满，保留默认标题: memoryId={}", memoryId);
+            return false;
+        }
+    }
+
+    private void finish(String memoryId, CompletableFuture<Void> done) {
+        pending.remove(memoryId, done);
+        done.complete(null);
+    }
+
+    /**
+     * 为会话生成并保存标题（手动生成接口使用，同步）
+     * <p>
+     * - 后台任务进行中时等待其完成，已生成则直接返回，不重复调用 LLM
+     * - 标题已不是默认值（后台已生成或用户已改名）时返回已保存的标题
+     * - 否则调用 LLM 生成，条件更新失败（期间被改名或后台写入）时同样返回已保存的标题
+     *
+     * @return 会话当前的标题
+     */
+    public String generateForConversation(String memoryId, String userMessage) {
+        awaitPending(memoryId);
+        String stored = storedTitle(memoryId);
+        if (!conversationService.isDefaultTitle(stored)) {
+            return stored;
+        }
+        String title = generateTitle(userMessage);
+        if (title.isEmpty() || conversationService.updateDefaultTitle(memoryId, title)) {
+            return title.isEmpty() ? stored : title;
+        }
+        return storedTitle(memoryId);
+    }
+
+    private void awaitPending(String memoryId) {
+        CompletableFuture<Void> done = pending.get(memoryId);
+        if (done == null) {
+            return;
+        }
+        try {
+            done.get(AWAIT_PENDING_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("等待后台标题生成被中断", e);
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("等待后台标题生成未完成，改为直接生成: memoryId={}", memoryId);
+        }
+    }
+
+    private String storedTitle(String memoryId) {
+        Conversation conversation = conversationService.getConversation(memoryId);
+        if (conversation == null) {
+            throw new RuntimeException("会话不存在: " + memoryId);
+        }
+        return conversation.getTitle();
+    }
+
+    /**
+     * 调用 LLM 生成标题（同步）
+     */
+    public String generateTitle(String userMessage) {
+        String title = openAiClient.chat(TITLE_PROMPT + userMessage).aiMessage().text();
+        return normalizeTitle(title);
+    }
+
+    private void generateAndSave(String memoryId, String userMessage) {
+        try {
+            // 用户已手动改名或标题已生成，则不再覆盖
+            Conversation conversation = conversationService.getConversation(memoryId);
+            if (conversation == null || !conversationService.isDefaultTitle(conversation.getTitle())) {
+                log.debug("会话不存在或已有标题，跳过: memoryId={}", memoryId);
+                return;
+            }
+
+            String title = generateTitle(userMessage);
+            if (title.isEmpty()) {
+                return;
+            }
+            // 条件更新：LLM 调用期间用户改名时不覆盖
+            boolean changed = conversationService.updateDefaultTitle(memoryId, title);
+            log.info("后台生成标题完成 - memoryId: {}, title: {}, 已更新: {}", memoryId, title, changed);
+        } catch (Exception e) {
+            log.error("后台生成标题失败: memoryId={}", memoryId, e);
+        }
+    }
+
+    private String normalizeTitle(String title) {
+        if (title == null) {
+            return "";
+        }
+        String t = title.strip().replaceAll("^[\"'“”《]+|[\"'“”》]+$", "");
+        return t.length() > MAX_TITLE_LENGTH ? t.substring(0, MAX_TITLE_LENGTH) : t;
+    }
+}
@@ -0,0 +1,145 @@
+package com.aiassist.ai.core.service;
+
+import com.aiassist.ai.core.entity.ToolResultRecord;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * 工具结果压缩与冷存储
+ * <p>
+ * - 网页搜索、网页抓取等工具返回整页文本，原样留在记忆中会在窗口内的每一轮重复发送给模型
+ * - 一轮对话结束后，超过阈值的工具结果整体转存到 tool_results 集合，记忆（Redis）与 messages 集合中只保留开头的摘录和引用ID
+ * - 模型需要更多内容时通过 read_tool_result 工具按引用ID分段读取；读取时校验引用属于当前会话
+ * - 引用ID由 memoryId 与 turn_index 组成，压缩中途失败后重复执行只会覆盖同一文档
+ * - 消息查询接口传 includeToolResults=true 时按引用ID回填全文（见 MessageQueryService）
+ * <p>
+ * 配置说明：
+ * - chat.tool-result.compact.enable: 是否启用压缩，默认true
+ * - chat.tool-result.compact.threshold-chars: 超过该长度（字符）的工具结果才压缩，默认2000
+ * - chat.tool-result.compact.extract-chars: 记忆中保留的摘录长度（字符），默认800
+ * - chat.tool-result.compact.read-page-chars: read_tool_result 单次返回的长度（字符），默认1500
+ */
+@Slf4j
+@Service
+public class ToolResultService {
+
+    /**
+     * 按引用ID读取完整工具结果的工具名
+     */
+    public static final String READ_TOOL_NAME = "read_tool_result";
+
+    /**
+     * 压缩后结果的标记，已带标记的结果不再重复压缩
+     */
+    static final String COMPACTED_MARKER = "[工具结果已压缩";
+
+    /**
+     * 单条完整结果的存储上限（字符），避开 MongoDB 16MB 文档限制
+     */
+    private static final int MAX_CONTENT_CHARS = 4 * 1024 * 1024;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${chat.tool-result.compact.enable:true}")
+    private boolean enable;
+
+    @Value("${chat.tool-result.compact.threshold-chars:2000}")
+    private int thresholdChars;
+
+    @Value("${chat.tool-result.compact.extract-chars:800}")
+    private int extractChars;
+
+    @Value("${chat.tool-result.compact.read-page-chars:1500}")
+    private int readPageChars;
+
+    public boolean isEnabled() {
+        return enable;
+    }
+
+    /**
+     * 压缩一条工具结果：完整内容写入冷存储，返回摘录 + 引用说明
+     *
+     * @return 压缩后的结果文本；无需压缩（未启用、长度未超过阈值、已压缩过、读取工具本身的结果）时返回 null
+     */
+    public String compact(String memoryId, int turnIndex, ToolExecutionResultMessage result) {
+        String text = result.text();
+        if (!enable || text == null || text.length() <= thresholdChars
+                || text.startsWith(COMPACTED_MARKER) || text.contains("\n" + COMPACTED_MARKER)
+                || READ_TOOL_NAME.equals(result.toolName())) {
+            return null;
+        }
+        String refId = memoryId + "-" + turnIndex;
+        mongoTemplate.save(ToolResultRecord.builder()
+                .id(refId)
+                .memoryId(memoryId)
+                .turnIndex(turnIndex)
+                .toolCallId(result.id())
+                .toolName(result.toolName())
+                .content(text.length() > MAX_CONTENT_CHARS ? prefix(text, MAX_CONTENT_CHARS) : text)
+                .length(text.length())
+                .createdTime(LocalDateTime.now())
+                .build());
+        String extract = prefix(text, extractChars);
+        log.info("工具结果已压缩 - memoryId: {}, turn_index: {}, 工具: {}, {} -> {} 字",
+                memoryId, turnIndex, result.toolName(), text.length(), extract.length());
+        return extract + "\n……\n" + COMPACTED_MARKER + "：原文共" + text.length() + "字，以上为开头" + extract.length()
+                + "字。引用ID：" + refId + "，需要更多内容时调用 " + READ_TOOL_NAME + " 读取]";
+    }
+
+    /**
+     * 分段读取完整工具结果
+     *
+     * @param offset 起始位置（字符），为空时从头读取
+     */
+    public String read(String memoryId, String refId, Integer offset) {
+        if (refId == null || refId.isBlank()) {
+            return "引用ID不能为空";
+        }
+        ToolResultRecord record = mongoTemplate.findById(refId.strip(), ToolResultRecord.class);
+        // 只能读取当前会话的工具结果
+        if (record == null || !record.getMemoryId().equals(memoryId)) {
+            return "未找到引用ID对应的工具结果: " + refId;
+        }
+        String content = record.getContent();
+        int start = offset == null ? 0 : Math.max(0, Math.min(offset, content.length()));
+        int end = Math.min(content.length(), start + readPageChars);
+        if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        StringBuilder sb = new StringBuilder()
+                .append("工具 ").append(record.getToolName()).append(" 的完整结果，第 ").append(start).append('-').append(end)
+                .append(" 字（共 ").append(content.length()).append(" 字）：\n")
+                .append(content, start, end);
+        if (end < content.length()) {
+            sb.append("\n[未读完，继续读取请传 offset=").append(end).append(']');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 删除会话的全部工具结果
+     */
+    public void deleteByMemoryId(String memoryId) {
+        mongoTemplate.remove(Query.query(Criteria.where("memory_id").is(memoryId)), ToolResultRecord.class);
+    }
+
+    /**
+     * 截取前 length 个字符，不拆开代理对
+     */
+    private static String prefix(String text, int length) {
+        if (text.length() <= length) {
+            return text;
+        }
+        int end = Character.isHighSurrogate(text.charAt(length - 1)) ? length - 1 : length;
+        return text.substring(0, end);
+    }
+}
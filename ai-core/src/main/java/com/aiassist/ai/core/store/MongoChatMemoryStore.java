@@ -4,7 +4,14 @@ import com.aiassist.ai.core.config.PromptProvider;
 import com.aiassist.ai.core.entity.ChatMessageWrapper;
 import com.aiassist.ai.core.entity.Conversation;
 import com.aiassist.ai.core.entity.Message;
+import com.aiassist.ai.core.event.ContextEvictedEvent;
+import com.aiassist.ai.core.event.ConversationChangedEvent;
+import com.aiassist.ai.core.event.FirstUserMessageEvent;
+import com.aiassist.ai.core.memory.MessageTokenCounter;
 import com.aiassist.ai.core.service.ChatMessageCacheService;
+import com.aiassist.ai.core.service.ConversationSummaryService;
+import com.aiassist.ai.core.service.MessageArchiveService;
+import com.aiassist.ai.core.service.ToolResultService;
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.SystemMessage;
@@ -14,6 +21,7 @@ import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -34,6 +42,8 @@ import java.util.stream.Collectors;
 @Component
 public class MongoChatMemoryStore implements ChatMemoryStore {
 
+    public static final String WINDOW_MODE_TOKENS = "tokens";
+
     @Autowired
     private PromptProvider promptProvider;
 
@@ -43,6 +53,21 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
     @Autowired
     private ChatMessageCacheService cacheService;
 
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MessageTokenCounter messageTokenCounter;
+
+    @Autowired
+    private ToolResultService toolResultService;
+
     /**
      * 最大记忆消息窗口大小，消息淘汰的基准（不包含SystemMessage）
      */
@@ -55,6 +80,24 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
     @Value("${chat.cache.max-size:7}")
     private int cacheMaxSize;
 
+    /**
+     * 窗口裁剪方式：messages 按消息条数（memoryMaxSize），tokens 按 token 预算
+     */
+    @Value("${chat.memory.window-mode:messages}")
+    private String windowMode;
+
+    /**
+     * tokens 模式下实际消息（不包含SystemMessage）的 token 预算
+     */
+    @Value("${chat.memory.max-tokens:4000}")
+    private int memoryMaxTokens;
+
+    /**
+     * tokens 模式下的消息条数上限，同时是缓存未命中时从MongoDB加载的条数
+     */
+    @Value("${chat.memory.token-window-max-size:50}")
+    private int tokenWindowMaxSize;
+
     /**
      * 获取消息内容用于日志显示
      */
@@ -102,7 +145,7 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
                 // 如果有缓存，直接返回缓存结果
 //                delIsolateToolResultChatMessage(cachedMessages); 没必要 getMessage里面检查了,会死循环
                 logMessageList("getMessages 方法调用 (缓存)", cachedMessages);
-                return cachedMessages;
+                return withSummary(memoryIdStr, cachedMessages);
             }
 
             // 2. 缓存未命中，从MongoDB获取最近的消息
@@ -121,7 +164,7 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
 
             logMessageList("getMessages 方法调用 (mongo)", chatMessages);
 
-            return chatMessages;
+            return withSummary(memoryIdStr, chatMessages);
 
         } catch (Exception e) {
             log.error("❌ [MEMORY] 获取聊天记忆失败: memoryId={}", memoryIdStr, e);
@@ -129,6 +172,35 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
         }
     }
 
+    /**
+     * 组装返回给模型的消息列表
+     * <p>
+     * - 第一条 SystemMessage 统一替换为 PromptProvider 的当前提示词：缓存中可能是旧版本提示词，
+     *   前缀不一致会让服务端的前缀缓存失效
+     * - summary 记忆模式：把会话摘要作为第二条 SystemMessage 放在系统提示词之后，摘要变化不影响其前面的前缀
+     * <p>
+     * 摘要不会被持久化：updateMessages 只保留第一条 SystemMessage，其余 SystemMessage 在过滤时丢弃
+     */
+    private List<ChatMessage> withSummary(String memoryId, List<ChatMessage> messages) {
+        if (messages.isEmpty() || !(messages.get(0) instanceof SystemMessage)) {
+            return messages;
+        }
+        SystemMessage systemMessage = createSystemMessage();
+        String summary = conversationSummaryService.getSummary(memoryId);
+        if (summary == null) {
+            if (!systemMessage.equals(messages.get(0))) {
+                messages = new ArrayList<>(messages);
+                messages.set(0, systemMessage);
+            }
+            return messages;
+        }
+        List<ChatMessage> result = new ArrayList<>(messages.size() + 1);
+        result.add(systemMessage);
+        result.add(SystemMessage.from(ConversationSummaryService.SUMMARY_MESSAGE_PREFIX + summary));
+        result.addAll(messages.subList(1, messages.size()));
+        return result;
+    }
+
     /**
      * 去除孤立的TOOL_RESULT
      */
@@ -185,12 +257,12 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
             ChatMessage lastMessage = nonSystemMessages.get(nonSystemMessages.size() - 1);
             // 1. 增加工具调用失败的回滚逻辑
             if ((lastMessage instanceof UserMessage || messageIsToolCall(lastMessage)) && nonSystemMessages.size() > 1) {
-                ChatMessage previousMessage = nonSystemMessages.get(nonSystemMessages.size() - 2);
-                if (messageIsToolCall(previousMessage)) {
+                int batchStart = incompleteToolBatchStart(nonSystemMessages, nonSystemMessages.size() - 1);
+                if (batchStart >= 0) {
                     log.info("[ROLLBACK] 检测到失败的TOOL_CALL，执行回滚...");
                     // TODO 回滚后, 新UserMessage turn_index 问题检查
-                    // 1) 先从 nonSystemMessages 中移除那条 TOOL_CALL
-                    nonSystemMessages.remove(nonSystemMessages.size() - 2);// 移除那条失败的TOOL_CALL
+                    // 1) 先从 nonSystemMessages 中移除那条 TOOL_CALL（及其未到齐的 TOOL_RESULT）
+                    nonSystemMessages.subList(batchStart, nonSystemMessages.size() - 1).clear();
                     // 2) 同步回滚 wrapper（删除尾部 TOOL_CALL 并 currentTurnIndex--）
 //                    rollbackIfUserAfterToolCall(wrapper, nonSystemMessages);
 //                    // 3) 这次属于“最终态”：入库 + 覆盖缓存
@@ -206,19 +278,25 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
             if (lastMessage instanceof AiMessage && ((AiMessage) lastMessage).hasToolExecutionRequests()) {
                 // TOOL_CALL：只更Redis (中间状态)
                 log.info("[SKIP] 检测到TOOL_CALL，仅增量更新缓存...");
-                updateRedisCacheIncrementally(memoryIdStr, systemMessage, nonSystemMessages);
+                updateRedisCacheIncrementally(memoryIdStr, systemMessage, nonSystemMessages, false);
                 return;
             } else if (lastMessage instanceof ToolExecutionResultMessage) {
+                if (incompleteToolBatchStart(nonSystemMessages, nonSystemMessages.size()) >= 0) {
+                    // 一次多个工具调用，结果未到齐：只更Redis (中间状态)
+                    log.info("[SKIP] 检测到TOOL_RESULT，同批工具结果未到齐，仅增量更新缓存...");
+                    updateRedisCacheIncrementally(memoryIdStr, systemMessage, nonSystemMessages, false);
+                    return;
+                }
                 log.info("[SAVE] 检测到TOOL_RESULT，开始原子持久化 TOOL_CALL + TOOL_RESULT...");
-                // 1) 落库（saveOnlyNewMessages 内部会识别并把 TOOL_CALL+TOOL_RESULT 一起入库）
+                // 1) 落库（saveOnlyNewMessages 内部会识别并把 TOOL_CALL 与同批全部 TOOL_RESULT 一起入库）
                 saveOnlyNewMessages(memoryIdStr, nonSystemMessages);
-                // 2) 用DB的真实turnIndex覆盖刷新Redis
-                updateRedisCacheIncrementally(memoryIdStr, systemMessage, nonSystemMessages);
+                // 2) 用DB的真实turnIndex覆盖刷新Redis（本轮后续的模型调用仍需要完整结果，暂不压缩）
+                updateRedisCacheIncrementally(memoryIdStr, systemMessage, nonSystemMessages, false);
                 return;
             } else {
-                // 最终AI文本：此时才入库并用DB覆盖缓存
+                // 最终AI文本：此时才入库并用DB覆盖缓存；一轮结束后工具结果不再需要全文，压缩
                 saveOnlyNewMessages(memoryIdStr, nonSystemMessages);
-                updateRedisCacheIncrementally(memoryIdStr, systemMessage, nonSystemMessages);
+                updateRedisCacheIncrementally(memoryIdStr, systemMessage, nonSystemMessages, true);
             }
             log.info("✅ [updateMessages] 完成: memoryId={}", memoryIdStr);
 
@@ -230,7 +308,7 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
 
     private void updateRedisCacheIncrementally(
             String memoryId, SystemMessage systemMessage,
-            List<ChatMessage> nonSystemMessages) {
+            List<ChatMessage> nonSystemMessages, boolean compactToolResults) {
         log.info("=== 增量更新Redis缓存（中间态）===");
         try {
             ChatMessageWrapper wrapper = getOrInitWrapper(memoryId, systemMessage);
@@ -238,18 +316,31 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
                 ChatMessage lastIncoming = nonSystemMessages.get(nonSystemMessages.size() - 1);
                 List<ChatMessage> cachedChats = wrapper.getChatMessages();
                 if (lastIncoming instanceof UserMessage && cachedChats.size() > 1) {
-                    ChatMessage lastCached = cachedChats.get(cachedChats.size() - 1);
-                    if (lastCached instanceof AiMessage &&
-                            ((AiMessage) lastCached).hasToolExecutionRequests()) {
-                        wrapper.getMessages().remove(wrapper.getMessages().size() - 1);
-                        wrapper.setCurrentTurnIndex(Math.max(0, wrapper.getCurrentTurnIndex() - 1));
-                        log.info("⚠️ [REMOVE] 移除孤立的 TOOL_CALL (结尾)");
+                    int batchStart = incompleteToolBatchStart(cachedChats, cachedChats.size());
+                    if (batchStart >= 1) {
+                        int removed = cachedChats.size() - batchStart;
+                        wrapper.getMessages().subList(batchStart, wrapper.getMessages().size()).clear();
+                        wrapper.setCurrentTurnIndex(Math.max(0, wrapper.getCurrentTurnIndex() - removed));
+                        log.info("⚠️ [REMOVE] 移除孤立的 TOOL_CALL (结尾), 共{}条", removed);
                     }
                 }
             }
 
             incrementUpdateWrapper(wrapper, nonSystemMessages);
 
+            // 缓存中的系统提示词与当前版本保持一致
+            ChatMessageWrapper.SerializableMessage head = wrapper.getMessages().get(0);
+            String prompt = createSystemMessage().text();
+            if (head.getType() == ChatMessageWrapper.SerializableMessage.MessageType.SYSTEM
+                    && !prompt.equals(head.getContent())) {
+                head.setContent(prompt);
+                head.setTokenCount(null);
+            }
+
+            if (compactToolResults) {
+                compactToolResults(wrapper);
+            }
+
             controlContextLimit(wrapper);
 
             cacheService.saveWrapper(memoryId, wrapper);
@@ -297,6 +388,12 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
 
         int startIndex = computeTrimStart(wrapper);
 
+        // summary 记忆模式：移出窗口的消息交给后台合并进摘要
+        if (startIndex > 1 && conversationSummaryService.isEnabled()) {
+            int evictedUpTo = wrapper.getMessages().get(startIndex - 1).getTurnIndex();
+            eventPublisher.publishEvent(new ContextEvictedEvent(this, wrapper.getMemoryId(), evictedUpTo));
+        }
+
         trimmed.addAll(wrapper.getMessages().subList(startIndex, size));
 
         wrapper.setMessages(trimmed);
@@ -346,12 +443,73 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
 
     }
 
+    /**
+     * 工具结果压缩：窗口内超过阈值的 TOOL_RESULT 全文转存冷存储，缓存与 messages 集合中替换为摘录 + 引用ID
+     * <p>
+     * 在一轮对话结束（最终AI文本或新的用户消息）时执行，本轮工具调用之后的模型调用仍能看到全文；
+     * 已压缩的结果带有标记，不会重复处理
+     */
+    private void compactToolResults(ChatMessageWrapper wrapper) {
+        if (!toolResultService.isEnabled()) {
+            return;
+        }
+        String memoryId = wrapper.getMemoryId();
+        for (ChatMessageWrapper.SerializableMessage message : wrapper.getMessages()) {
+            if (message.getType() != ChatMessageWrapper.SerializableMessage.MessageType.TOOL_RESULT) {
+                continue;
+            }
+            try {
+                ToolExecutionResultMessage result = (ToolExecutionResultMessage) message.toChatMessage();
+                String compacted = toolResultService.compact(memoryId, message.getTurnIndex(), result);
+                if (compacted == null) {
+                    continue;
+                }
+                ToolExecutionResultMessage compactedResult =
+                        ToolExecutionResultMessage.from(result.id(), result.toolName(), compacted);
+                String info = formatToolResultInfo(compactedResult);
+                message.setContent(info);
+                message.setTokenCount(null);
+
+                Query query = Query.query(Criteria.where("memory_id").is(memoryId)
+                        .and("turn_index").is(message.getTurnIndex())
+                        .and("message_type").is(Message.MessageType.TOOL_RESULT));
+                mongoTemplate.updateFirst(query, new Update()
+                        .set("content.completion", info)
+                        .set("tool_calls.0.result", compacted), Message.class);
+            } catch (Exception e) {
+                // 压缩失败时保留全文，下一轮结束时重试
+                log.warn("⚠️ [COMPACT] 工具结果压缩失败: memoryId={}, turn_index={}, {}",
+                        memoryId, message.getTurnIndex(), e.getMessage());
+            }
+        }
+    }
+
     /**
      * 判断消息是不是 ToolCall
      *
      * @param message
      * @return
      */
+    /**
+     * 结尾未完成的工具调用批次：end 之前最后一条 TOOL_CALL 之后只有 TOOL_RESULT，且结果数少于调用数
+     *
+     * @return 该 TOOL_CALL 的下标，不存在未完成批次时返回 -1
+     */
+    private int incompleteToolBatchStart(List<ChatMessage> messages, int end) {
+        int results = 0;
+        for (int i = end - 1; i >= 0; i--) {
+            ChatMessage message = messages.get(i);
+            if (message instanceof ToolExecutionResultMessage) {
+                results++;
+            } else if (messageIsToolCall(message)) {
+                return results < ((AiMessage) message).toolExecutionRequests().size() ? i : -1;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
     private boolean messageIsToolCall(ChatMessage message) {
         return message instanceof AiMessage && ((AiMessage) message).hasToolExecutionRequests();
     }
@@ -364,9 +522,13 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
             // 获取最近的消息，数量为窗口大小
             Query query = new Query(Criteria.where("memoryId").is(memoryId))
                     .with(Sort.by(Sort.Direction.DESC, "turnIndex"))
-                    .limit(memoryMaxSize);
+                    .limit(isTokenWindow() ? tokenWindowMaxSize : memoryMaxSize);
 
             List<Message> messages = mongoTemplate.find(query, Message.class);
+            // 热集合中没有消息时可能已归档，回迁后重新查询
+            if (messages.isEmpty() && messageArchiveService.rehydrateIfArchived(memoryId)) {
+                messages = mongoTemplate.find(query, Message.class);
+            }
             log.info("🔍 [MONGO] 查询到最近 {} 条消息记录", messages.size());
 
             // 按turnIndex正序排列
@@ -451,6 +613,10 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
                     .limit(1);
 
             Message lastMessage = mongoTemplate.findOne(query, Message.class);
+            // 已归档的会话需先回迁，否则 turn_index 会从 0 重新开始
+            if (lastMessage == null && messageArchiveService.rehydrateIfArchived(memoryId)) {
+                lastMessage = mongoTemplate.findOne(query, Message.class);
+            }
             int maxTurnIndex = lastMessage != null ? lastMessage.getTurnIndex() : 0;
             log.info("🔍 [TURN_INDEX] 当前最大turn_index: {}", maxTurnIndex);
             return maxTurnIndex;
@@ -510,29 +676,30 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
         int cachedCount = cachedMessages.size();
         int startIndex = cachedCount;
 
-        // 若最后一条是 TOOL_RESULT 且缓存末尾是 TOOL_CALL，则回退 1，成对保存
+        // 若最后一条是 TOOL_RESULT 且缓存末尾是 TOOL_CALL（及同批已到达的 TOOL_RESULT），则整批保存
         ChatMessage lastIncoming = currentMessages.get(currentMessages.size() - 1);
-        boolean cacheEndsWithToolCall = cachedCount > 0
-                && (cachedMessages.get(cachedCount - 1) instanceof AiMessage)
-                && ((AiMessage) cachedMessages.get(cachedCount - 1)).hasToolExecutionRequests();
-//        if (lastIncoming instanceof ToolExecutionResultMessage && cacheEndsWithToolCall) {
-//            startIndex = Math.max(0, cachedCount - 1);
-//        }
-        // 特例：TOOL_RESULT 到来且缓存末尾是 TOOL_CALL -> 成对入库，沿用 Redis 中的 turn_index
+        int cachedCallIndex = cachedCount - 1;
+        while (cachedCallIndex >= 0 && cachedMessages.get(cachedCallIndex) instanceof ToolExecutionResultMessage) {
+            cachedCallIndex--;
+        }
+        boolean cacheEndsWithToolCall = cachedCallIndex >= 0 && messageIsToolCall(cachedMessages.get(cachedCallIndex));
+        // 特例：TOOL_RESULT 到来且缓存末尾是 TOOL_CALL -> TOOL_CALL 与同批全部 TOOL_RESULT 一次入库，沿用 Redis 中的 turn_index
         if (lastIncoming instanceof ToolExecutionResultMessage && cacheEndsWithToolCall) {
-            int base = wrapper.getCurrentTurnIndex(); // 这就是 Redis 分配给 TOOL_CALL 的 turn_index
-
-            // 先保存 TOOL_CALL（沿用 base）
-            ChatMessage toolCallMsg = currentMessages.get(cachedCount - 1);
-            Message m1 = createIndividualMessage(memoryId, toolCallMsg, base);
-            if (m1 != null) mongoTemplate.save(m1);
-
-            // 再保存 TOOL_RESULT（base + 1）
-            ChatMessage toolResultMsg = currentMessages.get(cachedCount);
-            Message m2 = createIndividualMessage(memoryId, toolResultMsg, base + 1);
-            if (m2 != null) mongoTemplate.save(m2);
-
-            return; // 成对入库完成，返回
+            // 这就是 Redis 分配给 TOOL_CALL 的 turn_index，同批 TOOL_RESULT 依次 +1
+            int base = wrapper.getCurrentTurnIndex() - (cachedCount - 1 - cachedCallIndex);
+
+            List<Message> batch = new ArrayList<>();
+            for (int i = cachedCallIndex; i < currentMessages.size(); i++) {
+                Message mongoMessage = createIndividualMessage(memoryId, currentMessages.get(i), base + (i - cachedCallIndex));
+                if (mongoMessage != null) {
+                    batch.add(mongoMessage);
+                }
+            }
+            // 单次 insertMany 写入，不会出现 TOOL_CALL 已入库而结果缺失的中间状态
+            mongoTemplate.insert(batch, Message.class);
+            log.info("💾 [SAVE] TOOL_CALL + TOOL_RESULT 整批入库: turn_index={}~{}, 共{}条",
+                    base, base + batch.size() - 1, batch.size());
+            return; // 整批入库完成，返回
         }
 
         int toSave = currentMessages.size() - startIndex;
@@ -554,6 +721,10 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
                 mongoTemplate.save(mongoMessage);
                 log.info("💾 [SAVE] 保存新消息: turn_index={}, type={}, content={}",
                         turnIndex, getMessageType(message), getMessageContentForLog(message));
+                // 会话首条用户消息入库后，通知后台生成标题（不阻塞当前请求）
+                if (turnIndex == 1 && message instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+                    eventPublisher.publishEvent(new FirstUserMessageEvent(this, memoryId, userMessage.singleText()));
+                }
             }
         }
     }
@@ -587,7 +758,9 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
             mongoTemplate.remove(messageQuery, Message.class);
 
             Query conversationQuery = Query.query(Criteria.where("memoryId").is(memoryIdStr));
-            mongoTemplate.remove(conversationQuery, Conversation.class);
+            Conversation removed = mongoTemplate.findAndRemove(conversationQuery, Conversation.class);
+            eventPublisher.publishEvent(ConversationChangedEvent.deleted(this, memoryIdStr,
+                    removed != null ? removed.getUserIp() : null));
 
             log.debug("✅ [MEMORY] 删除聊天记忆成功: memoryId={}", memoryIdStr);
 
@@ -655,8 +828,13 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
 
     private int computeTrimStart(ChatMessageWrapper wrapper) {
         int size = wrapper.getMessages().size();
-        int keep = cacheMaxSize - 1;             // 实际消息最多条数
-        int start = Math.max(1, size - keep);    // 跳过 System(0)
+        int start;
+        if (isTokenWindow()) {
+            start = computeTokenTrimStart(wrapper.getMessages());
+        } else {
+            int keep = cacheMaxSize - 1;         // 实际消息最多条数
+            start = Math.max(1, size - keep);    // 跳过 System(0)
+        }
         while (start < size &&
                 wrapper.getMessages().get(start).getType()
                         == ChatMessageWrapper.SerializableMessage.MessageType.TOOL_RESULT) {
@@ -666,6 +844,55 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
         return start;
     }
 
+    private boolean isTokenWindow() {
+        return WINDOW_MODE_TOKENS.equalsIgnoreCase(windowMode);
+    }
+
+    /**
+     * tokens 模式：从最新消息向前累加 token，超出预算的更早消息移出窗口
+     * <p>
+     * - 最后一条 USER 消息及之后的消息（当前轮次）总是保留，即使超出预算
+     * - TOOL_CALL 与其后同批的全部 TOOL_RESULT 作为一个整体保留或淘汰，不会拆开
+     * - 每条消息的 token 数只在首次参与裁剪时计算，之后从缓存读取
+     */
+    private int computeTokenTrimStart(List<ChatMessageWrapper.SerializableMessage> messages) {
+        int size = messages.size();
+        int currentTurnStart = size;
+        for (int i = size - 1; i >= 1; i--) {
+            if (messages.get(i).getType() == ChatMessageWrapper.SerializableMessage.MessageType.USER) {
+                currentTurnStart = i;
+                break;
+            }
+        }
+
+        int used = 0;
+        int start = size;
+        while (start > 1) {
+            int unitStart = start - 1;
+            int callIndex = unitStart;
+            while (callIndex > 1 && messages.get(callIndex).getType()
+                    == ChatMessageWrapper.SerializableMessage.MessageType.TOOL_RESULT) {
+                callIndex--;
+            }
+            if (callIndex < unitStart
+                    && messages.get(callIndex).getType() == ChatMessageWrapper.SerializableMessage.MessageType.TOOL_CALL) {
+                unitStart = callIndex;
+            }
+            int unitTokens = 0;
+            for (int i = unitStart; i < start; i++) {
+                unitTokens += messageTokenCounter.count(messages.get(i));
+            }
+            boolean currentTurn = unitStart >= currentTurnStart;
+            if (!currentTurn && (used + unitTokens > memoryMaxTokens || size - unitStart > tokenWindowMaxSize)) {
+                break;
+            }
+            used += unitTokens;
+            start = unitStart;
+        }
+        log.info("💾 [computeTokenTrimStart] token 窗口: 保留{}条消息, {} tokens, 预算 {}", size - start, used, memoryMaxTokens);
+        return start;
+    }
+
     /**
      * 获取下一个 turn_index
      */
@@ -686,10 +913,12 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
 
         try {
             Query conversationQuery = Query.query(Criteria.where("memory_id").is(memoryId));
+            LocalDateTime now = LocalDateTime.now();
             Update update = new Update()
-                    .set("last_send_time", LocalDateTime.now());
+                    .set("last_send_time", now);
 
             var result = mongoTemplate.updateFirst(conversationQuery, update, Conversation.class);
+            eventPublisher.publishEvent(ConversationChangedEvent.touched(this, memoryId, now));
             log.info("📊 [STATS] 更新会话统计完成: memoryId={}, 修改数量={}", memoryId, result.getModifiedCount());
         } catch (Exception e) {
             log.error("❌ [STATS] 更新会话统计失败: memoryId={}", memoryId, e);
@@ -733,7 +962,7 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
 
             if (aiMessage.hasToolExecutionRequests()) {
                 // AI工具调用消息
-                String toolCallInfo = formatToolCallInfo(aiMessage.toolExecutionRequests().get(0));
+                String toolCallInfo = formatToolCallInfo(aiMessage.toolExecutionRequests());
                 return Message.builder()
                         .id(UUID.randomUUID().toString())
                         .memoryId(memoryId)
@@ -793,9 +1022,8 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
     /**
      * 格式化工具调用信息
      */
-    private String formatToolCallInfo(dev.langchain4j.agent.tool.ToolExecutionRequest toolRequest) {
-        return String.format("TOOL_CALL|ID:%s|NAME:%s|ARGS:%s",
-                toolRequest.id(), toolRequest.name(), toolRequest.arguments());
+    private String formatToolCallInfo(List<dev.langchain4j.agent.tool.ToolExecutionRequest> toolRequests) {
+        return ChatMessageWrapper.SerializableMessage.formatToolCalls(toolRequests);
     }
 
     /**
@@ -861,7 +1089,12 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
      */
     private ChatMessage parseToolCallMessage(String content) {
         try {
-            if (content.startsWith("TOOL_CALL|")) {
+            if (content.startsWith(ChatMessageWrapper.SerializableMessage.MULTI_TOOL_CALL_PREFIX)) {
+                AiMessage multiToolCall = ChatMessageWrapper.SerializableMessage.parseMultiToolCalls(content);
+                if (multiToolCall != null) {
+                    return multiToolCall;
+                }
+            } else if (content.startsWith("TOOL_CALL|")) {
                 String[] parts = content.split("\\|");
                 String id = null, name = null, args = null;
 
@@ -897,7 +1130,8 @@ public class MongoChatMemoryStore implements ChatMemoryStore {
     private ChatMessage parseToolResultMessage(String content) {
         try {
             if (content.startsWith("ID:")) {
-                String[] parts = content.split("\\|");
+                // 结果正文（如网页文本）本身可能包含 |，只拆出前两段
+                String[] parts = content.split("\\|", 3);
                 String id = null, name = null, result = null;
 
                 for (String part : parts) {
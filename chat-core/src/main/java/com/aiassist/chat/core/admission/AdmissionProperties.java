@@ -0,0 +1,83 @@
+package com.aiassist.chat.core.admission;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 准入控制配置（chat.admission.*）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "chat.admission")
+public class AdmissionProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enable = true;
+
+    /**
+     * local：单机内存令牌桶；redis：多实例共享的 Redis 令牌桶
+     */
+    private String mode = "local";
+
+    /**
+     * 全局排队上限（所有用户、所有类型合计），超出直接拒绝
+     */
+    private int maxQueue = 200;
+
+    /**
+     * 本地模式下最多保留的令牌桶数量，超出时清理已回满的空闲桶
+     */
+    private int maxLocalBuckets = 10000;
+
+    private Budget chat = new Budget(10, 10, 3000);
+
+    private Budget stream = new Budget(5, 10, 3000);
+
+    private Budget title = new Budget(5, 5, 0);
+
+    public Budget budget(AdmissionType type) {
+        return switch (type) {
+            case CHAT -> chat;
+            case STREAM -> stream;
+            case TITLE -> title;
+        };
+    }
+
+    /**
+     * 单个用户的令牌桶预算
+     */
+    @Data
+    public static class Budget {
+        /**
+         * 桶容量（允许的突发请求数）
+         */
+        private int capacity;
+        /**
+         * 每分钟补充的令牌数
+         */
+        private int refillPerMinute;
+        /**
+         * 无令牌时最多排队等待的时间（毫秒），0 表示不排队直接拒绝
+         */
+        private long maxWaitMs;
+
+        public Budget() {
+        }
+
+        public Budget(int capacity, int refillPerMinute, long maxWaitMs) {
+            this.capacity = capacity;
+            this.refillPerMinute = refillPerMinute;
+            this.maxWaitMs = maxWaitMs;
+        }
+
+        /**
+         * 每毫秒补充的令牌数
+         */
+        public double tokensPerMillis() {
+            return refillPerMinute / 60_000.0;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.aiassist.chat.core.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 请求准入控制：按用户（IP）+ 请求类型的令牌桶限流
+ * <p>
+ * - 有令牌：直接放行
+ * - 无令牌但在 maxWaitMs 内能补充到令牌、且全局排队数未满：非阻塞地等待（Mono.delay）后重试
+ * - 否则抛出 {@link RateLimitedException}，由控制器层转换为 429 + Retry-After
+ * <p>
+ * local 模式令牌桶在进程内；redis 模式由 Lua 脚本在 Redis 上原子地完成补充与扣减，
+ * 多个实例共享同一份预算，Redis 不可用时退回本地令牌桶
+ * <p>
+ * 指标（Micrometer，经 actuator 暴露给 Prometheus）：
+ * - chat.admission.requests{type, outcome=admitted|queued|rejected}: 放行 / 进入排队 / 拒绝的累计次数
+ * - chat.admission.queue.depth: 当前全局排队数
+ */
+@Slf4j
+@Service
+public class AdmissionService {
+
+    private static final String REDIS_KEY_PREFIX = "admission:";
+
+    private static final String REQUESTS_METER = "chat.admission.requests";
+
+    private static final String QUEUE_DEPTH_METER = "chat.admission.queue.depth";
+
+    /**
+     * KEYS[1]=桶 key；ARGV[1]=容量；ARGV[2]=每毫秒补充令牌数
+     * 返回 0 表示取到令牌，否则为下一个令牌可用前的等待毫秒数。时间取 Redis 服务端时间，避免实例间时钟偏差
+     */
+    private static final DefaultRedisScript<Long> TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>("""
+            local capacity = tonumber(ARGV[1])
+            local rate = tonumber(ARGV[2])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1]) or capacity
+            local ts = tonumber(state[2]) or now
+            tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)
+            local wait = 0
+            if tokens >= 1 then
+                tokens = tokens - 1
+            else
+                wait = math.ceil((1 - tokens) / rate)
+            end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) + 1000)
+            return wait
+            """, Long.class);
+
+    @Autowired
+    private AdmissionProperties properties;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final LocalTokenBuckets localBuckets = new LocalTokenBuckets();
+
+    /**
+     * 当前排队中的请求数（全局）
+     */
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final Map<AdmissionType, Counters> counters = new EnumMap<>(AdmissionType.class);
+
+    /**
+     * 未引入 actuator 时（如单元测试）退回进程内的 SimpleMeterRegistry
+     */
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    private static final class Counters {
+        final Counter admitted;
+        final Counter queued;
+        final Counter rejected;
+
+        Counters(MeterRegistry registry, AdmissionType type) {
+            String tag = type.name().toLowerCase();
+            admitted = counter(registry, tag, "admitted");
+            queued = counter(registry, tag, "queued");
+            rejected = counter(registry, tag, "rejected");
+        }
+
+        private static Counter counter(MeterRegistry registry, String type, String outcome) {
+            return Counter.builder(REQUESTS_METER)
+                    .description("准入控制请求数")
+                    .tag("type", type)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+    }
+
+    @PostConstruct
+    void initMeters() {
+        MeterRegistry registry = meterRegistryProvider.getIfAvailable(SimpleMeterRegistry::new);
+        for (AdmissionType type : AdmissionType.values()) {
+            counters.put(type, new Counters(registry, type));
+        }
+        Gauge.builder(QUEUE_DEPTH_METER, queueDepth, AtomicInteger::get)
+                .description("准入控制当前排队数")
+                .register(registry);
+    }
+
+    /**
+     * 在准入后执行单值请求
+     */
+    public <T> Mono<T> admit(AdmissionType type, String userKey, Supplier<Mono<T>> action) {
+        return acquire(type, userKey).then(Mono.defer(action));
+    }
+
+    /**
+     * 在准入后执行流式请求
+     */
+    public <T> Flux<T> admitMany(AdmissionType type, String userKey, Supplier<Flux<T>> action) {
+        return acquire(type, userKey).thenMany(Flux.defer(action));
+    }
+
+    /**
+     * 取得一个准入令牌；拒绝时以 {@link RateLimitedException} 结束
+     */
+    public Mono<Void> acquire(AdmissionType type, String userKey) {
+        if (!properties.isEnable()) {
+            return Mono.empty();
+        }
+        AdmissionProperties.Budget budget = properties.budget(type);
+        Counters counter = counters.get(type);
+        return tryAcquire(type, userKey, budget).flatMap(waitMs -> {
+            if (waitMs <= 0) {
+                counter.admitted.increment();
+                return Mono.<Void>empty();
+            }
+            if (waitMs > budget.getMaxWaitMs() || !enterQueue()) {
+                counter.rejected.increment();
+                log.warn("请求被限流 - type: {}, key: {}, retryAfter: {}ms", type, userKey, waitMs);
+                return Mono.<Void>error(new RateLimitedException(type, waitMs));
+            }
+            counter.queued.increment();
+            long deadline = System.currentTimeMillis() + budget.getMaxWaitMs();
+            return waitForToken(type, userKey, budget, deadline, waitMs)
+                    .doFinally(signal -> queueDepth.decrementAndGet());
+        });
+    }
+
+    private Mono<Void> waitForToken(AdmissionType type, String userKey, AdmissionProperties.Budget budget,
+                                    long deadline, long waitMs) {
+        Counters counter = counters.get(type);
+        return Mono.delay(Duration.ofMillis(waitMs))
+                .then(tryAcquire(type, userKey, budget))
+                .flatMap(nextWaitMs -> {
+                    if (nextWaitMs <= 0) {
+                        counter.admitted.increment();
+                        return Mono.<Void>empty();
+                    }
+                    // 同一用户的其他请求先拿走了令牌，在截止时间内继续等
+                    if (System.currentTimeMillis() + nextWaitMs > deadline) {
+                        counter.rejected.increment();
+                        return Mono.<Void>error(new RateLimitedException(type, nextWaitMs));
+                    }
+                    return waitForToken(type, userKey, budget, deadline, nextWaitMs);
+                });
+    }
+
+    private boolean enterQueue() {
+        if (queueDepth.incrementAndGet() > properties.getMaxQueue()) {
+            queueDepth.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return 0 表示取到令牌，否则为需要等待的毫秒数
+     */
+    private Mono<Long> tryAcquire(AdmissionType type, String userKey, AdmissionProperties.Budget budget) {
+        String key = LocalTokenBuckets.keyOf(type, userKey);
+        if (!"redis".equalsIgnoreCase(properties.getMode())) {
+            return Mono.fromSupplier(() -> tryAcquireLocal(key, budget));
+        }
+        // Redis 调用是阻塞 IO，不能占用事件循环线程
+        return Mono.fromSupplier(() -> tryAcquireRedis(key, budget))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private long tryAcquireLocal(String key, AdmissionProperties.Budget budget) {
+        if (localBuckets.size() > properties.getMaxLocalBuckets()) {
+            localBuckets.evictIdle(properties);
+        }
+        return localBuckets.tryAcquire(key, budget);
+    }
+
+    private long tryAcquireRedis(String key, AdmissionProperties.Budget budget) {
+        try {
+            Long waitMs = stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, List.of(REDIS_KEY_PREFIX + key),
+                    String.valueOf(budget.getCapacity()), String.valueOf(budget.tokensPerMillis()));
+            return waitMs == null ? 0 : waitMs;
+        } catch (Exception e) {
+            log.warn("Redis 令牌桶不可用，退回本地令牌桶: {}", e.getMessage());
+            return tryAcquireLocal(key, budget);
+        }
+    }
+
+    /**
+     * 准入统计：各类型的放行 / 排队 / 拒绝累计次数，以及当前排队数（与 Micrometer 指标同源）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", properties.getMode());
+        stats.put("queueDepth", queueDepth.get());
+        stats.put("maxQueue", properties.getMaxQueue());
+        for (AdmissionType type : AdmissionType.values()) {
+            Counters counter = counters.get(type);
+            Map<String, Long> typeStats = new LinkedHashMap<>();
+            typeStats.put("admitted", (long) counter.admitted.count());
+            typeStats.put("queued", (long) counter.queued.count());
+            typeStats.put("rejected", (long) counter.rejected.count());
+            stats.put(type.name().toLowerCase(), typeStats);
+        }
+        return stats;
+    }
+}
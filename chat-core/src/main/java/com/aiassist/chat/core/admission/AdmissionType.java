@@ -0,0 +1,19 @@
+package com.aiassist.chat.core.admission;
+
+/**
+ * 准入控制的预算类型，每种类型按用户单独计数
+ */
+public enum AdmissionType {
+    /**
+     * 非流式对话
+     */
+    CHAT,
+    /**
+     * 流式对话
+     */
+    STREAM,
+    /**
+     * 会话标题生成
+     */
+    TITLE
+}
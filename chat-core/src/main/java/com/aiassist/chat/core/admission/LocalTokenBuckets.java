@@ -0,0 +1,82 @@
+package com.aiassist.chat.core.admission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内令牌桶集合（分段锁）
+ * <p>
+ * 桶状态按 key 存放，更新时按 key 的哈希取固定数量的锁之一，
+ * 不同用户的请求大多落在不同的锁上，也不必为每个 key 单独创建锁对象
+ */
+class LocalTokenBuckets {
+
+    private static final int STRIPES = 64;
+
+    private final Object[] locks = new Object[STRIPES];
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private static final class Bucket {
+        double tokens;
+        long lastRefillMillis;
+
+        Bucket(double tokens, long lastRefillMillis) {
+            this.tokens = tokens;
+            this.lastRefillMillis = lastRefillMillis;
+        }
+    }
+
+    LocalTokenBuckets() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 尝试取一个令牌
+     *
+     * @return 0 表示成功；否则为下一个令牌可用前需要等待的毫秒数
+     */
+    long tryAcquire(String key, AdmissionProperties.Budget budget) {
+        double rate = budget.tokensPerMillis();
+        int capacity = budget.getCapacity();
+        long now = System.currentTimeMillis();
+        synchronized (locks[(key.hashCode() & 0x7fffffff) % STRIPES]) {
+            Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity, now));
+            bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.lastRefillMillis) * rate);
+            bucket.lastRefillMillis = now;
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+            return rate <= 0 ? Long.MAX_VALUE : (long) Math.ceil((1 - bucket.tokens) / rate);
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    /**
+     * 清理已回满的空闲桶（回满的桶与新建的桶等价，删除不影响限流结果）
+     */
+    void evictIdle(AdmissionProperties properties) {
+        long now = System.currentTimeMillis();
+        buckets.entrySet().removeIf(entry -> {
+            AdmissionProperties.Budget budget = properties.budget(typeOf(entry.getKey()));
+            Bucket bucket = entry.getValue();
+            synchronized (locks[(entry.getKey().hashCode() & 0x7fffffff) % STRIPES]) {
+                return bucket.tokens + (now - bucket.lastRefillMillis) * budget.tokensPerMillis() >= budget.getCapacity();
+            }
+        });
+    }
+
+    static String keyOf(AdmissionType type, String userKey) {
+        return type.name() + ":" + userKey;
+    }
+
+    private static AdmissionType typeOf(String key) {
+        return AdmissionType.valueOf(key.substring(0, key.indexOf(':')));
+    }
+}
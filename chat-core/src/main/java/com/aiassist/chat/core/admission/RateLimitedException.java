@@ -0,0 +1,23 @@
+package com.aiassist.chat.core.admission;
+
+import lombok.Getter;
+
+/**
+ * 请求被准入控制拒绝（对应 HTTP 429）
+ */
+@Getter
+public class RateLimitedException extends RuntimeException {
+
+    private final AdmissionType type;
+
+    /**
+     * 建议客户端的重试等待时间（毫秒）
+     */
+    private final long retryAfterMillis;
+
+    public RateLimitedException(AdmissionType type, long retryAfterMillis) {
+        super("请求过于频繁，请稍后再试");
+        this.type = type;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+}
@@ -0,0 +1,200 @@
+package com.aiassist.chat.core.cache;
+
+import com.aiassist.chat.core.entity.User;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 用户近端缓存（进程内 LRU，按 IP 与 ID 两个索引）
+ * <p>
+ * - 读：未命中时调用 loader 查库并回填；IP 查不到用户时缓存“不存在”（较短 TTL），避免陌生 IP 每次都查库
+ * - 写：由 UserServiceImpl 在写库成功后同步更新或失效（write-through）
+ * - 对外始终返回副本，调用方修改返回的 User 不会污染缓存
+ * <p>
+ * 缓存只在单实例内一致，多实例部署时以 TTL 限制读到旧数据的时间
+ * <p>
+ * 配置说明：
+ * - chat.user-cache.enable: 是否启用，默认true
+ * - chat.user-cache.ttl-seconds: 用户条目有效期（秒），默认300
+ * - chat.user-cache.negative-ttl-seconds: “不存在”条目有效期（秒），默认60
+ * - chat.user-cache.max-entries: 每个索引的条数上限，默认2000
+ */
+@Slf4j
+@Component
+public class UserCache {
+
+    @Value("${chat.user-cache.enable:true}")
+    private boolean enable;
+
+    @Value("${chat.user-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    @Value("${chat.user-cache.negative-ttl-seconds:60}")
+    private long negativeTtlSeconds;
+
+    @Value("${chat.user-cache.max-entries:2000}")
+    private int maxEntries;
+
+    private Map<String, Entry> byIp;
+
+    private Map<Integer, Entry> byId;
+
+    /**
+     * 缓存条目
+     *
+     * @param user       用户，为 null 表示该 IP 没有用户
+     * @param cachedAtMs 写入时间（毫秒）
+     */
+    private record Entry(User user, long cachedAtMs) {
+    }
+
+    @PostConstruct
+    public void init() {
+        byIp = lruMap();
+        byId = lruMap();
+        log.info("用户缓存初始化 - 启用: {}, TTL: {}s, 上限: {}", enable, ttlSeconds, maxEntries);
+    }
+
+    /**
+     * 按 IP 读取用户，未命中时用 loader 查库
+     */
+    public User getByIp(String ipAddress, Function<String, User> loader) {
+        if (!enable) {
+            return loader.apply(ipAddress);
+        }
+        synchronized (this) {
+            Entry entry = byIp.get(ipAddress);
+            if (entry != null && isFresh(entry)) {
+                return copyOf(entry.user());
+            }
+        }
+        User user = loader.apply(ipAddress);
+        synchronized (this) {
+            if (user == null) {
+                byIp.put(ipAddress, new Entry(null, System.currentTimeMillis()));
+            } else {
+                putLocked(copyOf(user));
+            }
+        }
+        return user;
+    }
+
+    /**
+     * 只查缓存，不查库；未命中或已过期返回 null
+     */
+    public synchronized User peekByIp(String ipAddress) {
+        if (!enable) {
+            return null;
+        }
+        Entry entry = byIp.get(ipAddress);
+        return entry != null && isFresh(entry) ? copyOf(entry.user()) : null;
+    }
+
+    /**
+     * 按 ID 读取用户，未命中时用 loader 查库（查不到不缓存）
+     */
+    public User getById(Integer id, Function<Integer, User> loader) {
+        if (!enable) {
+            return loader.apply(id);
+        }
+        synchronized (this) {
+            Entry entry = byId.get(id);
+            if (entry != null && isFresh(entry)) {
+                return copyOf(entry.user());
+            }
+        }
+        User user = loader.apply(id);
+        if (user != null) {
+            synchronized (this) {
+                putLocked(copyOf(user));
+            }
+        }
+        return user;
+    }
+
+    /**
+     * 写入（新建用户、或已知完整最新状态时）
+     */
+    public synchronized void put(User user) {
+        if (enable && user != null && user.getId() != null) {
+            putLocked(copyOf(user));
+        }
+    }
+
+    /**
+     * 就地修改已缓存的用户（两个索引共享同一实例），未缓存时忽略
+     */
+    public synchronized void update(Integer id, Consumer<User> mutator) {
+        if (!enable) {
+            return;
+        }
+        Entry entry = byId.get(id);
+        if (entry != null && entry.user() != null) {
+            mutator.accept(entry.user());
+        }
+    }
+
+    /**
+     * 失效某个用户的全部索引
+     */
+    public synchronized void invalidate(Integer id) {
+        if (!enable || id == null) {
+            return;
+        }
+        Entry entry = byId.remove(id);
+        if (entry != null && entry.user() != null && entry.user().getIpAddress() != null) {
+            byIp.remove(entry.user().getIpAddress());
+        }
+    }
+
+    /**
+     * 失效某个 IP 的条目（包括“不存在”条目）
+     */
+    public synchronized void invalidateIp(String ipAddress) {
+        if (enable && ipAddress != null) {
+            byIp.remove(ipAddress);
+        }
+    }
+
+    private void putLocked(User user) {
+        Entry entry = new Entry(user, System.currentTimeMillis());
+        Entry previous = byId.put(user.getId(), entry);
+        // IP 变化时移除旧 IP 的索引
+        if (previous != null && previous.user() != null && previous.user().getIpAddress() != null
+                && !previous.user().getIpAddress().equals(user.getIpAddress())) {
+            byIp.remove(previous.user().getIpAddress());
+        }
+        if (user.getIpAddress() != null) {
+            byIp.put(user.getIpAddress(), entry);
+        }
+    }
+
+    private boolean isFresh(Entry entry) {
+        long ttl = entry.user() == null ? negativeTtlSeconds : ttlSeconds;
+        return System.currentTimeMillis() - entry.cachedAtMs() < ttl * 1000L;
+    }
+
+    private <K> Map<K, Entry> lruMap() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private static User copyOf(User user) {
+        if (user == null) {
+            return null;
+        }
+        return new User(user.getId(), user.getUserName(), user.getIpAddress(), user.getFirstSeen(),
+                user.getLastSeen(), user.getVisitCount(), user.getTokenUsage());
+    }
+}
@@ -0,0 +1,161 @@
+package com.aiassist.chat.core.cache;
+
+import com.aiassist.chat.core.entity.User;
+import com.aiassist.chat.core.entity.UserVisitDelta;
+import com.aiassist.chat.core.leaderboard.VisitLeaderboard;
+import com.aiassist.chat.core.mapper.UserMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户访问次数写缓冲
+ * <p>
+ * 访问只在内存中累加，后台线程定期把累积的次数与最后访问时间合并成批量 UPDATE；
+ * 写库失败时把次数加回缓冲，下一轮重试；写库成功后同一批增量同步到访问排行榜
+ * <p>
+ * 配置说明：
+ * - chat.user-cache.visit-flush-interval-seconds: 落库间隔（秒），默认10
+ * - chat.user-cache.visit-batch-size: 单条 UPDATE 最多包含的用户数，默认200
+ */
+@Slf4j
+@Component
+public class UserVisitBuffer {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private VisitLeaderboard visitLeaderboard;
+
+    @Value("${chat.user-cache.visit-flush-interval-seconds:10}")
+    private long flushIntervalSeconds;
+
+    @Value("${chat.user-cache.visit-batch-size:200}")
+    private int batchSize;
+
+    /**
+     * 用户ID -> 尚未落库的访问
+     */
+    private final Map<Integer, UserVisitDelta> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-visit-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机前把剩余访问写入数据库
+        flushSafely();
+    }
+
+    /**
+     * 记录一次访问
+     */
+    public void record(Integer id, LocalDateTime seenAt) {
+        pending.merge(id, new UserVisitDelta(id, 1, seenAt), UserVisitBuffer::merge);
+    }
+
+    /**
+     * 把尚未落库的访问叠加到刚从数据库读出的用户上，使缓存中的值与“数据库 + 缓冲”一致
+     */
+    public User applyPending(User user) {
+        if (user == null || user.getId() == null) {
+            return user;
+        }
+        UserVisitDelta delta = pending.get(user.getId());
+        if (delta != null) {
+            user.setVisitCount((user.getVisitCount() == null ? 0 : user.getVisitCount()) + delta.getCount());
+            if (user.getLastSeen() == null || delta.getLastSeen().isAfter(user.getLastSeen())) {
+                user.setLastSeen(delta.getLastSeen());
+            }
+        }
+        return user;
+    }
+
+    /**
+     * 立即落库某个用户的访问（整体覆盖写用户之前调用，避免缓冲中的次数被覆盖后再重复累加）
+     */
+    public void flush(Integer id) {
+        UserVisitDelta delta = pending.remove(id);
+        if (delta != null) {
+            write(List.of(delta));
+        }
+    }
+
+    /**
+     * 丢弃某个用户的缓冲（删除用户时）
+     */
+    public void discard(Integer id) {
+        pending.remove(id);
+    }
+
+    private void flushSafely() {
+        try {
+            flushAll();
+        } catch (Exception e) {
+            log.error("用户访问次数落库失败", e);
+        }
+    }
+
+    void flushAll() {
+        List<UserVisitDelta> batch = new ArrayList<>(batchSize);
+        for (Integer id : pending.keySet()) {
+            UserVisitDelta delta = pending.remove(id);
+            if (delta == null) {
+                continue;
+            }
+            batch.add(delta);
+            if (batch.size() >= batchSize) {
+                write(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    private void write(List<UserVisitDelta> batch) {
+        try {
+            int updated = userMapper.batchAddUserVisit(batch);
+            log.debug("用户访问次数落库 - 用户数: {}, 更新行数: {}", batch.size(), updated);
+        } catch (Exception e) {
+            // 加回缓冲，下一轮重试
+            batch.forEach(delta -> pending.merge(delta.getId(), delta, UserVisitBuffer::merge));
+            throw new RuntimeException("批量更新用户访问次数失败", e);
+        }
+        visitLeaderboard.incrementAll(batch);
+    }
+
+    private static UserVisitDelta merge(UserVisitDelta a, UserVisitDelta b) {
+        LocalDateTime lastSeen = a.getLastSeen().isAfter(b.getLastSeen()) ? a.getLastSeen() : b.getLastSeen();
+        return new UserVisitDelta(a.getId(), a.getCount() + b.getCount(), lastSeen);
+    }
+}
@@ -0,0 +1,129 @@
+package com.aiassist.chat.core.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 对话执行线程配置
+ * <p>
+ * 由 spring.threads.virtual.enabled 切换两种模式：
+ * - 虚拟线程模式（需 JDK 21+ 运行时）：Tomcat 请求处理、非流式对话执行、LangChain4j 流式回调（含工具调用）都运行在虚拟线程上，
+ * 阻塞在 LLM HTTP / Mongo / Redis / MySQL / gRPC 上时不再占用平台线程
+ * - 平台线程模式（默认，JDK 17 下即使开启配置也会回退到此模式）：使用固定大小线程池（core == max），
+ * 默认 200 与原先 Tomcat 工作线程数一致；ThreadPoolExecutor 只有队列满后才会扩容到 core 以上，
+ * 因此不区分 core / max，空闲线程超时回收
+ * <p>
+ * 两种模式都挂载 ContextPropagatingTaskDecorator，提交任务时把已注册的 ThreadLocal（UserContext）带到执行线程
+ * <p>
+ * 并行工具调用使用单独的 toolTaskExecutor，提交永不阻塞：对话任务占满 chatTaskExecutor 时，
+ * 对话线程提交工具任务不会等待自己占用的名额（虚拟线程模式不设并发上限，平台线程模式不排队、满载即拒绝，由调用线程直接执行）
+ * <p>
+ * 配置说明：
+ * - chat.executor.max-concurrency: 虚拟线程模式下同时执行的对话上限，默认1000
+ * - chat.executor.pool-size: 平台线程模式下同时执行的对话上限，默认200
+ * - chat.executor.queue-capacity: 平台线程模式下线程全忙时的排队上限，默认200，超出则拒绝
+ * - chat.executor.tool-pool-size: 平台线程模式下并行工具调用的线程数，默认64
+ */
+@Slf4j
+@Configuration
+public class ChatExecutorConfiguration {
+
+    @Value("${chat.executor.max-concurrency:1000}")
+    private int maxConcurrency;
+
+    @Value("${chat.executor.pool-size:200}")
+    private int poolSize;
+
+    @Value("${chat.executor.queue-capacity:200}")
+    private int queueCapacity;
+
+    @Value("${chat.executor.tool-pool-size:64}")
+    private int toolPoolSize;
+
+    // ==================== 虚拟线程模式 ====================
+
+    @Bean("chatTaskExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public AsyncTaskExecutor chatTaskExecutorVirtual() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("chat-vt-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(maxConcurrency);
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        log.info("对话执行器: 虚拟线程模式, 并发上限: {}", maxConcurrency);
+        return executor;
+    }
+
+    @Bean("toolTaskExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public AsyncTaskExecutor toolTaskExecutorVirtual() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("tool-vt-");
+        executor.setVirtualThreads(true);
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        return executor;
+    }
+
+    /**
+     * 覆盖 LangChain4j OpenAI starter 默认的流式回调线程池（同名 Bean，starter 侧为 ConditionalOnMissingBean），
+     * 流式对话中的工具调用即在此执行器上运行
+     */
+    @Bean("openAiStreamingChatModelTaskExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public AsyncTaskExecutor openAiStreamingChatModelTaskExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("LangChain4j-OpenAI-vt-");
+        executor.setVirtualThreads(true);
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        return executor;
+    }
+
+    // ==================== 平台线程模式 ====================
+
+    @Bean("chatTaskExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public AsyncTaskExecutor chatTaskExecutorPlatform() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("chat-exec-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        log.info("对话执行器: 平台线程模式, 线程数: {}, 排队上限: {}", poolSize, queueCapacity);
+        return executor;
+    }
+
+    @Bean("toolTaskExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public AsyncTaskExecutor toolTaskExecutorPlatform() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("tool-exec-");
+        executor.setCorePoolSize(toolPoolSize);
+        executor.setMaxPoolSize(toolPoolSize);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setKeepAliveSeconds(60);
+        // 不排队：线程全忙时立即拒绝，由取结果的对话线程直接执行
+        executor.setQueueCapacity(0);
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        log.info("工具执行器: 平台线程模式, 线程数: {}", toolPoolSize);
+        return executor;
+    }
+
+    /**
+     * 供控制器 subscribeOn 使用的 Reactor 调度器，底层为 chatTaskExecutor
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler chatScheduler(@Qualifier("chatTaskExecutor") AsyncTaskExecutor chatTaskExecutor) {
+        return Schedulers.fromExecutor(chatTaskExecutor);
+    }
+}
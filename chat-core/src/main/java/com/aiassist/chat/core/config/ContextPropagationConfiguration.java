@@ -1,6 +1,6 @@
 package com.aiassist.chat.core.config;
 
-import com.aiassist.chat.core.context.UserIpThreadLocalAccessor;
+import com.aiassist.chat.core.context.RequestContextThreadLocalAccessor;
 import io.micrometer.context.ContextRegistry;
 import reactor.core.publisher.Hooks;
 
@@ -13,8 +13,7 @@ public class ContextPropagationConfiguration {
     @PostConstruct
     public void init() {
         Hooks.enableAutomaticContextPropagation(); // 关键：启用 Reactor 自动传播
-        ContextRegistry.getInstance().registerThreadLocalAccessor(new UserIpThreadLocalAccessor());
-        // 可选：如果需要 memoryId，也注册对应 accessor
-        // ContextRegistry.getInstance().registerThreadLocalAccessor(new MemoryIdThreadLocalAccessor());
+        // IP 与 memoryId 合并为一个不可变 RequestContext，只注册一个 accessor
+        ContextRegistry.getInstance().registerThreadLocalAccessor(new RequestContextThreadLocalAccessor());
     }
 }
@@ -0,0 +1,77 @@
+package com.aiassist.chat.core.config;
+
+import com.aiassist.chat.core.stream.CancellableHttpClient;
+import com.aiassist.chat.core.stream.CancellableStreamingChatModel;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+import dev.langchain4j.http.client.spring.restclient.SpringRestClient;
+import dev.langchain4j.http.client.spring.restclient.SpringRestClientBuilder;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+
+/**
+ * 流式对话取消配置
+ * <p>
+ * 客户端断开后要真正停止模型生成，需要在两处接入：
+ * - openAiStreamingChatModelHttpClientBuilder：覆盖 LangChain4j OpenAI starter 的同名 Bean（starter 侧为 ConditionalOnMissingBean），
+ * 构建出的 HttpClient 在取消时中断模型响应连接
+ * - 主 StreamingChatModel：装饰 starter 创建的 openAiStreamingChatModel，取消后不再发起后续请求，并落库部分回答
+ */
+@Slf4j
+@Configuration
+public class StreamCancellationConfiguration {
+
+    @Bean("openAiStreamingChatModelHttpClientBuilder")
+    public HttpClientBuilder openAiStreamingChatModelHttpClientBuilder(
+            ObjectProvider<RestClient.Builder> restClientBuilder,
+            @Qualifier("openAiStreamingChatModelTaskExecutor") AsyncTaskExecutor streamingRequestExecutor) {
+        SpringRestClientBuilder delegate = SpringRestClient.builder()
+                .restClientBuilder(restClientBuilder.getIfAvailable(RestClient::builder))
+                .streamingRequestExecutor(streamingRequestExecutor);
+        return new HttpClientBuilder() {
+            @Override
+            public Duration connectTimeout() {
+                return delegate.connectTimeout();
+            }
+
+            @Override
+            public HttpClientBuilder connectTimeout(Duration timeout) {
+                delegate.connectTimeout(timeout);
+                return this;
+            }
+
+            @Override
+            public Duration readTimeout() {
+                return delegate.readTimeout();
+            }
+
+            @Override
+            public HttpClientBuilder readTimeout(Duration timeout) {
+                delegate.readTimeout(timeout);
+                return this;
+            }
+
+            @Override
+            public HttpClient build() {
+                return new CancellableHttpClient(delegate.build());
+            }
+        };
+    }
+
+    @Bean
+    @Primary
+    public StreamingChatModel cancellableStreamingChatModel(
+            @Qualifier("openAiStreamingChatModel") StreamingChatModel openAiStreamingChatModel) {
+        log.info("流式模型启用取消支持: {}", openAiStreamingChatModel.getClass().getSimpleName());
+        return new CancellableStreamingChatModel(openAiStreamingChatModel);
+    }
+}
@@ -0,0 +1,39 @@
+package com.aiassist.chat.core.context;
+
+/**
+ * 请求上下文（不可变）
+ * <p>
+ * 一次对话请求需要在各处共享的信息打包为一个对象，
+ * 传播时只需要搬运一个引用，而不是逐个 ThreadLocal 保存/恢复
+ *
+ * @param userIp       用户 IP
+ * @param memoryId     会话 memoryId
+ * @param cancellation 流式对话的取消信号，非流式调用为 null
+ */
+public record RequestContext(String userIp, String memoryId, StreamCancellation cancellation) {
+
+    public static final RequestContext EMPTY = new RequestContext(null, null, null);
+
+    public static RequestContext of(String userIp, String memoryId) {
+        return new RequestContext(userIp, memoryId, null);
+    }
+
+    public RequestContext withUserIp(String userIp) {
+        return new RequestContext(userIp, memoryId, cancellation);
+    }
+
+    public RequestContext withMemoryId(String memoryId) {
+        return new RequestContext(userIp, memoryId, cancellation);
+    }
+
+    public RequestContext withCancellation(StreamCancellation cancellation) {
+        return new RequestContext(userIp, memoryId, cancellation);
+    }
+
+    /**
+     * 所属的流式对话是否已被取消
+     */
+    public boolean isCancelled() {
+        return cancellation != null && cancellation.isCancelled();
+    }
+}
@@ -0,0 +1,34 @@
+package com.aiassist.chat.core.context;
+
+import io.micrometer.context.ThreadLocalAccessor;
+
+/**
+ * RequestContext 的 ThreadLocal 访问器，注册到 ContextRegistry 后：
+ * - Reactor 自动上下文传播（Hooks.enableAutomaticContextPropagation）在切换线程时恢复 RequestContext
+ * - ContextPropagatingTaskDecorator 提交任务时把 RequestContext 带到执行线程
+ * <p>
+ * 整个上下文只有这一个 key，每次传播只搬运一个不可变对象引用
+ */
+public class RequestContextThreadLocalAccessor implements ThreadLocalAccessor<RequestContext> {
+    public static final String KEY = "REQUEST_CONTEXT";
+
+    @Override
+    public Object key() {
+        return KEY;
+    }
+
+    @Override
+    public RequestContext getValue() {
+        return UserContext.current();
+    }
+
+    @Override
+    public void setValue(RequestContext value) {
+        UserContext.set(value);
+    }
+
+    @Override
+    public void setValue() {
+        UserContext.clear();
+    }
+}
@@ -0,0 +1,104 @@
+package com.aiassist.chat.core.context;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 流式对话的取消信号
+ * <p>
+ * 客户端断开时由控制器触发 {@link #cancel()}，各层据此停止工作：
+ * - HTTP 层：中断正在读取的模型流式响应连接
+ * - 模型层：不再发起后续（工具调用之后的）模型请求
+ * - 工具层：不再等待 gRPC 结果
+ * <p>
+ * 同时记录"当前这次模型调用"已输出的文本（每次模型请求开始时清空），
+ * 流被中断时交给 {@link #onAborted(Consumer)} 登记的处理器，用于落库不完整的回答
+ */
+@Slf4j
+public final class StreamCancellation {
+
+    private volatile boolean cancelled;
+
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
+
+    private final StringBuilder segment = new StringBuilder();
+
+    private volatile Consumer<String> abortHandler;
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 触发取消，只生效一次
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+        }
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                log.warn("执行取消回调失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 登记取消回调；已取消时立即执行
+     *
+     * @return 取消登记的函数，调用方结束后应执行以免回调堆积
+     */
+    public Runnable onCancel(Runnable callback) {
+        callbacks.add(callback);
+        if (cancelled && callbacks.remove(callback)) {
+            callback.run();
+        }
+        return () -> callbacks.remove(callback);
+    }
+
+    // ==================== 当前模型调用的输出 ====================
+
+    /**
+     * 一次新的模型请求开始
+     */
+    public synchronized void beginSegment() {
+        segment.setLength(0);
+    }
+
+    public synchronized void appendSegment(String text) {
+        if (text != null) {
+            segment.append(text);
+        }
+    }
+
+    /**
+     * 登记流被中断时的处理器，参数为当前模型调用已输出的文本
+     */
+    public void onAborted(Consumer<String> handler) {
+        this.abortHandler = handler;
+    }
+
+    /**
+     * 模型流式响应因取消而中断（由模型层在中断后的回调线程上调用）
+     */
+    public void aborted() {
+        Consumer<String> handler = abortHandler;
+        if (handler == null) {
+            return;
+        }
+        String partial;
+        synchronized (this) {
+            partial = segment.toString();
+            segment.setLength(0);
+        }
+        handler.accept(partial);
+    }
+}
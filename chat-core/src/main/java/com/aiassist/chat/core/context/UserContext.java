@@ -2,41 +2,158 @@ package com.aiassist.chat.core.context;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户请求上下文
+ * <p>
+ * - 当前线程持有一个不可变的 {@link RequestContext}（单个 ThreadLocal），
+ * 通过 {@link RequestContextThreadLocalAccessor} 在 Reactor 算子、线程池任务、虚拟线程之间传播
+ * - 另外按 memoryId 登记进行中的请求上下文：流式对话的工具调用运行在 LangChain4j 的回调线程上，
+ * ThreadLocal 不一定存在，此时工具可通过 @ToolMemoryId 拿到 memoryId 再查登记表
+ * <p>
+ * 使用方式：
+ * - 同步调用：执行线程上 {@link #bind(RequestContext)} / {@link #unbind(RequestContext)}
+ * - 流式调用：contextWrite 写入 Reactor Context，订阅时 {@link #register(RequestContext)}，doFinally 时 {@link #unregister(RequestContext)}
+ * - 工具使用 {@link #resolve(Object)} 获取上下文
+ */
 @Slf4j
 public class UserContext {
-    private static final ThreadLocal<String> currentUserIp = new ThreadLocal<>();
-    private static final ThreadLocal<String> currentMemoryId = new ThreadLocal<>();
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 进行中的请求：memoryId -> 上下文
+     */
+    private static final Map<String, RequestContext> ACTIVE = new ConcurrentHashMap<>();
+
+    // ==================== 当前线程 ====================
+
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+
+    public static void set(RequestContext context) {
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+    }
 
     public static void setCurrentUserIp(String ip) {
-        currentUserIp.set(ip);
-//        log.info("🔧 [UserContext] 设置ThreadLocal IP: {} , 线程: {}", ip, Thread.currentThread().getName());
+        RequestContext ctx = CURRENT.get();
+        CURRENT.set(ctx == null ? RequestContext.of(ip, null) : ctx.withUserIp(ip));
     }
 
     public static String getCurrentUserIp() {
-        String ip = currentUserIp.get();
-//        log.info("🔧 [UserContext] 获取ThreadLocal IP: {} , 线程: {}", ip, Thread.currentThread().getName());
-        return ip;
+        RequestContext ctx = CURRENT.get();
+        return ctx == null ? null : ctx.userIp();
     }
 
     public static void setCurrentMemoryId(String memoryId) {
-        currentMemoryId.set(memoryId);
+        RequestContext ctx = CURRENT.get();
+        CURRENT.set(ctx == null ? RequestContext.of(null, memoryId) : ctx.withMemoryId(memoryId));
     }
 
     public static String getCurrentMemoryId() {
-        return currentMemoryId.get();
+        RequestContext ctx = CURRENT.get();
+        return ctx == null ? null : ctx.memoryId();
     }
 
     public static void clear() {
-        currentUserIp.remove();
-        currentMemoryId.remove();
+        CURRENT.remove();
+    }
+
+    /**
+     * 在当前线程临时设置上下文执行 action，结束后恢复原值
+     * <p>
+     * 用于订阅流式对话：订阅时同步发起的模型请求、提交的线程池任务都能拿到该上下文
+     */
+    public static void runWith(RequestContext context, Runnable action) {
+        RequestContext previous = CURRENT.get();
+        set(context);
+        try {
+            action.run();
+        } finally {
+            set(previous);
+        }
+    }
+
+    // ==================== 按 memoryId 登记 ====================
+
+    /**
+     * 登记进行中的请求上下文，并设置到当前线程（同步调用使用）
+     */
+    public static void bind(RequestContext context) {
+        set(context);
+        register(context);
+    }
+
+    /**
+     * 取消登记，并清理当前线程（与 bind 在同一线程调用）
+     */
+    public static void unbind(RequestContext context) {
+        clear();
+        unregister(context);
+    }
+
+    /**
+     * 仅登记，不触碰当前线程（流式调用使用，线程间由 Reactor Context 传播）
+     * <p>
+     * 同一 memoryId 已有进行中的请求时不覆盖，避免后到的请求替换掉工具正在使用的上下文；
+     * memoryId 在登记前已由 processMemoryId 校验归属
+     *
+     * @return 是否登记成功
+     */
+    public static boolean register(RequestContext context) {
+        if (context == null || context.memoryId() == null) {
+            return false;
+        }
+        RequestContext existing = ACTIVE.putIfAbsent(context.memoryId(), context);
+        if (existing != null && existing != context) {
+            log.warn("memoryId 已有进行中的请求，保留原登记 - memoryId: {}", context.memoryId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 仅取消登记（仅当登记的仍是同一个上下文时）
+     */
+    public static void unregister(RequestContext context) {
+        if (context != null && context.memoryId() != null) {
+            ACTIVE.remove(context.memoryId(), context);
+        }
+    }
+
+    /**
+     * 解析上下文：优先当前线程，其次按 memoryId 查登记表
+     *
+     * @param memoryId 工具通过 @ToolMemoryId 拿到的 memoryId，可为空
+     * @return 上下文，找不到返回 {@link RequestContext#EMPTY}
+     */
+    public static RequestContext resolve(Object memoryId) {
+        RequestContext ctx = CURRENT.get();
+        if (ctx != null && ctx.userIp() != null) {
+            return ctx;
+        }
+        if (memoryId != null) {
+            RequestContext active = ACTIVE.get(memoryId.toString());
+            if (active != null) {
+                return active;
+            }
+        }
+        return ctx == null ? RequestContext.EMPTY : ctx;
     }
 
     // 调试方法：获取当前上下文信息
     public static String getDebugInfo() {
         StringBuilder sb = new StringBuilder();
         sb.append("当前线程: ").append(Thread.currentThread().getName()).append("\n");
-        sb.append("ThreadLocal IP: ").append(currentUserIp.get()).append("\n");
-        sb.append("ThreadLocal MemoryId: ").append(currentMemoryId.get()).append("\n");
+        sb.append("ThreadLocal IP: ").append(getCurrentUserIp()).append("\n");
+        sb.append("ThreadLocal MemoryId: ").append(getCurrentMemoryId()).append("\n");
+        sb.append("进行中的请求数: ").append(ACTIVE.size()).append("\n");
         return sb.toString();
     }
 }
@@ -0,0 +1,17 @@
+package com.aiassist.chat.core.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 按 IP 汇总的一批 token 增量（批量写入 user.token_usage）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserTokenUsage {
+
+    private String ipAddress;         // 用户IP
+    private Long tokens;              // 本批新增的token数量
+}
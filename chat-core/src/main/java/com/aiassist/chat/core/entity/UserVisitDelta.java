@@ -0,0 +1,20 @@
+package com.aiassist.chat.core.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 一个用户在本批中累积的访问（批量写入 user.visit_count / last_seen）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserVisitDelta {
+
+    private Integer id;               // 用户ID
+    private Integer count;            // 本批新增的访问次数
+    private LocalDateTime lastSeen;   // 本批最后一次访问时间
+}
@@ -0,0 +1,364 @@
+package com.aiassist.chat.core.leaderboard;
+
+import com.aiassist.chat.core.entity.User;
+import com.aiassist.chat.core.entity.UserVisitDelta;
+import com.aiassist.chat.core.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 用户访问排行榜（Redis ZSET，member = 用户ID，score = 访问次数）
+ * <p>
+ * - 访问次数随 UserVisitBuffer 落库时以 ZINCRBY 增量更新（一次脚本调用），upsert 路径单独 ZINCRBY
+ * - Top N 查询为 ZREVRANGE，O(log N + N)，不再全表排序
+ * - 重建：按主键分批扫描 user 表写入临时 key，再在一个脚本中 RENAME 并写入“已重建”标记 key；
+ *   同一时间只有一个实例重建（SET NX 锁）
+ * - 增量只在标记与 ZSET 都存在时执行：ZSET 被淘汰或过期后不会被 ZINCRBY 重新创建出只含部分分数的排行榜
+ * - 重建期间的增量只记下用户ID（日志集合）：扫描结束后按日志从数据库重读这些用户的访问次数覆盖到临时 key，
+ *   日志为空时才原子发布，扫描过的分页之后才落库的访问不会丢失；增量总在数据库提交之后执行（事务中注册到提交后）
+ * - 启动时、以及查询发现标记或 ZSET 缺失时触发重建（查询时异步执行），重建完成前查询退回数据库
+ * - Redis 不可用时返回 null，由调用方退回数据库查询
+ * <p>
+ * 配置说明：
+ * - chat.leaderboard.enable: 是否启用，默认true
+ * - chat.leaderboard.rebuild-batch-size: 重建时每批读取的用户数，默认1000
+ */
+@Slf4j
+@Component
+public class VisitLeaderboard {
+
+    private static final String RANK_KEY = "user:visit:rank";
+
+    private static final String REBUILD_KEY = RANK_KEY + ":rebuild";
+
+    /**
+     * 排行榜已完整重建的标记，ZSET 是否可用以它为准
+     */
+    private static final String BUILT_KEY = RANK_KEY + ":built";
+
+    /**
+     * 重建锁，存在即表示正在重建
+     */
+    private static final String REBUILD_LOCK_KEY = RANK_KEY + ":rebuild-lock";
+
+    /**
+     * 重建期间有访问增量的用户ID
+     */
+    private static final String REBUILD_JOURNAL_KEY = RANK_KEY + ":rebuild-journal";
+
+    private static final Duration REBUILD_LOCK_TTL = Duration.ofMinutes(10);
+
+    /**
+     * 按日志重读后仍有新增量时的最大重试轮数，之后强制发布
+     */
+    private static final int MAX_REPLAY_ROUNDS = 5;
+
+    /**
+     * KEYS[1]=标记 key；KEYS[2]=排行榜 key；KEYS[3]=重建锁；KEYS[4]=重建日志
+     * ARGV[1]=日志过期秒数，其后为 用户ID、增量 交替排列
+     * 已重建时 ZINCRBY 返回 1；正在重建时把用户ID记入日志返回 2；否则不执行返回 0
+     */
+    private static final DefaultRedisScript<Long> INCREMENT_IF_BUILT_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 and redis.call('EXISTS', KEYS[2]) == 1 then
+                for i = 2, #ARGV, 2 do
+                    redis.call('ZINCRBY', KEYS[2], ARGV[i + 1], ARGV[i])
+                end
+                return 1
+            end
+            if redis.call('EXISTS', KEYS[3]) == 1 then
+                for i = 2, #ARGV, 2 do
+                    redis.call('SADD', KEYS[4], ARGV[i])
+                end
+                redis.call('EXPIRE', KEYS[4], ARGV[1])
+                return 2
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * KEYS[1]=重建日志；KEYS[2]=临时 key；KEYS[3]=排行榜 key；KEYS[4]=标记 key
+     * ARGV[1]=1 时忽略日志强制发布
+     * 日志非空时不发布返回 0；否则原子地替换排行榜、写入标记并清空日志，返回 1
+     */
+    private static final DefaultRedisScript<Long> PUBLISH_REBUILD_SCRIPT = new DefaultRedisScript<>("""
+            if ARGV[1] ~= '1' and redis.call('SCARD', KEYS[1]) > 0 then
+                return 0
+            end
+            if redis.call('EXISTS', KEYS[2]) == 1 then
+                redis.call('RENAME', KEYS[2], KEYS[3])
+            else
+                redis.call('DEL', KEYS[3])
+            end
+            redis.call('SET', KEYS[4], '1')
+            redis.call('DEL', KEYS[1])
+            return 1
+            """, Long.class);
+
+    private static final List<String> INCREMENT_KEYS = List.of(BUILT_KEY, RANK_KEY, REBUILD_LOCK_KEY, REBUILD_JOURNAL_KEY);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    @Qualifier("chatTaskExecutor")
+    private AsyncTaskExecutor chatTaskExecutor;
+
+    @Value("${chat.leaderboard.enable:true}")
+    private boolean enable;
+
+    @Value("${chat.leaderboard.rebuild-batch-size:1000}")
+    private int rebuildBatchSize;
+
+    /**
+     * 排行榜条目
+     *
+     * @param userId     用户ID
+     * @param visitCount 访问次数
+     */
+    public record Entry(Integer userId, long visitCount) {
+    }
+
+    /**
+     * 启动时检查排行榜，未完整重建过则从数据库重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfAbsent() {
+        if (!enable) {
+            return;
+        }
+        try {
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(BUILT_KEY))) {
+                return;
+            }
+            rebuild();
+        } catch (Exception e) {
+            log.warn("重建访问排行榜失败，排行榜查询将退回数据库: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按主键分批扫描 user 表重建排行榜；其他实例正在重建时直接返回
+     */
+    public void rebuild() {
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(REBUILD_LOCK_KEY, "1", REBUILD_LOCK_TTL))) {
+            log.debug("访问排行榜正在由其他实例重建");
+            return;
+        }
+        try {
+            doRebuild();
+        } finally {
+            stringRedisTemplate.delete(REBUILD_LOCK_KEY);
+        }
+    }
+
+    private void doRebuild() {
+        // 重建期间标记缺失，增量只记入日志，不写入即将被替换的旧 ZSET
+        stringRedisTemplate.delete(List.of(BUILT_KEY, REBUILD_KEY, REBUILD_JOURNAL_KEY));
+        Integer afterId = null;
+        int total = 0;
+        while (true) {
+            List<User> page = userMapper.selectPageAfterId(afterId, rebuildBatchSize);
+            if (page.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (User user : page) {
+                    conn.zAdd(REBUILD_KEY, user.getVisitCount() == null ? 0 : user.getVisitCount(),
+                            user.getId().toString());
+                }
+                return null;
+            });
+            total += page.size();
+            afterId = page.get(page.size() - 1).getId();
+        }
+        // 扫描期间落库的访问：按日志重读这些用户，日志为空时才发布
+        int replayed = 0;
+        for (int round = 0; ; round++) {
+            boolean force = round >= MAX_REPLAY_ROUNDS;
+            Long published = stringRedisTemplate.execute(PUBLISH_REBUILD_SCRIPT,
+                    List.of(REBUILD_JOURNAL_KEY, REBUILD_KEY, RANK_KEY, BUILT_KEY), force ? "1" : "0");
+            if (published != null && published == 1) {
+                if (force) {
+                    log.warn("访问排行榜重建期间增量持续写入，已强制发布，少量用户分数可能偏低");
+                }
+                break;
+            }
+            replayed += replayJournal();
+        }
+        log.info("访问排行榜重建完成 - 用户数: {}, 重读: {}", total, replayed);
+    }
+
+    /**
+     * 取出日志中的用户ID，从数据库重读访问次数覆盖到临时 key
+     * <p>
+     * 增量在数据库提交之后才记入日志，取出之后重读的值一定包含这些增量
+     *
+     * @return 重读的用户数
+     */
+    private int replayJournal() {
+        int replayed = 0;
+        while (true) {
+            List<String> members = stringRedisTemplate.opsForSet().pop(REBUILD_JOURNAL_KEY, rebuildBatchSize);
+            if (members == null || members.isEmpty()) {
+                return replayed;
+            }
+            Set<Integer> ids = members.stream().map(Integer::valueOf).collect(Collectors.toSet());
+            List<User> users = userMapper.selectByIds(ids);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (User user : users) {
+                    conn.zAdd(REBUILD_KEY, user.getVisitCount() == null ? 0 : user.getVisitCount(),
+                            user.getId().toString());
+                }
+                return null;
+            });
+            replayed += users.size();
+        }
+    }
+
+    /**
+     * 查询发现排行榜不可用时在后台重建
+     */
+    private void rebuildAsync() {
+        try {
+            chatTaskExecutor.execute(() -> {
+                try {
+                    rebuild();
+                } catch (Exception e) {
+                    log.warn("重建访问排行榜失败，排行榜查询将退回数据库: {}", e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            log.warn("提交访问排行榜重建任务失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 单个用户访问次数 +1；在事务中调用时推迟到提交之后
+     */
+    public void increment(Integer userId) {
+        if (!enable || userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doIncrement(userId);
+                }
+            });
+            return;
+        }
+        doIncrement(userId);
+    }
+
+    private void doIncrement(Integer userId) {
+        try {
+            stringRedisTemplate.execute(INCREMENT_IF_BUILT_SCRIPT, INCREMENT_KEYS, journalTtlSeconds(),
+                    userId.toString(), "1");
+        } catch (Exception e) {
+            log.warn("更新访问排行榜失败 - userId: {}, {}", userId, e.getMessage());
+        }
+    }
+
+    private static String journalTtlSeconds() {
+        return String.valueOf(REBUILD_LOCK_TTL.toSeconds());
+    }
+
+    /**
+     * 一批访问增量（UserVisitBuffer 落库成功后调用），一次脚本调用完成
+     */
+    public void incrementAll(Collection<UserVisitDelta> visits) {
+        if (!enable || visits.isEmpty()) {
+            return;
+        }
+        try {
+            Object[] args = new Object[visits.size() * 2 + 1];
+            int i = 0;
+            args[i++] = journalTtlSeconds();
+            for (UserVisitDelta visit : visits) {
+                args[i++] = visit.getId().toString();
+                args[i++] = String.valueOf(visit.getCount());
+            }
+            stringRedisTemplate.execute(INCREMENT_IF_BUILT_SCRIPT, INCREMENT_KEYS, args);
+        } catch (Exception e) {
+            log.warn("批量更新访问排行榜失败 - 用户数: {}, {}", visits.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 移除用户（删除用户时）
+     */
+    public void remove(Integer userId) {
+        if (!enable || userId == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForZSet().remove(RANK_KEY, userId.toString());
+            // 正在重建时临时 key 中可能已扫描到该用户
+            stringRedisTemplate.opsForZSet().remove(REBUILD_KEY, userId.toString());
+        } catch (Exception e) {
+            log.warn("从访问排行榜移除用户失败 - userId: {}, {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * 访问次数前 N 名
+     *
+     * @return 排行榜条目；未启用、尚未重建或 Redis 不可用时返回 null
+     */
+    public List<Entry> top(int limit) {
+        if (!enable) {
+            return null;
+        }
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BUILT_KEY))) {
+                rebuildAsync();
+                return null;
+            }
+            Set<ZSetOperations.TypedTuple<String>> tuples =
+                    stringRedisTemplate.opsForZSet().reverseRangeWithScores(RANK_KEY, 0, limit - 1);
+            if (tuples == null || tuples.isEmpty()) {
+                // 标记仍在而 ZSET 已被淘汰或过期
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(RANK_KEY))) {
+                    stringRedisTemplate.delete(BUILT_KEY);
+                    rebuildAsync();
+                }
+                return null;
+            }
+            List<Entry> entries = new ArrayList<>(tuples.size());
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                entries.add(new Entry(Integer.valueOf(tuple.getValue()),
+                        tuple.getScore() == null ? 0 : tuple.getScore().longValue()));
+            }
+            return entries;
+        } catch (Exception e) {
+            log.warn("查询访问排行榜失败: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.aiassist.chat.core.mapper;
 
 import com.aiassist.chat.core.entity.User;
+import com.aiassist.chat.core.entity.UserTokenUsage;
+import com.aiassist.chat.core.entity.UserVisitDelta;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 @Mapper
@@ -14,6 +17,11 @@ public interface UserMapper {
      */
     User selectById(@Param("id") Integer id);
 
+    /**
+     * 根据ID批量查询用户
+     */
+    List<User> selectByIds(@Param("ids") Collection<Integer> ids);
+
     /**
      * 根据IP地址查询用户
      */
@@ -39,11 +47,26 @@ public interface UserMapper {
      */
     List<User> selectAllOrderByVisitCount();
 
+    /**
+     * 按主键游标分页查询用户（id 升序，afterId 为空时从头开始）
+     */
+    List<User> selectPageAfterId(@Param("afterId") Integer afterId, @Param("limit") int limit);
+
+    /**
+     * 查询访问次数前 N 名用户
+     */
+    List<User> selectTopByVisitCount(@Param("limit") int limit);
+
     /**
      * 插入新用户
      */
     int insertUser(User user);
 
+    /**
+     * 记录用户访问（INSERT ... ON DUPLICATE KEY UPDATE，依赖 ip_address 唯一索引），执行后 user.id 为该 IP 对应的行
+     */
+    int upsertUserVisit(User user);
+
     /**
      * 更新用户信息
      */
@@ -54,11 +77,26 @@ public interface UserMapper {
      */
     int updateUserVisit(@Param("id") Integer id);
 
+    /**
+     * 批量累加用户访问次数并更新最后访问时间（单条 UPDATE）
+     */
+    int batchAddUserVisit(@Param("visits") List<UserVisitDelta> visits);
+
     /**
      * 增加用户token使用量
      */
     int addTokenUsage(@Param("id") Integer id, @Param("tokens") Long tokens);
 
+    /**
+     * 按IP批量增加用户token使用量（单条 UPDATE，只更新已有用户行）
+     */
+    int batchAddTokenUsage(@Param("usages") List<UserTokenUsage> usages);
+
+    /**
+     * 查询已有用户行的IP
+     */
+    List<String> selectExistingIpAddresses(@Param("ipAddresses") List<String> ipAddresses);
+
     /**
      * 根据ID删除用户
      */
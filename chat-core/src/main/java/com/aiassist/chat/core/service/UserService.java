@@ -1,6 +1,7 @@
 package com.aiassist.chat.core.service;
 
 import com.aiassist.chat.core.entity.User;
+import com.aiassist.chat.core.entity.UserTokenUsage;
 
 import java.util.List;
 
@@ -36,6 +37,19 @@ public interface UserService {
      */
     List<User> getUsersByVisitCount();
 
+    /**
+     * 按主键游标分页查询用户
+     *
+     * @param afterId 上一页最后一个用户的ID，首页传 null
+     * @param limit   每页数量
+     */
+    List<User> getUsersPage(Integer afterId, int limit);
+
+    /**
+     * 访问次数前 N 名用户（优先读 Redis 排行榜）
+     */
+    List<User> getTopUsersByVisitCount(int limit);
+
     /**
      * 新增用户
      */
@@ -61,6 +75,18 @@ public interface UserService {
      */
     boolean addTokenUsage(Integer id, Long tokens);
 
+    /**
+     * 按IP批量增加用户token使用量，只更新已有用户行，不创建用户
+     *
+     * @return 更新的行数
+     */
+    int batchAddTokenUsage(List<UserTokenUsage> usages);
+
+    /**
+     * 在给定IP中筛选出已有用户行的IP
+     */
+    List<String> findExistingIpAddresses(List<String> ipAddresses);
+
     /**
      * 删除用户
      */
@@ -1,15 +1,28 @@
 package com.aiassist.chat.core.service.impl;
 
+import com.aiassist.chat.core.cache.UserCache;
+import com.aiassist.chat.core.cache.UserVisitBuffer;
 import com.aiassist.chat.core.entity.User;
+import com.aiassist.chat.core.entity.UserTokenUsage;
+import com.aiassist.chat.core.leaderboard.VisitLeaderboard;
 import com.aiassist.chat.core.mapper.UserMapper;
 import com.aiassist.chat.core.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * 用户服务
+ * <p>
+ * 按 IP / ID 的单个用户查询走 {@link UserCache}，已知用户无需访问数据库；
+ * 写操作成功后同步更新缓存，访问次数经 {@link UserVisitBuffer} 批量异步落库
+ */
 @Slf4j
 @Service
 @Transactional
@@ -18,12 +31,21 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UserVisitBuffer userVisitBuffer;
+
+    @Autowired
+    private VisitLeaderboard visitLeaderboard;
+
     @Override
     public User getUserById(Integer id) {
         if (id == null) {
             return null;
         }
-        return userMapper.selectById(id);
+        return userCache.getById(id, key -> userVisitBuffer.applyPending(userMapper.selectById(key)));
     }
 
     @Override
@@ -31,7 +53,7 @@ public class UserServiceImpl implements UserService {
         if (ipAddress == null || ipAddress.trim().isEmpty()) {
             return null;
         }
-        return userMapper.selectByIpAddress(ipAddress.trim());
+        return userCache.getByIp(ipAddress.trim(), key -> userVisitBuffer.applyPending(userMapper.selectByIpAddress(key)));
     }
 
     @Override
@@ -61,6 +83,29 @@ public class UserServiceImpl implements UserService {
         return userMapper.selectAllOrderByVisitCount();
     }
 
+    @Override
+    public List<User> getUsersPage(Integer afterId, int limit) {
+        return userMapper.selectPageAfterId(afterId, limit);
+    }
+
+    @Override
+    public List<User> getTopUsersByVisitCount(int limit) {
+        List<VisitLeaderboard.Entry> entries = visitLeaderboard.top(limit);
+        if (entries == null) {
+            return userMapper.selectTopByVisitCount(limit);
+        }
+        // 用户信息走近端缓存，访问次数以排行榜为准
+        List<User> users = new ArrayList<>(entries.size());
+        for (VisitLeaderboard.Entry entry : entries) {
+            User user = getUserById(entry.userId());
+            if (user != null) {
+                user.setVisitCount((int) entry.visitCount());
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
     @Override
     public User createUser(String userName, String ipAddress) {
         if (userName == null || userName.trim().isEmpty() ||
@@ -75,12 +120,20 @@ public class UserServiceImpl implements UserService {
             return existingUser;
         }
 
-        // 创建新用户
+        // 创建新用户（ip_address 唯一，同 IP 已有其他用户时返回该用户）
         User newUser = new User(userName.trim(), ipAddress.trim());
-        int result = userMapper.insertUser(newUser);
+        int result;
+        try {
+            result = userMapper.insertUser(newUser);
+        } catch (DuplicateKeyException e) {
+            log.info("该IP已存在用户: {}", ipAddress);
+            userCache.invalidateIp(ipAddress.trim());
+            return getUserByIpAddress(ipAddress);
+        }
 
         if (result > 0) {
             log.info("创建用户成功: {} - {}, ID: {}", userName, ipAddress, newUser.getId());
+            userCache.put(newUser);
             return newUser;
         } else {
             log.error("创建用户失败: {} - {}", userName, ipAddress);
@@ -94,8 +147,13 @@ public class UserServiceImpl implements UserService {
             return false;
         }
 
+        // 先落库缓冲中的访问次数，避免整体覆盖 visit_count 后又被重复累加
+        userVisitBuffer.flush(user.getId());
         int result = userMapper.updateUser(user);
         boolean success = result > 0;
+        // 传入的可能是部分字段，直接失效，下次读取时重新加载
+        userCache.invalidate(user.getId());
+        userCache.invalidateIp(user.getIpAddress());
 
         if (success) {
             log.info("更新用户成功: ID {}", user.getId());
@@ -116,26 +174,28 @@ public class UserServiceImpl implements UserService {
         userName = userName.trim();
         ipAddress = ipAddress.trim();
 
-        // 首先查找是否存在该IP的用户
-        User existingUser = getUserByIpAddress(ipAddress);
+        // 已缓存的同名用户：访问次数走缓冲，无需访问数据库
+        User cachedUser = userCache.peekByIp(ipAddress);
+        if (cachedUser != null && userName.equals(cachedUser.getUserName())) {
+            updateUserVisit(cachedUser.getId());
+            cachedUser.updateVisit();
+            return cachedUser;
+        }
 
-        if (existingUser != null) {
-            // 如果是同一个用户，更新访问信息
-            if (existingUser.getUserName().equals(userName)) {
-                updateUserVisit(existingUser.getId());
-                // 重新查询返回最新数据
-                return getUserById(existingUser.getId());
-            } else {
-                // 如果是不同用户，更新用户名和访问信息
-                existingUser.setUserName(userName);
-                existingUser.updateVisit();
-                updateUser(existingUser);
-                return existingUser;
-            }
-        } else {
-            // 不存在该IP的用户，创建新用户
-            return createUser(userName, ipAddress);
+        // 其余情况（新用户、改名、缓存未命中）单条 upsert，并发下也不会产生同 IP 的重复用户
+        LocalDateTime now = LocalDateTime.now();
+        User visit = new User(null, userName, ipAddress, now, now, 1, 0L);
+        userMapper.upsertUserVisit(visit);
+        visitLeaderboard.increment(visit.getId());
+
+        // MySQL 没有 RETURNING，按主键读回最新行（叠加缓冲中尚未落库的访问）并写入缓存
+        User latest = userVisitBuffer.applyPending(userMapper.selectById(visit.getId()));
+        if (latest == null) {
+            throw new RuntimeException("记录用户访问失败");
         }
+        userCache.put(latest);
+        log.info("记录用户访问: {} - {}, ID: {}, 访问次数: {}", userName, ipAddress, latest.getId(), latest.getVisitCount());
+        return latest;
     }
 
     @Override
@@ -144,16 +204,12 @@ public class UserServiceImpl implements UserService {
             return false;
         }
 
-        int result = userMapper.updateUserVisit(id);
-        boolean success = result > 0;
-
-        if (success) {
-            log.info("更新用户访问信息成功: ID {}", id);
-        } else {
-            log.warn("更新用户访问信息失败: ID {}", id);
-        }
-
-        return success;
+        // 访问次数在内存中累加并批量落库，缓存中的用户同步更新
+        LocalDateTime now = LocalDateTime.now();
+        userVisitBuffer.record(id, now);
+        userCache.update(id, User::updateVisit);
+        log.debug("记录用户访问: ID {}", id);
+        return true;
     }
 
     @Override
@@ -174,14 +230,33 @@ public class UserServiceImpl implements UserService {
         return success;
     }
 
+    @Override
+    public int batchAddTokenUsage(List<UserTokenUsage> usages) {
+        if (usages == null || usages.isEmpty()) {
+            return 0;
+        }
+        return userMapper.batchAddTokenUsage(usages);
+    }
+
+    @Override
+    public List<String> findExistingIpAddresses(List<String> ipAddresses) {
+        if (ipAddresses == null || ipAddresses.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return userMapper.selectExistingIpAddresses(ipAddresses);
+    }
+
     @Override
     public boolean deleteUser(Integer id) {
         if (id == null) {
             return false;
         }
 
+        userVisitBuffer.discard(id);
+        visitLeaderboard.remove(id);
         int result = userMapper.deleteById(id);
         boolean success = result > 0;
+        userCache.invalidate(id);
 
         if (success) {
             log.info("删除用户成功: ID {}", id);
@@ -0,0 +1,70 @@
+package com.aiassist.chat.core.stream;
+
+import com.aiassist.chat.core.context.RequestContext;
+import com.aiassist.chat.core.context.StreamCancellation;
+import com.aiassist.chat.core.context.UserContext;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.core5.http.io.EofSensorInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 可取消的 LangChain4j HttpClient（包装 SpringRestClient）
+ * <p>
+ * 流式请求发起时从当前线程取得 {@link StreamCancellation}，取消时直接中断正在读取的响应连接：
+ * - Apache HttpClient 5：EofSensorInputStream.abort()，丢弃并关闭底层连接，读取线程立即抛出 IOException
+ * - 其他实现：关闭输入流
+ * <p>
+ * 注意不能只关闭 Apache 的响应流：关闭时会先把剩余内容读完以复用连接，相当于继续等模型生成结束
+ */
+@Slf4j
+public class CancellableHttpClient implements HttpClient {
+
+    private final HttpClient delegate;
+
+    public CancellableHttpClient(HttpClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public SuccessfulHttpResponse execute(HttpRequest request) {
+        return delegate.execute(request);
+    }
+
+    @Override
+    public void execute(HttpRequest request, ServerSentEventParser parser, ServerSentEventListener listener) {
+        RequestContext ctx = UserContext.current();
+        StreamCancellation cancellation = ctx == null ? null : ctx.cancellation();
+        if (cancellation == null) {
+            delegate.execute(request, parser, listener);
+            return;
+        }
+        delegate.execute(request, (inputStream, eventListener) -> {
+            Runnable unregister = cancellation.onCancel(() -> abort(inputStream));
+            try {
+                parser.parse(inputStream, eventListener);
+            } finally {
+                unregister.run();
+            }
+        }, listener);
+    }
+
+    private static void abort(InputStream inputStream) {
+        try {
+            if (inputStream instanceof EofSensorInputStream eofSensorInputStream) {
+                eofSensorInputStream.abort();
+            } else {
+                inputStream.close();
+            }
+            log.info("流式对话已取消，中断模型响应连接");
+        } catch (IOException e) {
+            log.debug("中断模型响应连接失败: {}", e.getMessage());
+        }
+    }
+}
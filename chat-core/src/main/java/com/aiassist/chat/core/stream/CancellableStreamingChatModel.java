@@ -0,0 +1,115 @@
+package com.aiassist.chat.core.stream;
+
+import com.aiassist.chat.core.context.RequestContext;
+import com.aiassist.chat.core.context.StreamCancellation;
+import com.aiassist.chat.core.context.UserContext;
+import dev.langchain4j.model.ModelProvider;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 可取消的流式模型（装饰 OpenAiStreamingChatModel）
+ * <p>
+ * - 每次模型请求开始时记录新的输出片段，输出文本同步累积到 {@link StreamCancellation}
+ * - 已取消时不再发起请求（例如工具执行完后的下一轮模型调用），同样通知 {@link StreamCancellation#aborted()}，
+ * 记忆末尾的工具结果之后补一条中断的 AI 消息，一轮对话以 AI 消息结束
+ * - 请求因取消而失败时不再向 AiServices 传递错误（下游已取消订阅），改为通知 {@link StreamCancellation#aborted()}
+ * 由其落库已输出的部分回答；此时 AiServices 不会再写入记忆，落库不会与其并发
+ */
+@Slf4j
+public class CancellableStreamingChatModel implements StreamingChatModel {
+
+    private final StreamingChatModel delegate;
+
+    public CancellableStreamingChatModel(StreamingChatModel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        RequestContext ctx = UserContext.current();
+        StreamCancellation cancellation = ctx == null ? null : ctx.cancellation();
+        if (cancellation == null) {
+            delegate.chat(chatRequest, handler);
+            return;
+        }
+        if (cancellation.isCancelled()) {
+            log.info("流式对话已取消，跳过模型请求 - memoryId: {}", ctx.memoryId());
+            // 本次请求没有输出，清空上一次模型调用的片段后按中断处理
+            cancellation.beginSegment();
+            cancellation.aborted();
+            return;
+        }
+        cancellation.beginSegment();
+        delegate.chat(chatRequest, new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                cancellation.appendSegment(partialResponse);
+                handler.onPartialResponse(partialResponse);
+            }
+
+            @Override
+            public void onPartialThinking(PartialThinking partialThinking) {
+                handler.onPartialThinking(partialThinking);
+            }
+
+            @Override
+            public void onPartialToolCall(PartialToolCall partialToolCall) {
+                handler.onPartialToolCall(partialToolCall);
+            }
+
+            @Override
+            public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                handler.onCompleteToolCall(completeToolCall);
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                // 完整响应已到达，即使刚好被取消也交给 AiServices 正常落库
+                handler.onCompleteResponse(completeResponse);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                if (cancellation.isCancelled()) {
+                    log.info("模型流式响应已中断 - memoryId: {}", ctx.memoryId());
+                    cancellation.aborted();
+                    return;
+                }
+                handler.onError(error);
+            }
+        });
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public List<ChatModelListener> listeners() {
+        return delegate.listeners();
+    }
+
+    @Override
+    public ModelProvider provider() {
+        return delegate.provider();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+}
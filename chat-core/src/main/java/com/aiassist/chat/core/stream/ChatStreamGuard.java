@@ -0,0 +1,89 @@
+package com.aiassist.chat.core.stream;
+
+import com.aiassist.chat.core.context.RequestContext;
+import com.aiassist.chat.core.context.RequestContextThreadLocalAccessor;
+import com.aiassist.chat.core.context.StreamCancellation;
+import com.aiassist.chat.core.context.UserContext;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 流式对话守护
+ * <p>
+ * 为一次流式对话建立 {@link RequestContext}（附带 {@link StreamCancellation}）：
+ * - 订阅时在当前线程设置上下文，同步发起的模型请求、提交到回调线程池的任务都能拿到取消信号
+ * - 按 memoryId 登记，工具通过 @ToolMemoryId 查到同一个上下文
+ * - 下游取消（客户端断开）时触发取消：中断模型响应连接、停止后续模型请求、工具不再等待 gRPC 结果
+ * - 模型输出被中断时，把已输出的部分回答作为一条 AI 消息落库，保证记忆中的一轮对话完整
+ */
+@Slf4j
+@Component
+public class ChatStreamGuard {
+
+    /**
+     * 中断回答的结尾标记，后续对话时模型可据此知道上一条回答不完整
+     */
+    static final String INTERRUPTED_MARK = "（回答已中断）";
+
+    @Autowired
+    @Qualifier("chatMemoryProviderOpenAi")
+    private ChatMemoryProvider chatMemoryProvider;
+
+    public Flux<String> guard(RequestContext context, Supplier<Flux<String>> stream) {
+        StreamCancellation cancellation = new StreamCancellation();
+        RequestContext ctx = context.withCancellation(cancellation);
+        cancellation.onAborted(partial -> persistInterrupted(ctx.memoryId(), partial));
+
+        Flux<String> source = Flux.from(subscriber -> {
+            UserContext.register(ctx);
+            UserContext.runWith(ctx, () -> stream.get().subscribe(subscriber));
+        });
+        return source
+                .doOnCancel(() -> {
+                    log.info("客户端已断开，取消流式对话 - memoryId: {}", ctx.memoryId());
+                    cancellation.cancel();
+                })
+                .doFinally(signalType -> {
+                    UserContext.unregister(ctx);
+                    log.debug("清理用户上下文，信号类型: {}", signalType);
+                })
+                .contextWrite(Context.of(RequestContextThreadLocalAccessor.KEY, ctx));
+    }
+
+    /**
+     * 落库被中断的回答
+     * <p>
+     * 只有记忆末尾是用户消息或工具结果（即模型正在回答、尚未落库）时才补一条 AI 消息；
+     * 末尾已是 AI 消息说明回答已由 AiServices 落库，不再重复写入
+     */
+    private void persistInterrupted(String memoryId, String partial) {
+        if (memoryId == null) {
+            return;
+        }
+        try {
+            ChatMemory memory = chatMemoryProvider.get(memoryId);
+            List<ChatMessage> messages = memory.messages();
+            ChatMessage last = messages.isEmpty() ? null : messages.get(messages.size() - 1);
+            if (!(last instanceof UserMessage) && !(last instanceof ToolExecutionResultMessage)) {
+                return;
+            }
+            memory.add(AiMessage.from(partial + INTERRUPTED_MARK));
+            log.info("已落库中断的回答 - memoryId: {}, 长度: {}", memoryId, partial.length());
+        } catch (Exception e) {
+            log.error("落库中断的回答失败 - memoryId: {}", memoryId, e);
+        }
+    }
+}
@@ -1,36 +1,94 @@
 package com.aiassist.chat.core.tools;
 
+import com.aiassist.chat.core.context.StreamCancellation;
+import com.aiassist.chat.core.context.UserContext;
+import com.aiassist.rpcservice.utils.SearchAndReadUtils;
 import com.aiassist.rpcservice.utils.SearchWebUtils;
 import com.aiassist.rpcservice.utils.ViewWebUtils;
 import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolMemoryId;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * Grpc远程调用的工具类
  */
 @Slf4j
 @Component
 public class GrpcTools {
+    /**
+     * 工具等待异步结果的上限（秒），超时后把提示返回给模型，而不是让整轮对话失败
+     */
+    private static final int SEARCH_WAIT_SECONDS = 12;
+    private static final int VIEW_WAIT_SECONDS = 20;
+    private static final int SEARCH_AND_READ_WAIT_SECONDS = 25;
+
+    private static final String CANCELLED_RESULT = "对话已取消。";
+
     @Autowired
     private SearchWebUtils searchWebUtils;
     @Autowired
     private ViewWebUtils viewWebUtils;
+    @Autowired
+    private SearchAndReadUtils searchAndReadUtils;
 
     @Tool(name = "web_search",
             value = "This method performs a web search function. It takes a 'keyWord' as input, retrieves the corresponding search results, and returns a list of search result items, each item is formatted in a readable format with title, URL, and content for each search result, which can be used to fetch and display web search results.")
-    public String searchWeb(String keyWord) {
-        String res = searchWebUtils.searchWebFormattedDirect(keyWord);
+    public String searchWeb(@ToolMemoryId Object memoryId, String keyWord) {
+        String res = await(memoryId, searchWebUtils.searchWebFormattedAsync(keyWord), SEARCH_WAIT_SECONDS, "网页搜索");
         log.info("TOOL_CALL searchWeb 结果: {}", res);
         return res;
     }
 
     @Tool(name = "get_web_content",
             value = "Retrieve and parse static web page content from the specified URL. Returns the structured content as a string.")
-    public String viewWeb(String url) {
-        String res = viewWebUtils.getWebContent(url, 8); // TODO 超时处理
+    public String viewWeb(@ToolMemoryId Object memoryId, String url) {
+        String res = await(memoryId, viewWebUtils.getWebContentAsync(url, 8), VIEW_WAIT_SECONDS, "网页抓取");
         log.info("TOOL_CALL viewWeb 结果: {}", res);
         return res;
     }
+
+    @Tool(name = "search_and_read",
+            value = "Search the web for the 'keyWord' and read the top result pages in one step. Returns, for each source, its title, URL and the passages most relevant to the keyword (falls back to the search snippet if the page could not be fetched in time). Prefer this over calling web_search followed by several get_web_content calls when the question needs page content.")
+    public String searchAndRead(@ToolMemoryId Object memoryId, String keyWord) {
+        String res = await(memoryId, searchAndReadUtils.searchAndReadAsync(keyWord), SEARCH_AND_READ_WAIT_SECONDS, "搜索并阅读");
+        log.info("TOOL_CALL searchAndRead 结果长度: {}", res.length());
+        return res;
+    }
+
+    /**
+     * 有界等待异步调用结果
+     * <p>
+     * gRPC 请求与回调都在独立线程池上进行，这里只占用工具执行线程，且最长等待 seconds 秒；
+     * 所属流式对话被取消（客户端断开）或等待超时时取消 future，进行中的 gRPC 调用随之取消
+     */
+    private String await(Object memoryId, CompletableFuture<String> future, int seconds, String action) {
+        StreamCancellation cancellation = UserContext.resolve(memoryId).cancellation();
+        Runnable unregister = cancellation == null ? () -> { } : cancellation.onCancel(() -> future.cancel(true));
+        try {
+            return future.get(seconds, TimeUnit.SECONDS);
+        } catch (CancellationException e) {
+            log.info("TOOL_CALL {}已取消（客户端断开）", action);
+            return CANCELLED_RESULT;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("TOOL_CALL {}超时({}s)", action, seconds);
+            return action + "超时，请稍后重试或换一个关键词/链接。";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(action + "被中断", e);
+        } catch (ExecutionException e) {
+            log.warn("TOOL_CALL {}失败: {}", action, e.getCause().getMessage());
+            return action + "失败: " + e.getCause().getMessage();
+        } finally {
+            unregister.run();
+        }
+    }
 }
@@ -1,12 +1,14 @@
 package com.aiassist.chat.core.tools;
 
 import com.aiassist.ai.core.entity.ChunkDocs;
+import com.aiassist.ai.core.service.ToolResultService;
 import com.aiassist.ai.core.utils.WeaviateUtils;
 import com.aiassist.chat.core.context.UserContext;
 import com.aiassist.chat.core.entity.User;
 import com.aiassist.chat.core.service.UserService;
 import dev.langchain4j.agent.tool.P;
 import dev.langchain4j.agent.tool.Tool;
+import dev.langchain4j.agent.tool.ToolMemoryId;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -20,11 +22,14 @@ import java.util.stream.Collectors;
  * 包含：
  * - 用户管理相关工具（记名、识别、统计）
  * - 知识库检索工具（语义检索、关键词检索、按文档获取全文）
+ * - 工具结果回读（记忆中被压缩的工具结果按引用ID分段读取全文）
  * - 其他示例工具（如加密）
  * <p>
  * 使用说明：
  * - 标注 @Tool 的方法会被 LangChain4j 作为可调用的“函数/工具”暴露给大模型。
  * - OpenAiAgent 采用 AiServiceWiringMode.AUTOMATIC，会自动发现本 @Component 中的工具。
+ * - 依赖用户 IP 的工具通过 @ToolMemoryId 接收 memoryId（不暴露给大模型），
+ *   流式对话中工具运行在回调线程上时，借此从 UserContext 登记表找回请求上下文。
  */
 @Slf4j
 @Component
@@ -36,8 +41,15 @@ public class TextTools {
     @Autowired
     private WeaviateUtils weaviateUtils;
 
+    @Autowired
+    private ToolResultService toolResultService;
+
     private final String PLACEHOLDER = "No-op placeholder. Safe to omit; ignored at runtime.";
 
+    private static final int USER_PAGE_SIZE = 20;
+
+    private static final int RANKING_SIZE = 10;
+
     @Tool(name = "encrypt_password", value = "Encrypt password using encryption algorithm")
     public String crypt(int password) {
         int num = 0;
@@ -50,9 +62,9 @@ public class TextTools {
     }
 
     @Tool(name = "get_user_ip_address", value = "Obtain the current user's IP address. Returns the IP address string. Use this ONLY when specifically asked about IP address.")
-    public String getClientIp(@P(value = PLACEHOLDER, required = true) Boolean noop) {
+    public String getClientIp(@P(value = PLACEHOLDER, required = true) Boolean noop, @ToolMemoryId Object memoryId) {
         log.info("🔧 [TOOL] get_user_ip_address 开始执行");
-        String ip = UserContext.getCurrentUserIp();
+        String ip = UserContext.resolve(memoryId).userIp();
         log.info("🔧 [TOOL] 从 UserContext Context 获取IP: {}", ip);
         if (ip != null) return "用户IP地址: " + ip; // 也可以直接返回 ip
 
@@ -72,8 +84,8 @@ public class TextTools {
     }
 
     @Tool(name = "remember_user_name", value = "Remember and bind user's name with their IP address. Returns confirmation message. Call this ONCE when user provides their name, then acknowledge the successful storage.")
-    public String rememberUserName(String userName) {
-        String currentIp = UserContext.getCurrentUserIp();
+    public String rememberUserName(String userName, @ToolMemoryId Object memoryId) {
+        String currentIp = UserContext.resolve(memoryId).userIp();
         if (currentIp == null || currentIp.isEmpty()) {
             return "无法获取用户IP，无法绑定用户名";
         }
@@ -84,7 +96,6 @@ public class TextTools {
 
         try {
             User user = userService.recordUserVisit(userName.trim(), currentIp);
-            User user1 = userService.recordUserVisit(userName.trim(), currentIp);
             if (user.getVisitCount() == 1) {
                 return String.format("好的，我已经记住你是 %s！下次你访问时我就能认出你了。", userName.trim());
             } else {
@@ -98,11 +109,11 @@ public class TextTools {
     }
 
     @Tool(name = "check_user_identity", value = "Check if current user is already known by their IP address. Returns complete user information including name and visit history. Call this ONCE when user asks about their identity, then reply directly with the returned information.")
-    public String checkUserIdentity(@P(value = PLACEHOLDER, required = true) Boolean noop) {
+    public String checkUserIdentity(@P(value = PLACEHOLDER, required = true) Boolean noop, @ToolMemoryId Object memoryId) {
         log.info("🔧 [TOOL] check_user_identity 开始执行");
 
         try {
-            String currentIp = UserContext.getCurrentUserIp();
+            String currentIp = UserContext.resolve(memoryId).userIp();
             log.info("🔧 [TOOL] 获取到 IP: {}", currentIp);
 
             if (currentIp == null || currentIp.isEmpty()) {
@@ -137,34 +148,41 @@ public class TextTools {
         }
     }
 
-    @Tool(name = "get_all_known_users", value = "Get a list of all users I have met before")
-    public String getAllKnownUsers(@P(value = PLACEHOLDER, required = true) Boolean noop) {
-        var allUsers = userService.getAllUsers();
-        if (allUsers.isEmpty()) {
-            return "我还没有认识任何用户。";
+    @Tool(name = "get_all_known_users", value = "Get a page of users I have met before. Returns at most 20 users and, if more exist, a cursor for the next page. Only request the next page when the user asks for more.")
+    public String getAllKnownUsers(@P(value = "Cursor returned by the previous page; omit for the first page", required = false) Integer cursor) {
+        // 按主键游标分页，用户表很大时也只读一页
+        List<User> users = userService.getUsersPage(cursor, USER_PAGE_SIZE + 1);
+        if (users.isEmpty()) {
+            return cursor == null ? "我还没有认识任何用户。" : "没有更多用户了。";
         }
 
-        StringBuilder sb = new StringBuilder("我认识的用户有：\n");
-        for (User user : allUsers) {
+        boolean hasMore = users.size() > USER_PAGE_SIZE;
+        List<User> page = hasMore ? users.subList(0, USER_PAGE_SIZE) : users;
+        StringBuilder sb = new StringBuilder(cursor == null ? "我认识的用户有：\n" : "更多用户：\n");
+        for (User user : page) {
             sb.append(String.format("- %s (IP: %s, 访问次数: %d, 最后访问: %s)\n",
                     user.getUserName(),
                     user.getIpAddress(),
                     user.getVisitCount(),
                     user.getLastSeen().toString()));
         }
+        if (hasMore) {
+            sb.append("还有更多用户，下一页 cursor: ").append(page.get(page.size() - 1).getId());
+        }
 
         return sb.toString();
     }
 
     @Tool(name = "get_user_visit_ranking", value = "Get user ranking by visit count")
     public String getUserVisitRanking(@P(value = PLACEHOLDER, required = true) Boolean noop) {
-        var users = userService.getUsersByVisitCount();
+        // 排行榜由 Redis ZSET 维护，只取前 N 名
+        var users = userService.getTopUsersByVisitCount(RANKING_SIZE);
         if (users.isEmpty()) {
             return "暂无用户访问记录。";
         }
 
         StringBuilder sb = new StringBuilder("用户访问排行榜：\n");
-        for (int i = 0; i < users.size() && i < 10; i++) {
+        for (int i = 0; i < users.size(); i++) {
             User user = users.get(i);
             sb.append(String.format("%d. %s - %d次访问\n",
                     i + 1, user.getUserName(), user.getVisitCount()));
@@ -276,6 +294,19 @@ public class TextTools {
         }
     }
 
+    @Tool(name = ToolResultService.READ_TOOL_NAME, value = "Read the full text of an earlier tool result that was compacted in memory. Pass the reference id shown in the compacted result; the text is returned page by page, pass the returned offset to continue. Only call this when the extract is not enough to answer.")
+    public String readToolResult(String refId,
+                                 @P(value = "Character offset to start reading from; omit to start from the beginning", required = false) Integer offset,
+                                 @ToolMemoryId Object memoryId) {
+        log.info("🔧 [TOOL] read_tool_result: refId={}, offset={}", refId, offset);
+        try {
+            return toolResultService.read(String.valueOf(memoryId), refId, offset);
+        } catch (Exception e) {
+            log.error("读取工具结果失败: refId={}", refId, e);
+            return "读取工具结果时出现错误: " + e.getMessage();
+        }
+    }
+
     @Tool(name = "search_by_keywords", value = "Search documents by specific keywords")
     public String searchByKeywords(String keywords) {
         if (keywords == null || keywords.trim().isEmpty()) {
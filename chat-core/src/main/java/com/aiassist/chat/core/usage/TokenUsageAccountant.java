@@ -0,0 +1,297 @@
+package com.aiassist.chat.core.usage;
+
+import com.aiassist.chat.core.entity.UserTokenUsage;
+import com.aiassist.chat.core.service.UserService;
+import dev.langchain4j.model.openai.OpenAiTokenUsage;
+import dev.langchain4j.model.output.TokenUsage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * token 用量记账
+ * <p>
+ * - 记录：请求线程只对内存中的 LongAdder 做累加，不访问数据库
+ * - 落库：后台线程定期把各用户自上次落库以来的增量合并成一条批量 UPDATE 写入 user.token_usage；
+ * 记账从不创建用户行（用户行只由 recordUserVisit 创建），尚无用户行的 IP 的用量留在内存中，
+ * 用户留下名字后的下一轮落库写入；空闲超过 idle-evict-minutes 仍无用户行时转入未归属用量
+ * - 计数器只增不减，落库成功后推进已落库水位；写库失败时增量保留到下一轮，不会丢失也不会重复
+ * - 记录与空闲清理对同一 IP 的计数器互斥（ConcurrentHashMap 的 compute），清理后不会再有用量累加到已摘除的计数器上
+ * - 同时统计服务端前缀缓存命中的输入 token（OpenAI usage.prompt_tokens_details.cached_tokens），用于观察提示词前缀是否稳定
+ */
+@Slf4j
+@Service
+public class TokenUsageAccountant {
+
+    @Autowired
+    private UserService userService;
+
+    @Value("${chat.usage.enable:true}")
+    private boolean enable;
+
+    @Value("${chat.usage.flush-interval-seconds:30}")
+    private long flushIntervalSeconds;
+
+    @Value("${chat.usage.batch-size:200}")
+    private int batchSize;
+
+    /**
+     * 超过该时间无新用量且已全部落库的用户计数器会被清理
+     */
+    @Value("${chat.usage.idle-evict-minutes:30}")
+    private long idleEvictMinutes;
+
+    /**
+     * 用户IP -> 用量计数
+     */
+    private final Map<String, UserUsage> usages = new ConcurrentHashMap<>();
+
+    /**
+     * 无法归属到用户的用量（如后台标题生成、始终没有用户行的 IP）
+     */
+    private final LongAdder unattributedTokens = new LongAdder();
+
+    /**
+     * 前缀缓存统计：全部调用的输入 token、其中命中缓存的 token、命中缓存的调用数
+     */
+    private final LongAdder promptInputTokens = new LongAdder();
+    private final LongAdder promptCachedTokens = new LongAdder();
+    private final LongAdder promptCacheHits = new LongAdder();
+    private final LongAdder promptRequests = new LongAdder();
+
+    private ScheduledExecutorService flusher;
+
+    private static final class UserUsage {
+        final LongAdder inputTokens = new LongAdder();
+        final LongAdder outputTokens = new LongAdder();
+        final LongAdder totalTokens = new LongAdder();
+        final LongAdder requests = new LongAdder();
+        /**
+         * 已落库的 totalTokens 水位，仅由落库线程读写
+         */
+        volatile long flushedTokens;
+        volatile long lastUpdateMillis = System.currentTimeMillis();
+        /**
+         * 上一轮落库时该 IP 尚无用户行，仅由落库线程读写
+         */
+        volatile boolean noUserRow;
+    }
+
+    @PostConstruct
+    void init() {
+        if (!enable) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "token-usage-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+        log.info("初始化 token 用量记账 - 落库间隔: {}s, 批量大小: {}", flushIntervalSeconds, batchSize);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 停机前把剩余增量写入数据库
+        flushSafely();
+    }
+
+    /**
+     * 记录一次模型调用的用量
+     *
+     * @param userIp 用户IP，为空时计入未归属用量
+     */
+    public void record(String userIp, TokenUsage usage) {
+        if (!enable || usage == null) {
+            return;
+        }
+        long total = usage.totalTokenCount() != null ? usage.totalTokenCount()
+                : nullToZero(usage.inputTokenCount()) + nullToZero(usage.outputTokenCount());
+        if (total <= 0) {
+            return;
+        }
+        recordPromptCache(usage);
+        if (userIp == null || userIp.isBlank()) {
+            unattributedTokens.add(total);
+            return;
+        }
+        // 在 compute 内累加：与 flush 中的空闲清理对同一 IP 互斥，不会累加到刚被移除的计数器上
+        usages.compute(userIp, (k, userUsage) -> {
+            if (userUsage == null) {
+                userUsage = new UserUsage();
+            }
+            userUsage.inputTokens.add(nullToZero(usage.inputTokenCount()));
+            userUsage.outputTokens.add(nullToZero(usage.outputTokenCount()));
+            userUsage.totalTokens.add(total);
+            userUsage.requests.increment();
+            userUsage.lastUpdateMillis = System.currentTimeMillis();
+            return userUsage;
+        });
+    }
+
+    private void recordPromptCache(TokenUsage usage) {
+        long input = nullToZero(usage.inputTokenCount());
+        long cached = 0;
+        if (usage instanceof OpenAiTokenUsage openAiUsage && openAiUsage.inputTokensDetails() != null) {
+            cached = nullToZero(openAiUsage.inputTokensDetails().cachedTokens());
+        }
+        promptRequests.increment();
+        promptInputTokens.add(input);
+        if (cached > 0) {
+            promptCachedTokens.add(cached);
+            promptCacheHits.increment();
+        }
+        log.debug("前缀缓存 - 输入: {}, 命中: {}", input, cached);
+    }
+
+    /**
+     * 尚未落库的 token 数（配额判断时与数据库中的 token_usage 相加）
+     */
+    public long getPendingTokens(String userIp) {
+        UserUsage userUsage = usages.get(userIp);
+        return userUsage == null ? 0 : userUsage.totalTokens.sum() - userUsage.flushedTokens;
+    }
+
+    /**
+     * 内存中的用量统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("trackedUsers", usages.size());
+        stats.put("requests", usages.values().stream().mapToLong(u -> u.requests.sum()).sum());
+        stats.put("inputTokens", usages.values().stream().mapToLong(u -> u.inputTokens.sum()).sum());
+        stats.put("outputTokens", usages.values().stream().mapToLong(u -> u.outputTokens.sum()).sum());
+        stats.put("pendingTokens", usages.values().stream()
+                .mapToLong(u -> u.totalTokens.sum() - u.flushedTokens).sum());
+        stats.put("unattributedTokens", unattributedTokens.sum());
+        long input = promptInputTokens.sum();
+        long cached = promptCachedTokens.sum();
+        stats.put("promptRequests", promptRequests.sum());
+        stats.put("promptCacheHitRequests", promptCacheHits.sum());
+        stats.put("promptCachedTokens", cached);
+        stats.put("promptCachedTokenRatio", input == 0 ? 0.0 : (double) cached / input);
+        return stats;
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("token 用量落库失败，增量保留到下一轮", e);
+        }
+    }
+
+    /**
+     * 把各用户的增量分批写入数据库
+     */
+    void flush() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        long now = System.currentTimeMillis();
+        long idleMillis = TimeUnit.MINUTES.toMillis(idleEvictMinutes);
+
+        for (Map.Entry<String, UserUsage> entry : usages.entrySet()) {
+            UserUsage userUsage = entry.getValue();
+            long total = userUsage.totalTokens.sum();
+            boolean idle = now - userUsage.lastUpdateMillis > idleMillis;
+            if (total <= userUsage.flushedTokens) {
+                if (idle) {
+                    // 在 computeIfPresent 内重新检查：期间有新用量时保留
+                    usages.computeIfPresent(entry.getKey(), (k, current) ->
+                            current == userUsage && current.totalTokens.sum() <= current.flushedTokens ? null : current);
+                }
+                continue;
+            }
+            if (idle && userUsage.noUserRow) {
+                evictWithoutUserRow(entry.getKey(), userUsage);
+                continue;
+            }
+            batch.add(new Pending(entry.getKey(), userUsage, total));
+            if (batch.size() >= batchSize) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    /**
+     * 一个用户本轮待落库的增量：total 为读取时的累计值，落库成功后成为新的水位
+     */
+    private record Pending(String userIp, UserUsage usage, long total) {
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        // 只写入已有用户行的 IP；其余保留在内存中，不创建用户
+        Set<String> known = new HashSet<>(userService.findExistingIpAddresses(
+                batch.stream().map(Pending::userIp).toList()));
+        List<Pending> writable = new ArrayList<>(known.size());
+        for (Pending p : batch) {
+            boolean hasUserRow = known.contains(p.userIp());
+            p.usage().noUserRow = !hasUserRow;
+            if (hasUserRow) {
+                writable.add(p);
+            }
+        }
+        if (writable.isEmpty()) {
+            return;
+        }
+        List<UserTokenUsage> deltas = writable.stream()
+                .map(p -> new UserTokenUsage(p.userIp(), p.total() - p.usage().flushedTokens))
+                .toList();
+        // 单条 UPDATE：要么全部写入，要么抛出异常（水位不动，下一轮重试）
+        int affected = userService.batchAddTokenUsage(deltas);
+        if (affected <= 0) {
+            log.warn("token 用量落库未写入任何行，增量保留到下一轮 - 用户数: {}", deltas.size());
+            return;
+        }
+        writable.forEach(p -> p.usage().flushedTokens = p.total());
+        log.debug("token 用量落库 - 用户数: {}, 受影响行数: {}", deltas.size(), affected);
+    }
+
+    /**
+     * 空闲且始终没有用户行的 IP：未落库的用量转入未归属用量后清理，避免匿名 IP 的计数器无限增长
+     */
+    private void evictWithoutUserRow(String userIp, UserUsage userUsage) {
+        usages.computeIfPresent(userIp, (k, current) -> {
+            if (current != userUsage || System.currentTimeMillis() - current.lastUpdateMillis
+                    <= TimeUnit.MINUTES.toMillis(idleEvictMinutes)) {
+                return current;
+            }
+            long pending = current.totalTokens.sum() - current.flushedTokens;
+            unattributedTokens.add(pending);
+            log.debug("IP 无用户行，用量转入未归属 - IP: {}, tokens: {}", userIp, pending);
+            return null;
+        });
+    }
+
+    private static long nullToZero(Integer value) {
+        return value == null ? 0 : value;
+    }
+}
@@ -0,0 +1,45 @@
+package com.aiassist.chat.core.usage;
+
+import com.aiassist.chat.core.context.RequestContext;
+import com.aiassist.chat.core.context.UserContext;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.listener.ChatModelRequestContext;
+import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
+import dev.langchain4j.model.output.TokenUsage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 模型调用监听器：记录每次模型调用的 token 用量
+ * <p>
+ * LangChain4j starter 会把 ChatModelListener Bean 注册到 OpenAiChatModel / OpenAiStreamingChatModel 上，
+ * 因此普通对话、流式对话以及工具调用后的每一轮模型请求都会经过这里。
+ * 用户 IP 在发起请求的线程上读取（onRequest），流式响应在回调线程上完成（onResponse），
+ * 两者通过同一个 attributes 传递
+ */
+@Component
+public class TokenUsageListener implements ChatModelListener {
+
+    private static final String USER_IP_ATTRIBUTE = "usage.userIp";
+
+    @Autowired
+    private TokenUsageAccountant tokenUsageAccountant;
+
+    @Override
+    public void onRequest(ChatModelRequestContext requestContext) {
+        RequestContext ctx = UserContext.current();
+        if (ctx != null && ctx.userIp() != null) {
+            requestContext.attributes().put(USER_IP_ATTRIBUTE, ctx.userIp());
+        }
+    }
+
+    @Override
+    public void onResponse(ChatModelResponseContext responseContext) {
+        TokenUsage usage = responseContext.chatResponse().tokenUsage();
+        if (usage == null) {
+            return;
+        }
+        Object userIp = responseContext.attributes().get(USER_IP_ATTRIBUTE);
+        tokenUsageAccountant.record(userIp == null ? null : userIp.toString(), usage);
+    }
+}
@@ -2,10 +2,12 @@ package com.aiassist.chat.core.utils;
 
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 
 /**
@@ -136,6 +138,52 @@ public class IpUtils {
         return "0:0:0:0:0:0:0:1".equals(ip) ? "127.0.0.1" : ip;
     }
 
+    /**
+     * 获取客户端IP（WebFlux，reactive 部署模式使用）
+     *
+     * @param request 响应式请求对象
+     * @return IP地址
+     */
+    public static String getClientIp(ServerHttpRequest request) {
+        if (request == null) {
+            return "unknown";
+        }
+
+        String ip = request.getHeaders().getFirst("X-Forwarded-For");
+        if (isNotEmpty(ip)) {
+            // 多个代理的情况，第一个 IP 为客户端真实 IP
+            int index = ip.indexOf(",");
+            if (index != -1) {
+                ip = ip.substring(0, index).trim();
+            }
+        } else {
+            String[] headers = {
+                    "Proxy-Client-IP",
+                    "WL-Proxy-Client-IP",
+                    "HTTP_X_FORWARDED_FOR",
+                    "HTTP_X_FORWARDED",
+                    "HTTP_X_CLUSTER_CLIENT_IP",
+                    "HTTP_CLIENT_IP",
+                    "X-Real-IP"
+            };
+            for (String header : headers) {
+                ip = request.getHeaders().getFirst(header);
+                if (isNotEmpty(ip)) {
+                    break;
+                }
+            }
+            if (!isNotEmpty(ip)) {
+                InetSocketAddress remoteAddress = request.getRemoteAddress();
+                ip = remoteAddress == null || remoteAddress.getAddress() == null
+                        ? "unknown"
+                        : remoteAddress.getAddress().getHostAddress();
+            }
+        }
+
+        // 处理本地环回地址
+        return "0:0:0:0:0:0:0:1".equals(ip) ? "127.0.0.1" : ip;
+    }
+
     private static boolean isNotEmpty(String ip) {
         if (ip != null && !ip.isEmpty() && !"unknown".equalsIgnoreCase(ip)) {
             return true;
@@ -0,0 +1,27 @@
+-- user.ip_address 唯一索引迁移
+-- recordUserVisit 依赖该索引执行 INSERT ... ON DUPLICATE KEY UPDATE
+-- 执行前请先备份 user 表；脚本可重复执行到第 3 步之前，第 3 步在索引已存在时会报错
+
+-- 1. 合并同一 IP 的重复用户：保留 id 最小的一条，累加访问次数与 token 用量
+UPDATE user u
+    JOIN (SELECT MIN(id)                     AS keep_id,
+                 SUM(IFNULL(visit_count, 0)) AS visits,
+                 SUM(IFNULL(token_usage, 0)) AS tokens,
+                 MIN(first_seen)             AS first_seen,
+                 MAX(last_seen)              AS last_seen
+          FROM user
+          GROUP BY ip_address
+          HAVING COUNT(*) > 1) d ON u.id = d.keep_id
+SET u.visit_count = d.visits,
+    u.token_usage = d.tokens,
+    u.first_seen  = d.first_seen,
+    u.last_seen   = d.last_seen;
+
+-- 2. 删除其余重复行
+DELETE u
+FROM user u
+         JOIN user k ON u.ip_address = k.ip_address AND u.id > k.id;
+
+-- 3. 添加唯一索引
+ALTER TABLE user
+    ADD UNIQUE INDEX uk_user_ip_address (ip_address);
@@ -0,0 +1,101 @@
+package com.aiassist.chat.core.admission;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 准入控制负载测试（local 模式）
+ * <p>
+ * 大量普通用户在预算内的请求全部放行；单个热点用户的突发请求只放行桶容量加等待期间补充的令牌，
+ * 其余排队后放行或被拒绝，且计数与 Micrometer 指标一致、结束后排队数归零。结果输出到标准输出
+ */
+class AdmissionServiceLoadTest {
+
+    private static final int USERS = 200;
+
+    private static final int REQUESTS_PER_USER = 5;
+
+    private static final int HOT_USER_REQUESTS = 500;
+
+    private static final int CAPACITY = 10;
+
+    private static final int REFILL_PER_MINUTE = 600;
+
+    private static final long MAX_WAIT_MS = 500;
+
+    private AdmissionService admissionService;
+
+    private MeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        AdmissionProperties properties = new AdmissionProperties();
+        properties.setMode("local");
+        properties.setMaxQueue(50);
+        properties.setChat(new AdmissionProperties.Budget(CAPACITY, REFILL_PER_MINUTE, MAX_WAIT_MS));
+
+        registry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("meterRegistry", registry));
+
+        admissionService = new AdmissionService();
+        ReflectionTestUtils.setField(admissionService, "properties", properties);
+        ReflectionTestUtils.setField(admissionService, "meterRegistryProvider", beanFactory.getBeanProvider(MeterRegistry.class));
+        admissionService.initMeters();
+    }
+
+    @Test
+    void hotUserIsLimitedWhileOtherUsersAreAdmitted() {
+        long begin = System.nanoTime();
+
+        Flux<String> keys = Flux.concat(
+                Flux.range(0, USERS * REQUESTS_PER_USER).map(i -> "user-" + (i % USERS)),
+                Flux.range(0, HOT_USER_REQUESTS).map(i -> "hot-user"));
+        List<Boolean> outcomes = keys
+                .flatMap(key -> admissionService.acquire(AdmissionType.CHAT, key)
+                        .thenReturn(Boolean.TRUE)
+                        .onErrorResume(RateLimitedException.class, e -> Mono.just(Boolean.FALSE)), 1024)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - begin).toMillis();
+        long admitted = outcomes.stream().filter(Boolean::booleanValue).count();
+        long rejected = outcomes.size() - admitted;
+        double queued = count("queued");
+
+        System.out.printf("[admission] 请求数 %d, 放行 %d, 排队 %.0f, 拒绝 %d, 耗时 %dms%n",
+                outcomes.size(), admitted, queued, rejected, elapsedMillis);
+
+        int total = USERS * REQUESTS_PER_USER + HOT_USER_REQUESTS;
+        assertThat(outcomes).hasSize(total);
+        // 普通用户都在预算内；热点用户至多放行 桶容量 + 整个运行期间补充的令牌
+        // （请求陆续到达，补充时长是到达跨度加最长等待，以实测耗时为上界，避免机器较慢时误报）
+        long hotAdmitted = admitted - (long) USERS * REQUESTS_PER_USER;
+        long refillDuringRun = (long) Math.ceil(REFILL_PER_MINUTE / 60_000.0 * Math.max(elapsedMillis, MAX_WAIT_MS));
+        assertThat(hotAdmitted).isBetween((long) CAPACITY, CAPACITY + refillDuringRun + 1);
+        assertThat(hotAdmitted).isLessThan(HOT_USER_REQUESTS);
+
+        assertThat(count("admitted")).isEqualTo(admitted);
+        assertThat(count("rejected")).isEqualTo(rejected);
+        assertThat(registry.get("chat.admission.queue.depth").gauge().value()).isZero();
+    }
+
+    private double count(String outcome) {
+        return registry.get("chat.admission.requests")
+                .tag("type", "chat")
+                .tag("outcome", outcome)
+                .counter()
+                .count();
+    }
+}
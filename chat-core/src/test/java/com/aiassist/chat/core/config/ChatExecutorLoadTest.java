@@ -0,0 +1,104 @@
+package com.aiassist.chat.core.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 对话执行器负载对比：平台线程池与虚拟线程在大量阻塞任务（模拟等待 LLM HTTP 响应）下的并发度与耗时
+ * <p>
+ * 结果输出到标准输出，便于对比两种模式；虚拟线程部分需要 JDK 21+ 运行时
+ */
+class ChatExecutorLoadTest {
+
+    private static final int POOL_SIZE = 200;
+
+    private static final int QUEUE_CAPACITY = 200;
+
+    private static final int TASKS = POOL_SIZE + QUEUE_CAPACITY;
+
+    private static final long BLOCK_MILLIS = 100;
+
+    /**
+     * 一轮负载的结果
+     *
+     * @param peakConcurrency 同时在执行的最大任务数
+     * @param elapsedMillis   全部任务完成的耗时
+     */
+    private record LoadResult(int peakConcurrency, long elapsedMillis) {
+    }
+
+    @Test
+    void platformPoolRunsPoolSizeChatsConcurrently() throws Exception {
+        ChatExecutorConfiguration configuration = configuration();
+        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) configuration.chatTaskExecutorPlatform();
+        executor.initialize();
+        try {
+            LoadResult result = run(executor);
+            report("platform", result);
+            // 线程池必须扩到 pool-size，而不是停在一个小的 core 上让其余任务排队
+            assertThat(result.peakConcurrency()).isEqualTo(POOL_SIZE);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtualThreadsRunAllChatsConcurrently() throws Exception {
+        AsyncTaskExecutor executor = configuration().chatTaskExecutorVirtual();
+        LoadResult result = run(executor);
+        report("virtual", result);
+        assertThat(result.peakConcurrency()).isEqualTo(TASKS);
+    }
+
+    private static ChatExecutorConfiguration configuration() {
+        ChatExecutorConfiguration configuration = new ChatExecutorConfiguration();
+        ReflectionTestUtils.setField(configuration, "poolSize", POOL_SIZE);
+        ReflectionTestUtils.setField(configuration, "queueCapacity", QUEUE_CAPACITY);
+        ReflectionTestUtils.setField(configuration, "maxConcurrency", 1000);
+        return configuration;
+    }
+
+    private static LoadResult run(AsyncTaskExecutor executor) throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(BLOCK_MILLIS);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        return new LoadResult(peak.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+    }
+
+    private static void report(String mode, LoadResult result) {
+        System.out.printf("[chat-executor] %s: 任务数 %d, 单任务阻塞 %dms, 最大并发 %d, 总耗时 %dms%n",
+                mode, TASKS, BLOCK_MILLIS, result.peakConcurrency(), result.elapsedMillis());
+    }
+}
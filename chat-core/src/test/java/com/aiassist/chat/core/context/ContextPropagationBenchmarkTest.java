@@ -0,0 +1,91 @@
+package com.aiassist.chat.core.context;
+
+import io.micrometer.context.ContextRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Hooks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * RequestContext 传播开销基准：模拟流式对话的片段在另一个线程上被处理，对比开启自动上下文传播前后每个片段的耗时
+ * <p>
+ * 流程与 ChatStreamGuard 一致：contextWrite 写入 RequestContext，片段经 publishOn 切换线程，下游从 UserContext 读取。
+ * 结果输出到标准输出，只断言传播的正确性，不对耗时设阈值
+ */
+class ContextPropagationBenchmarkTest {
+
+    private static final int CHUNKS = 100_000;
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final int MEASURED_ROUNDS = 10;
+
+    private static final RequestContext CONTEXT = RequestContext.of("198.51.100.1", "benchmark-memory");
+
+    private Scheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Schedulers.newSingle("benchmark-consumer");
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.dispose();
+        Hooks.disableAutomaticContextPropagation();
+        ContextRegistry.getInstance().removeThreadLocalAccessor(RequestContextThreadLocalAccessor.KEY);
+        UserContext.clear();
+    }
+
+    @Test
+    void propagationOverheadPerChunk() {
+        // 未开启传播：下游线程读不到上下文
+        double baseline = measure(false);
+
+        Hooks.enableAutomaticContextPropagation();
+        ContextRegistry.getInstance().registerThreadLocalAccessor(new RequestContextThreadLocalAccessor());
+        double propagated = measure(true);
+
+        System.out.printf("[context-propagation] 片段数 %d, 未传播 %.1f ns/片段, 传播 %.1f ns/片段, 开销 %.1f ns/片段%n",
+                CHUNKS, baseline, propagated, propagated - baseline);
+    }
+
+    /**
+     * @return 每个片段的平均耗时（纳秒）
+     */
+    private double measure(boolean expectContext) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runOnce(expectContext);
+        }
+        long total = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            total += runOnce(expectContext);
+        }
+        return (double) total / MEASURED_ROUNDS / CHUNKS;
+    }
+
+    private long runOnce(boolean expectContext) {
+        AtomicLong seen = new AtomicLong();
+        long begin = System.nanoTime();
+        Flux.range(0, CHUNKS)
+                .publishOn(scheduler)
+                .doOnNext(chunk -> {
+                    if (UserContext.current() == CONTEXT) {
+                        seen.incrementAndGet();
+                    }
+                })
+                .contextWrite(Context.of(RequestContextThreadLocalAccessor.KEY, CONTEXT))
+                .blockLast();
+        long elapsed = System.nanoTime() - begin;
+        assertThat(seen.get()).isEqualTo(expectContext ? CHUNKS : 0);
+        return elapsed;
+    }
+}
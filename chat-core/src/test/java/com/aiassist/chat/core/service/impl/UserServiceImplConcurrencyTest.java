@@ -0,0 +1,137 @@
+package com.aiassist.chat.core.service.impl;
+
+import com.aiassist.chat.core.cache.UserCache;
+import com.aiassist.chat.core.cache.UserVisitBuffer;
+import com.aiassist.chat.core.entity.User;
+import com.aiassist.chat.core.leaderboard.VisitLeaderboard;
+import com.aiassist.chat.core.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mybatis.spring.annotation.MapperScan;
+import org.mybatis.spring.boot.autoconfigure.MybatisAutoConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * recordUserVisit 并发测试：同一 IP 的首次访问并发执行时只产生一行用户，访问次数不丢失
+ * <p>
+ * 需要已执行 db/user_ip_address_unique.sql 的测试库，未配置时跳过：
+ * mvn -pl chat-core test -Ddata.db.url=jdbc:mysql://localhost:3306/test -Ddata.db.username=root -Ddata.db.password=xxx
+ * <p>
+ * 缓存、访问缓冲与排行榜替换为 mock，每次调用都走 upsertUserVisit
+ */
+@SpringBootTest(classes = UserServiceImplConcurrencyTest.TestApplication.class, properties = {
+        "spring.datasource.url=${data.db.url}",
+        "spring.datasource.username=${data.db.username}",
+        "spring.datasource.password=${data.db.password}",
+        "spring.datasource.hikari.maximum-pool-size=" + UserServiceImplConcurrencyTest.THREADS,
+        "mybatis.mapper-locations=classpath:mapper/*.xml",
+        "mybatis.type-aliases-package=com.aiassist.chat.core.entity",
+        "mybatis.configuration.map-underscore-to-camel-case=true"
+})
+@EnabledIfSystemProperty(named = "data.db.url", matches = ".+")
+class UserServiceImplConcurrencyTest {
+
+    static final int THREADS = 16;
+
+    /**
+     * 文档保留网段（RFC 5737），不会与真实用户冲突
+     */
+    private static final String TEST_IP = "198.51.100.77";
+
+    private static final String TEST_USER_NAME = "concurrency-test";
+
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, DataSourceTransactionManagerAutoConfiguration.class,
+            TransactionAutoConfiguration.class, JdbcTemplateAutoConfiguration.class, MybatisAutoConfiguration.class})
+    @MapperScan("com.aiassist.chat.core.mapper")
+    @Import(UserServiceImpl.class)
+    static class TestApplication {
+    }
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private UserCache userCache;
+
+    @MockitoBean
+    private UserVisitBuffer userVisitBuffer;
+
+    @MockitoBean
+    private VisitLeaderboard visitLeaderboard;
+
+    @BeforeEach
+    void setUp() {
+        when(userVisitBuffer.applyPending(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        deleteTestUser();
+    }
+
+    @AfterEach
+    void tearDown() {
+        deleteTestUser();
+    }
+
+    @Test
+    void concurrentVisitsFromSameIpCreateSingleUser() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<User>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return userService.recordUserVisit(TEST_USER_NAME, TEST_IP);
+                }));
+            }
+            start.countDown();
+
+            Set<Integer> ids = new HashSet<>();
+            for (Future<User> future : futures) {
+                ids.add(future.get(30, TimeUnit.SECONDS).getId());
+            }
+            assertThat(ids).hasSize(1);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Integer rows = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM user WHERE ip_address = ?", Integer.class, TEST_IP);
+        Integer visits = jdbcTemplate.queryForObject(
+                "SELECT visit_count FROM user WHERE ip_address = ?", Integer.class, TEST_IP);
+        assertThat(rows).isEqualTo(1);
+        assertThat(visits).isEqualTo(THREADS);
+    }
+
+    private void deleteTestUser() {
+        jdbcTemplate.update("DELETE FROM user WHERE ip_address = ?", TEST_IP);
+    }
+}
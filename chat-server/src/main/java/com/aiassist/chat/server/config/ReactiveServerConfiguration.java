@@ -0,0 +1,28 @@
+package com.aiassist.chat.server.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * reactive 部署模式配置
+ * <p>
+ * 启用方式：激活 reactive profile（spring.main.web-application-type=reactive），例如
+ * --spring.profiles.active=prod,reactive
+ * <p>
+ * Tomcat 与 Netty 同时在类路径上时，Spring Boot 的响应式服务器会优先选择 Tomcat，
+ * 这里显式声明 Netty 服务器工厂，使一个事件循环承载大量并发流式连接
+ */
+@Slf4j
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfiguration {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        log.info("reactive 部署模式：使用 Netty 服务器");
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,31 @@
+package com.aiassist.chat.server.controller;
+
+import com.aiassist.chat.core.admission.AdmissionService;
+import com.aiassist.chat.server.result.Result;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 准入控制统计接口（Servlet 与 reactive 模式通用）
+ * <p>
+ * 同一份计数也以 Micrometer 指标 chat.admission.* 暴露，监控采集请使用 /actuator/prometheus
+ */
+@RestController
+@RequestMapping("/admission")
+public class AdmissionController {
+
+    @Autowired
+    private AdmissionService admissionService;
+
+    /**
+     * 各类型的放行 / 排队 / 拒绝累计次数与当前排队数
+     */
+    @GetMapping("/stats")
+    public Result<Map<String, Object>> stats() {
+        return Result.success(admissionService.getStats());
+    }
+}
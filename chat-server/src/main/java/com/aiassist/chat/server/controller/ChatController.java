@@ -4,16 +4,23 @@ import com.aiassist.chat.server.dto.req.ChatReq;
 import com.aiassist.chat.server.dto.res.ChatStringRes;
 import com.aiassist.ai.core.ai.OpenAiAgent;
 import com.aiassist.ai.core.service.ConversationService;
+import com.aiassist.chat.core.admission.AdmissionService;
+import com.aiassist.chat.core.admission.AdmissionType;
+import com.aiassist.chat.core.context.RequestContext;
 import com.aiassist.chat.core.context.UserContext;
+import com.aiassist.chat.core.stream.ChatStreamGuard;
 import com.aiassist.chat.server.result.Result;
 import com.aiassist.chat.core.utils.IpUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 /**
  * 聊天记忆控制器
@@ -28,6 +35,7 @@ import reactor.core.publisher.Flux;
  */
 @Slf4j
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/chat")
 public class ChatController {
 
@@ -37,62 +45,79 @@ public class ChatController {
     @Autowired
     private ConversationService conversationService;
 
+    @Autowired
+    private Scheduler chatScheduler;
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @Autowired
+    private ChatStreamGuard chatStreamGuard;
+
+    @Autowired
+    private AdmissionService admissionService;
+
     // ==================== 聊天接口 ====================
 
     /**
      * 带记忆的聊天接口
+     * <p>
+     * 返回 Mono，对话（含工具调用）在 chatScheduler（平台线程池或虚拟线程）上执行，不占用 Servlet 线程；
+     * RequestContext 在执行线程上登记，结束后取消登记；按用户 IP 准入，超出预算返回 429
      */
     @PostMapping("/nonStream")
-    public Result<ChatStringRes> chatWithMemory(@RequestBody ChatReq req, HttpServletRequest request) {
-        try {
-            String userIp = IpUtils.getClientIp();
-            UserContext.setCurrentUserIp(userIp);
-
-            // 处理和验证 memoryId
-            String memoryId = conversationService.processMemoryId(req.getMemoryId(), userIp);
-            UserContext.setCurrentMemoryId(memoryId);
-
-            log.info("开始带记忆对话 - IP: {}, memoryId: {}, message: {}", userIp, memoryId, req.getMessage());
-
-            // 调用 AI
-            String response = openAiAgent.chat(memoryId, req.getMessage());
-
-            ChatStringRes res = ChatStringRes.builder()
-                    .memoryId(memoryId)
-                    .message(response)
-                    .build();
-            return Result.success(res);
-        } catch (Exception e) {
-            log.error("带记忆对话失败", e);
-            throw new RuntimeException("客户端对话失败");
-        } finally {
-//            UserContext.clear();
-        }
+    public Mono<Result<ChatStringRes>> chatWithMemory(@RequestBody ChatReq req, HttpServletRequest request) {
+        // 请求属性只能在 Servlet 线程上读取
+        String userIp = IpUtils.getClientIp();
+        return admissionService.admit(AdmissionType.CHAT, userIp, () -> Mono.fromCallable(() -> {
+                    RequestContext ctx = RequestContext.of(userIp, null);
+                    try {
+                        UserContext.set(ctx);
+
+                        // 处理和验证 memoryId
+                        String memoryId = conversationService.processMemoryId(req.getMemoryId(), userIp);
+                        ctx = ctx.withMemoryId(memoryId);
+                        UserContext.bind(ctx);
+
+                        log.info("开始带记忆对话 - IP: {}, memoryId: {}, message: {}", userIp, memoryId, req.getMessage());
+
+                        // 调用 AI
+                        String response = openAiAgent.chat(memoryId, req.getMessage());
+
+                        ChatStringRes res = ChatStringRes.builder()
+                                .memoryId(memoryId)
+                                .message(response)
+                                .build();
+                        return Result.success(res);
+                    } catch (Exception e) {
+                        log.error("带记忆对话失败", e);
+                        throw new RuntimeException("客户端对话失败", e);
+                    } finally {
+                        UserContext.unbind(ctx);
+                    }
+                })
+                .subscribeOn(chatScheduler));
     }
 
     /**
      * 带记忆的流式聊天接口
-     * Flux<String>
-     * Result<ChatStreamRes> 此类型暂时不能保留 UserContext
+     * <p>
+     * 由 ChatStreamGuard 建立带取消信号的 RequestContext 并登记；
+     * 客户端断开时取消模型生成与工具调用，已输出的部分回答落库；按用户 IP 准入，超出预算返回 429
      */
     @PostMapping(value = "/stream", produces = MediaType.TEXT_PLAIN_VALUE) // , produces = MediaType.TEXT_PLAIN_VALUE
     public Flux<String> chatStreamWithMemory(@RequestBody ChatReq req, HttpServletRequest request) {
         try {
             String userIp = IpUtils.getClientIp();
-            UserContext.setCurrentUserIp(userIp);
 
             // 处理和验证 memoryId
             String memoryId = conversationService.processMemoryId(req.getMemoryId(), userIp);
-            UserContext.setCurrentMemoryId(memoryId);
+            RequestContext ctx = RequestContext.of(userIp, memoryId);
 
             log.info("开始带记忆流式对话 - IP: {}, memoryId: {}", userIp, memoryId);
 
-            return Flux.deferContextual(ctxView ->
-                            openAiAgent.chatStream(memoryId, req.getMessage())
-                    )
+            return admissionService.admitMany(AdmissionType.STREAM, userIp,
+                            () -> chatStreamGuard.guard(ctx, () -> openAiAgent.chatStream(memoryId, req.getMessage())))
                     .doOnNext(chunk -> {
                         log.debug("发送片段: {}",
                                 chunk.length() > 50 ? chunk.substring(0, 50) + "..." : chunk);
@@ -100,30 +125,10 @@ public class ChatController {
                     .doOnComplete(() -> {
                         log.info("带记忆流式对话完成");
                     })
-                    .doOnError(error -> log.error("带记忆流式对话出错", error))
-                    .doFinally(signalType -> {
-                        // 这里仍然清理 ThreadLocal，没有问题（Micrometer 在切线程时会恢复/重置）
-                        UserContext.clear();
-                    });
-//            Flux<String> stringFlux = openAiAgent.chatStream(memoryId, req.getMessage())
-//                    .contextWrite(ctx -> ctx
-//                                    .put(UserIpThreadLocalAccessor.KEY, userIp)
-//                            // .put(MemoryIdThreadLocalAccessor.KEY, memoryId)
-//                    )
-//                    .contextWrite(context -> context
-//                            .put("USER_IP", userIp)
-//                            .put("MEMORY_ID", memoryId));
-//            return stringFlux;
-//            return ResponseEntity.ok()
-//                    .contentType(MediaType.TEXT_PLAIN)
-//                    .header("X-Memory-Id", memoryId)  // 通过header传递memoryId
-//                    .body(stringFlux);
-
+                    .doOnError(error -> log.error("带记忆流式对话出错", error));
         } catch (Exception e) {
             log.error("带记忆对话失败", e);
             throw new RuntimeException("客户端对话失败");
-        } finally {
-//            UserContext.clear(); 待测试
         }
     }
 }
@@ -1,28 +1,44 @@
 package com.aiassist.chat.server.controller;
 
 import com.aiassist.chat.server.dto.req.ChatReq;
+import com.aiassist.chat.server.stream.StreamCoalescer;
 import com.aiassist.ai.core.ai.OpenAiAgent;
 import com.aiassist.ai.core.service.ConversationService;
+import com.aiassist.chat.core.admission.AdmissionService;
+import com.aiassist.chat.core.admission.AdmissionType;
+import com.aiassist.chat.core.context.RequestContext;
 import com.aiassist.chat.core.context.UserContext;
+import com.aiassist.chat.core.stream.ChatStreamGuard;
 import com.aiassist.chat.core.utils.IpUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 /**
  * 对话接口控制器
  * <p>
  * 说明：
  * - 提供普通与流式对话的各种方案
- * - 支持多种流式实现：WebFlux (Flux) 和 Spring MVC (SseEmitter)
- * - 进入对话前会将用户 IP 与 memoryId 放入 ThreadLocal，供工具类（如 TextTools）使用
+ * - 支持多种流式实现：WebFlux (Flux) 和 Spring MVC (ResponseBodyEmitter)
+ * - 流式输出经 StreamCoalescer 按时间窗口合并片段，减少帧数与写出次数
+ * - 进入对话前会构建 RequestContext（用户 IP 与 memoryId），供工具类（如 TextTools）使用：
+ *   同步调用放入执行线程的 ThreadLocal，流式调用写入 Reactor Context 并按 memoryId 登记
+ * - 所有对话接口按用户 IP 经 AdmissionService 准入（非流式 / 流式分开计数），超出预算返回 429
  */
 @Slf4j
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/chat-mode")
 public class ChatModeController {
 
@@ -32,26 +48,53 @@ public class ChatModeController {
     @Autowired
     private ConversationService conversationService;
 
+    @Autowired
+    private Scheduler chatScheduler;
+
+    @Autowired
+    private StreamCoalescer streamCoalescer;
+
+    @Autowired
+    private ChatStreamGuard chatStreamGuard;
+
+    @Autowired
+    private AdmissionService admissionService;
+
+    /**
+     * SSE 连接超时（毫秒），超时后取消上游模型调用
+     */
+    @Value("${chat.stream.sse-timeout-ms:300000}")
+    private long sseTimeoutMs;
+
     // ==================== 非流式对话 ====================
 
+    /**
+     * 非流式对话，在 chatScheduler（平台线程池或虚拟线程）上执行，不占用 Servlet 线程
+     */
     @PostMapping("/message")
-    public String chat(@RequestBody ChatReq req, HttpServletRequest request) {
-        try {
-            String userIp = IpUtils.getClientIp();
-            UserContext.setCurrentUserIp(userIp);
+    public Mono<String> chat(@RequestBody ChatReq req, HttpServletRequest request) {
+        // 请求属性只能在 Servlet 线程上读取
+        String userIp = IpUtils.getClientIp();
+        return admissionService.admit(AdmissionType.CHAT, userIp, () -> Mono.fromCallable(() -> {
+                    RequestContext ctx = RequestContext.of(userIp, null);
+                    try {
+                        UserContext.set(ctx);
 
-            // 处理和验证 memoryId
-            String memoryId = conversationService.processMemoryId(req.getMemoryId(), userIp);
-            UserContext.setCurrentMemoryId(memoryId);
+                        // 处理和验证 memoryId
+                        String memoryId = conversationService.processMemoryId(req.getMemoryId(), userIp);
+                        ctx = ctx.withMemoryId(memoryId);
+                        UserContext.bind(ctx);
 
-            log.info("开始对话 - IP: {}, memoryId: {}", userIp, memoryId);
+                        log.info("开始对话 - IP: {}, memoryId: {}", userIp, memoryId);
 
-            // 调用 AI（工具现在可以通过 UserContext 获取 IP）
-            return openAiAgent.chat(memoryId, req.getMessage());
+                        // 调用 AI（工具现在可以通过 UserContext 获取 IP）
+                        return openAiAgent.chat(memoryId, req.getMessage());
 
-        } finally {
-            UserContext.clear();
-        }
+                    } finally {
+                        UserContext.unbind(ctx);
+                    }
+                })
+                .subscribeOn(chatScheduler));
     }
 
     // ==================== 流式对话 ====================
@@ -67,107 +110,132 @@ public class ChatModeController {
     public Flux<String> chatStreamFlux(@RequestBody ChatReq req, HttpServletRequest request) {
         try {
             String userIp = IpUtils.getClientIp();
-            UserContext.setCurrentUserIp(userIp);
 
-            log.info("开始 WebFlux 流式对话 - IP: {}, memoryId: {}", userIp, req.getMemoryId());
+            // 处理和验证 memoryId（不属于该用户的会话不会被使用）
+            String memoryId = conversationService.processMemoryId(req.getMemoryId(), userIp);
+            RequestContext ctx = RequestContext.of(userIp, memoryId);
+
+            log.info("开始 WebFlux 流式对话 - IP: {}, memoryId: {}", userIp, memoryId);
 
-            return openAiAgent.chatStream(req.getMemoryId(), req.getMessage())
+            return admissionService.admitMany(AdmissionType.STREAM, userIp, () -> streamCoalescer.coalesce(
+                            chatStreamGuard.guard(ctx, () -> openAiAgent.chatStream(memoryId, req.getMessage()))))
                     .doOnNext(chunk -> log.debug("WebFlux 发送片段: {}",
                             chunk.length() > 50 ? chunk.substring(0, 50) + "..." : chunk))
                     .doOnComplete(() -> log.info("WebFlux 流式对话完成"))
-                    .doOnError(error -> log.error("WebFlux 流式对话出错", error))
-                    .doFinally(signalType -> {
-                        UserContext.clear();
-                        log.debug("清理用户上下文，信号类型: {}", signalType);
-                    });
+                    .doOnError(error -> log.error("WebFlux 流式对话出错", error));
 
         } catch (Exception e) {
             throw new RuntimeException("客户端对话失败");
-        } finally {
-            UserContext.clear();
         }
     }
 
     /**
      * 方案二-SSE：WebFlux SSE 格式流式响应
      * 如果前端需要标准 SSE 格式，使用此接口
+     * <p>
+     * 片段按时间窗口合并为帧；SSE 的 data: 分行由 Spring MVC 完成，这里直接返回原始文本，
+     * 客户端断开时 MVC 取消订阅，取消信号沿链路传到模型调用
      */
     @PostMapping(value = "/stream-flux-sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<String> chatStreamFluxSse(@RequestBody ChatReq req, HttpServletRequest request) {
         try {
             String userIp = IpUtils.getClientIp();
-            UserContext.setCurrentUserIp(userIp);
 
-            log.info("开始 WebFlux SSE 流式对话 - IP: {}, memoryId: {}", userIp, req.getMemoryId());
+            // 处理和验证 memoryId（不属于该用户的会话不会被使用）
+            String memoryId = conversationService.processMemoryId(req.getMemoryId(), userIp);
+            RequestContext ctx = RequestContext.of(userIp, memoryId);
+
+            log.info("开始 WebFlux SSE 流式对话 - IP: {}, memoryId: {}", userIp, memoryId);
 
-            return openAiAgent.chatStream(req.getMemoryId(), req.getMessage())
-                    .map(chunk -> "data: " + chunk.replace("\n", "\ndata: ") + "\n\n")  // 正确的 SSE 格式
-                    .doOnNext(chunk -> log.debug("WebFlux SSE 发送片段"))
+            return admissionService.admitMany(AdmissionType.STREAM, userIp, () -> streamCoalescer.coalesce(
+                            chatStreamGuard.guard(ctx, () -> openAiAgent.chatStream(memoryId, req.getMessage()))))
+                    .doOnNext(chunk -> log.debug("WebFlux SSE 发送帧"))
                     .doOnComplete(() -> log.info("WebFlux SSE 流式对话完成"))
-                    .doOnError(error -> log.error("WebFlux SSE 流式对话出错", error))
-                    .doFinally(signalType -> {
-                        UserContext.clear();
-                        log.debug("清理用户上下文，信号类型: {}", signalType);
-                    });
+                    .doOnError(error -> log.error("WebFlux SSE 流式对话出错", error));
 
         } catch (Exception e) {
             log.error("带记忆对话失败", e);
             throw new RuntimeException("客户端对话失败");
-        } finally {
-            UserContext.clear();
         }
     }
 
     /**
-     * 方案三：Spring MVC SseEmitter（兼容性好）
+     * 方案三：Spring MVC ResponseBodyEmitter 输出 SSE（兼容性好）
      * 优点：
      * - 基于传统 Servlet，无需额外依赖
      * - 兼容性好，适合现有 Spring MVC 项目
+     * 实现：
+     * - 片段按时间窗口合并，并预编码为 SSE 帧字节后直接写出
+     * - 每写完一帧再 request(1)，客户端读得慢时不会在服务端堆积
+     * - 客户端断开/超时/写出失败时取消订阅，从而取消模型调用
+     * - 准入在创建 emitter 之前完成，被限流时还能正常返回 429
      * 前端示例：
      * const eventSource = new EventSource('/api/chat/stream-sse');
      * eventSource.onmessage = (event) => console.log(event.data);
      */
     @PostMapping(value = "/stream-sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter chatStreamSse(@RequestBody ChatReq req, HttpServletRequest request) {
+    public Mono<ResponseEntity<ResponseBodyEmitter>> chatStreamSse(@RequestBody ChatReq req, HttpServletRequest request) {
         String userIp = IpUtils.getClientIp();
-        UserContext.setCurrentUserIp(userIp);
-        UserContext.setCurrentMemoryId(req.getMemoryId());
+        // 处理和验证 memoryId（不属于该用户的会话不会被使用）
+        String memoryId = conversationService.processMemoryId(req.getMemoryId(), userIp);
+        RequestContext ctx = RequestContext.of(userIp, memoryId);
+        return admissionService.acquire(AdmissionType.STREAM, userIp)
+                .then(Mono.fromSupplier(() -> startSse(ctx, req)));
+    }
+
+    private ResponseEntity<ResponseBodyEmitter> startSse(RequestContext ctx, ChatReq req) {
+        String userIp = ctx.userIp();
+        log.info("开始 SSE 流式对话 - IP: {}, memoryId: {}", userIp, ctx.memoryId());
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(sseTimeoutMs);
+
+        BaseSubscriber<byte[]> subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
 
-        log.info("开始 SSE 流式对话 - IP: {}, memoryId: {}", userIp, req.getMemoryId());
+            @Override
+            protected void hookOnNext(byte[] frame) {
+                try {
+                    emitter.send(frame, MediaType.TEXT_EVENT_STREAM);
+                    request(1);
+                } catch (Exception e) {
+                    log.warn("SSE 发送数据失败，取消上游: {}", e.getMessage());
+                    cancel();
+                    emitter.completeWithError(e);
+                }
+            }
 
-        // 创建 SseEmitter，0L 表示永不超时（可根据需要调整）
-        SseEmitter emitter = new SseEmitter(0L);
+            @Override
+            protected void hookOnError(Throwable error) {
+                log.error("SSE 流式对话出错", error);
+                emitter.completeWithError(error);
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                log.info("SSE 流式对话完成");
+                emitter.complete();
+            }
+        };
+
+        // 客户端断开、超时或出错时取消上游
+        emitter.onTimeout(subscriber::dispose);
+        emitter.onError(e -> subscriber.dispose());
+        emitter.onCompletion(subscriber::dispose);
 
         try {
-            openAiAgent.chatStream(req.getMemoryId(), req.getMessage())
-                    .subscribe(
-                            chunk -> {
-                                try {
-                                    log.debug("SSE 发送片段: {}",
-                                            chunk.length() > 50 ? chunk.substring(0, 50) + "..." : chunk);
-                                    emitter.send(SseEmitter.event().data(chunk));
-                                } catch (Exception e) {
-                                    log.error("SSE 发送数据失败", e);
-                                    emitter.completeWithError(e);
-                                }
-                            },
-                            error -> {
-                                log.error("SSE 流式对话出错", error);
-                                emitter.completeWithError(error);
-                                UserContext.clear();
-                            },
-                            () -> {
-                                log.info("SSE 流式对话完成");
-                                emitter.complete();
-                                UserContext.clear();
-                            }
-                    );
+            streamCoalescer.coalesceToSseFrames(
+                            chatStreamGuard.guard(ctx, () -> openAiAgent.chatStream(ctx.memoryId(), req.getMessage())))
+                    .subscribe(subscriber);
         } catch (Exception e) {
             log.error("SSE 启动失败", e);
             emitter.completeWithError(e);
-            UserContext.clear();
         }
-        return emitter;
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(emitter);
     }
 
     /**
@@ -175,10 +243,10 @@ public class ChatModeController {
      */
 //    @PostMapping("/stream-debug")
     public void chatStreamDebug(@RequestBody ChatReq req, HttpServletRequest request) {
+        RequestContext ctx = RequestContext.of(IpUtils.getClientIp(), req.getMemoryId());
         try {
-            String userIp = IpUtils.getClientIp();
-            UserContext.setCurrentUserIp(userIp);
-            UserContext.setCurrentMemoryId(req.getMemoryId());
+            String userIp = ctx.userIp();
+            UserContext.bind(ctx);
 
             log.info("开始调试模式流式对话 - IP: {}, memoryId: {}", userIp, req.getMemoryId());
 
@@ -187,7 +255,7 @@ public class ChatModeController {
                     .doOnNext(chunk -> System.out.print(chunk))
                     .blockLast();
         } finally {
-            UserContext.clear();
+            UserContext.unbind(ctx);
         }
     }
 
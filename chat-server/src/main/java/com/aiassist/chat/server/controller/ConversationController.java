@@ -1,23 +1,25 @@
 package com.aiassist.chat.server.controller;
 
-import com.aiassist.ai.core.ai.OpenAiClient;
 import com.aiassist.chat.server.dto.req.ChatReq;
 import com.aiassist.chat.server.dto.res.ConversationsRes;
 import com.aiassist.chat.server.dto.res.CreateConversationRes;
 import com.aiassist.chat.server.dto.res.GenerateTitleRes;
 import com.aiassist.chat.server.result.Result;
+import com.aiassist.ai.core.dto.res.ConversationPage;
 import com.aiassist.ai.core.entity.Conversation;
 import com.aiassist.ai.core.service.ConversationService;
-import com.aiassist.chat.core.context.UserContext;
+import com.aiassist.ai.core.service.TitleGenerationService;
+import com.aiassist.chat.core.admission.AdmissionService;
+import com.aiassist.chat.core.admission.AdmissionType;
 import com.aiassist.chat.core.utils.IpUtils;
-import dev.langchain4j.model.chat.response.ChatResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.web.bind.annotation.*;
-
-import java.util.List;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 /**
  * 对话查询控制器
@@ -27,9 +29,15 @@ import java.util.List;
  */
 @Slf4j
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/conversation")
 public class ConversationController {
 
+    /**
+     * 会话列表单页上限
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
@@ -37,37 +45,59 @@ public class ConversationController {
     private ConversationService conversationService;
 
     @Autowired
-    private OpenAiClient openAiClient;
+    private TitleGenerationService titleGenerationService;
+
+    @Autowired
+    private AdmissionService admissionService;
+
+    @Autowired
+    private Scheduler chatScheduler;
 
     // ==================== 按IP查询对话 ====================
 
     /**
-     * 根据用户IP查询所有对话
+     * 根据用户IP分页查询对话（按创建时间倒序）
+     * <p>
+     * - cursor：上一页返回的 nextCursor，首页不传
+     * - size：每页数量，默认 20，最大 100
+     * - withTotal：是否返回会话总数，仅首页统计，与分页查询并行执行
      */
     @GetMapping("/getConversationsByIp")
-    public Result<ConversationsRes> getConversationsByIp() {
-        try {
-            String userIp = IpUtils.getClientIp();
-            // TODO page, size
-            // 构建查询条件
-            List<Conversation> conversations = conversationService.getUserConversations(userIp);
-            int totalCount = conversations.size();
-
-//            log.info("查询完成 - 找到 {} 个对话，总共 {} 个", conversations.size(), totalCount);
-            log.info("查询用户对话列表 - IP: {} 找到 {} 个对话", userIp, totalCount);
-
-            ConversationsRes res = ConversationsRes.builder()
-                    .conversations(conversations)
-                    .totalCount(totalCount)
-                    .build();
-            return Result.success(res);
-
-        } catch (Exception e) {
-            log.error("查询用户对话列表失败 - IP: {}", UserContext.getCurrentUserIp(), e);
-            throw new RuntimeException("查询失败");
-        } finally {
-            UserContext.clear();
-        }
+    public Mono<Result<ConversationsRes>> getConversationsByIp(@RequestParam(required = false) String cursor,
+                                                               @RequestParam(defaultValue = "20") int size,
+                                                               @RequestParam(defaultValue = "true") boolean withTotal) {
+        // 请求属性只能在 Servlet 线程上读取
+        String userIp = IpUtils.getClientIp();
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+
+        Mono<ConversationPage> pageMono = Mono.fromCallable(
+                        () -> conversationService.getUserConversationsPage(userIp, cursor, pageSize))
+                .subscribeOn(chatScheduler);
+        Mono<Long> totalMono = withTotal && cursor == null
+                ? Mono.fromCallable(() -> conversationService.countUserConversations(userIp)).subscribeOn(chatScheduler)
+                : Mono.just(-1L);
+
+        return Mono.zip(pageMono, totalMono)
+                .map(tuple -> {
+                    ConversationPage page = tuple.getT1();
+                    long total = tuple.getT2();
+                    log.info("查询用户对话列表 - IP: {} 本页 {} 个对话，总数: {}", userIp, page.getConversations().size(),
+                            total >= 0 ? total : "未统计");
+                    return Result.success(ConversationsRes.builder()
+                            .conversations(page.getConversations())
+                            .totalCount(total >= 0 ? (int) total : null)
+                            .nextCursor(page.getNextCursor())
+                            .hasMore(page.isHasMore())
+                            .build());
+                })
+                .onErrorMap(e -> {
+                    // 无效游标保持 IllegalArgumentException，由全局异常处理返回 400
+                    if (e instanceof IllegalArgumentException) {
+                        return e;
+                    }
+                    log.error("查询用户对话列表失败 - IP: {}", userIp, e);
+                    return new RuntimeException("查询失败", e);
+                });
     }
 
     /**
@@ -133,33 +163,51 @@ public class ConversationController {
     }
 
     /**
-     * 生成新会话的标题
+     * 删除当前用户（按客户端 IP）的全部会话，消息在后台清理
      */
-    @PostMapping("/generateTitle")
-    public Result<GenerateTitleRes> generateTitle(@RequestBody ChatReq chatReq) {
+    @DeleteMapping("/delAll")
+    public Result<Long> deleteAllConversations() {
+        String userIp = IpUtils.getClientIp();
         try {
-            ChatResponse chatRes = openAiClient.chat("请根据用户的第一条消息，给当前新会话创建一个标题。你只需要返回标题内容，不要返回其余的内容。以下是用户的第一条消息：" + chatReq.getMessage());
-            String title = chatRes.aiMessage().text();
-
-            log.info("生成标题 - memoryId: {}, title: {}", chatReq.getMemoryId(), title);
-            // 更新数据库
-            boolean changed = conversationService.updateConversationTitle(chatReq.getMemoryId(), title);
-
-            if (!changed) {
-                throw new RuntimeException("没有更新标题");
-            }
-            GenerateTitleRes res = GenerateTitleRes.builder()
-                    .memoryId(chatReq.getMemoryId())
-                    .title(title)
-                    .build();
-
-            return Result.success(res);
+            long deleted = conversationService.deleteUserConversations(userIp);
+            log.info("删除用户全部会话 - IP: {}, 数量: {}", userIp, deleted);
+            return Result.success(deleted);
         } catch (Exception e) {
-            log.error("生成会话标题", e);
-            throw new RuntimeException("生成会话标题失败: " + e.getMessage());
+            log.error("删除用户全部会话失败 - IP: {}", userIp, e);
+            throw new RuntimeException("删除会话失败: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 生成新会话的标题
+     * <p>
+     * 首条消息入库后标题会在后台自动生成，此接口仅作兜底：
+     * 若后台已生成（标题不再是默认值）则直接返回，后台任务进行中时等待其完成，避免重复调用 LLM
+     * <p>
+     * 标题生成会调用 LLM，单独按用户 IP 限流，超出预算返回 429
+     */
+    @PostMapping("/generateTitle")
+    public Mono<Result<GenerateTitleRes>> generateTitle(@RequestBody ChatReq chatReq) {
+        // 请求属性只能在 Servlet 线程上读取
+        String userIp = IpUtils.getClientIp();
+        return admissionService.admit(AdmissionType.TITLE, userIp, () -> Mono.fromCallable(() -> {
+            try {
+                String title = titleGenerationService.generateForConversation(chatReq.getMemoryId(), chatReq.getMessage());
+                log.info("生成标题 - memoryId: {}, title: {}", chatReq.getMemoryId(), title);
+
+                GenerateTitleRes res = GenerateTitleRes.builder()
+                        .memoryId(chatReq.getMemoryId())
+                        .title(title)
+                        .build();
+
+                return Result.success(res);
+            } catch (Exception e) {
+                log.error("生成会话标题", e);
+                throw new RuntimeException("生成会话标题失败: " + e.getMessage());
+            }
+        }).subscribeOn(chatScheduler));
+    }
+
     // ==================== 高级查询接口 ====================
 
     /*
@@ -1,68 +1,120 @@
 package com.aiassist.chat.server.controller;
 
+import com.aiassist.ai.core.dto.res.MessagePage;
+import com.aiassist.ai.core.entity.Message;
+import com.aiassist.ai.core.service.MessageQueryService;
 import com.aiassist.chat.server.dto.res.MessagesRes;
 import com.aiassist.chat.server.result.Result;
-import com.aiassist.ai.core.entity.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
-import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.query.Criteria;
-import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 @Slf4j
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/message")
 public class MessageController {
 
+    /**
+     * 消息列表单页上限
+     */
+    private static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * NDJSON 每写出多少条消息 flush 一次
+     */
+    private static final int STREAM_FLUSH_EVERY = 50;
+
     @Autowired
-    private MongoTemplate mongoTemplate;
+    private MessageQueryService messageQueryService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     // ==================== 按对话ID查询详细信息 ====================
 
     /**
-     * 根据对话ID查询消息列表（仅消息，不包含对话元信息）
+     * 根据对话ID分页查询消息列表（仅消息，不包含对话元信息），按 turn_index 倒序
+     *
+     * @param beforeTurn         游标：上一页返回的 nextCursor，首页不传
+     * @param size               每页条数，默认50，最大200
+     * @param includeToolResults 是否返回完整的工具结果，默认只返回预览
+     * @param withTotal          是否统计消息总数（仅首页生效）
      */
     @GetMapping("/getMessagesById")
-    public Result<MessagesRes> getMessagesById(@RequestParam String memoryId) {
+    public Result<MessagesRes> getMessagesById(@RequestParam String memoryId,
+                                               @RequestParam(required = false) Integer beforeTurn,
+                                               @RequestParam(defaultValue = "50") int size,
+                                               @RequestParam(defaultValue = "false") boolean includeToolResults,
+                                               @RequestParam(defaultValue = "true") boolean withTotal) {
         try {
-            log.info("查询对话消息列表 - memoryId: {}", memoryId);
-
-            // 构建查询条件
-//            Query query = Query.query(Criteria.where("memory_id").is(memoryId))
-//                    .with(Sort.by(Sort.Direction.ASC, "turn_index"))
-//                    .skip((long) page * size)
-//                    .limit(size)
-            Query query = Query.query(Criteria.where("memory_id").is(memoryId))
-                    .with(Sort.by(Sort.Direction.DESC, "turn_index"));
-
-            // 执行查询
-            List<Message> messages = mongoTemplate.find(query, Message.class);
-
-            // 统计总数
-//            long totalCount = mongoTemplate.count(
-//                Query.query(Criteria.where("memory_id").is(memoryId)),
-//                Message.class
-//            );
-            int totalCount = messages.size();
+            int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+            MessagePage page = messageQueryService.getMessagesPage(memoryId, beforeTurn, pageSize, includeToolResults);
+            Integer totalCount = withTotal && beforeTurn == null
+                    ? (int) messageQueryService.countMessages(memoryId)
+                    : null;
+            log.info("查询对话消息列表 - memoryId: {}, 本页 {} 条，总数: {}", memoryId, page.getMessages().size(),
+                    totalCount != null ? totalCount : "未统计");
 
             MessagesRes res = MessagesRes.builder()
-                    .messages(messages)
+                    .memoryId(memoryId)
+                    .messages(page.getMessages())
                     .totalCount(totalCount)
+                    .nextCursor(page.getNextCursor())
+                    .hasMore(page.isHasMore())
                     .build();
             return Result.success(res);
+        } catch (Exception e) {
+            log.error("查询对话消息列表失败 - memoryId: {}", memoryId, e);
+            throw new RuntimeException("查询失败", e);
+        }
+    }
 
-// .totalPages((int) Math.ceil((double) totalCount / size))
+    /**
+     * 以 NDJSON 流式导出对话消息（每行一条消息，按 turn_index 倒序）
+     * <p>
+     * 边迭代 Mongo 游标边写出，长会话不会在服务端攒成一个大列表
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamMessages(@RequestParam String memoryId,
+                                                                @RequestParam(required = false) Integer beforeTurn,
+                                                                @RequestParam(defaultValue = "false") boolean includeToolResults) {
+        log.info("流式导出对话消息 - memoryId: {}", memoryId);
+        StreamingResponseBody body = out -> writeNdjson(memoryId, beforeTurn, includeToolResults, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
 
+    private void writeNdjson(String memoryId, Integer beforeTurn, boolean includeToolResults, OutputStream out) {
+        int written = 0;
+        try (Stream<Message> messages = messageQueryService.streamMessages(memoryId, beforeTurn, includeToolResults)) {
+            Iterator<Message> iterator = messages.iterator();
+            while (iterator.hasNext()) {
+                out.write(objectMapper.writeValueAsBytes(iterator.next()));
+                out.write('\n');
+                if (++written % STREAM_FLUSH_EVERY == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+            log.info("流式导出对话消息完成 - memoryId: {}, 条数: {}", memoryId, written);
         } catch (Exception e) {
-            log.error("查询对话消息列表失败 - memoryId: {}", memoryId, e);
-            throw new RuntimeException("查询失败");
+            // 响应头已发出，只能中断连接；客户端据最后一行判断是否完整
+            log.error("流式导出对话消息失败 - memoryId: {}, 已写出: {}", memoryId, written, e);
+            throw new RuntimeException("导出消息失败", e);
         }
     }
 
@@ -0,0 +1,29 @@
+package com.aiassist.chat.server.controller;
+
+import com.aiassist.chat.core.usage.TokenUsageAccountant;
+import com.aiassist.chat.server.result.Result;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * token 用量统计接口（Servlet 与 reactive 模式通用）
+ */
+@RestController
+@RequestMapping("/usage")
+public class UsageController {
+
+    @Autowired
+    private TokenUsageAccountant tokenUsageAccountant;
+
+    /**
+     * 内存中的用量累计与待落库 token 数
+     */
+    @GetMapping("/stats")
+    public Result<Map<String, Object>> stats() {
+        return Result.success(tokenUsageAccountant.getStats());
+    }
+}
@@ -0,0 +1,102 @@
+package com.aiassist.chat.server.controller.reactive;
+
+import com.aiassist.ai.core.ai.OpenAiAgent;
+import com.aiassist.ai.core.service.ReactiveConversationService;
+import com.aiassist.chat.core.admission.AdmissionService;
+import com.aiassist.chat.core.admission.AdmissionType;
+import com.aiassist.chat.core.context.RequestContext;
+import com.aiassist.chat.core.context.UserContext;
+import com.aiassist.chat.core.stream.ChatStreamGuard;
+import com.aiassist.chat.core.utils.IpUtils;
+import com.aiassist.chat.server.dto.req.ChatReq;
+import com.aiassist.chat.server.dto.res.ChatStringRes;
+import com.aiassist.chat.server.result.Result;
+import com.aiassist.chat.server.stream.StreamCoalescer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * 聊天控制器（reactive 部署模式）
+ * <p>
+ * 与 Servlet 模式的 ChatController 路径、参数一致，运行在 WebFlux/Netty 上：
+ * - memoryId 校验/创建走 ReactiveMongoTemplate，不阻塞事件循环
+ * - 模型流式输出由 LangChain4j 回调线程推送，事件循环只负责写出；客户端断开时经 ChatStreamGuard 取消生成
+ * - 非流式对话本身是阻塞调用，放到 chatScheduler 上执行
+ * - 与 Servlet 模式共用 AdmissionService 按用户 IP 准入，排队等待不占用事件循环
+ */
+@Slf4j
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/chat")
+public class ReactiveChatController {
+
+    @Autowired
+    private OpenAiAgent openAiAgent;
+
+    @Autowired
+    private ReactiveConversationService reactiveConversationService;
+
+    @Autowired
+    private ChatStreamGuard chatStreamGuard;
+
+    @Autowired
+    private StreamCoalescer streamCoalescer;
+
+    @Autowired
+    private Scheduler chatScheduler;
+
+    @Autowired
+    private AdmissionService admissionService;
+
+    /**
+     * 带记忆的聊天接口
+     */
+    @PostMapping("/nonStream")
+    public Mono<Result<ChatStringRes>> chatWithMemory(@RequestBody ChatReq req, ServerHttpRequest request) {
+        String userIp = IpUtils.getClientIp(request);
+        return admissionService.admit(AdmissionType.CHAT, userIp, () -> reactiveConversationService.processMemoryId(req.getMemoryId(), userIp)
+                .publishOn(chatScheduler)
+                .map(memoryId -> {
+                    RequestContext ctx = RequestContext.of(userIp, memoryId);
+                    try {
+                        UserContext.bind(ctx);
+                        log.info("开始带记忆对话 - IP: {}, memoryId: {}, message: {}", userIp, memoryId, req.getMessage());
+                        String response = openAiAgent.chat(memoryId, req.getMessage());
+                        return Result.success(ChatStringRes.builder()
+                                .memoryId(memoryId)
+                                .message(response)
+                                .build());
+                    } finally {
+                        UserContext.unbind(ctx);
+                    }
+                })
+                .onErrorMap(e -> {
+                    log.error("带记忆对话失败", e);
+                    return new RuntimeException("客户端对话失败", e);
+                }));
+    }
+
+    /**
+     * 带记忆的流式聊天接口
+     */
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_PLAIN_VALUE)
+    public Flux<String> chatStreamWithMemory(@RequestBody ChatReq req, ServerHttpRequest request) {
+        String userIp = IpUtils.getClientIp(request);
+        return admissionService.admitMany(AdmissionType.STREAM, userIp, () -> reactiveConversationService.processMemoryId(req.getMemoryId(), userIp)
+                .flatMapMany(memoryId -> {
+                    log.info("开始带记忆流式对话 - IP: {}, memoryId: {}", userIp, memoryId);
+                    RequestContext ctx = RequestContext.of(userIp, memoryId);
+                    return streamCoalescer.coalesce(
+                            chatStreamGuard.guard(ctx, () -> openAiAgent.chatStream(memoryId, req.getMessage())));
+                }))
+                .doOnComplete(() -> log.info("带记忆流式对话完成"))
+                .doOnError(error -> log.error("带记忆流式对话出错", error));
+    }
+}
@@ -0,0 +1,227 @@
+package com.aiassist.chat.server.controller.reactive;
+
+import com.aiassist.ai.core.dto.res.ConversationPage;
+import com.aiassist.ai.core.dto.res.MessagePage;
+import com.aiassist.ai.core.entity.Conversation;
+import com.aiassist.ai.core.entity.Message;
+import com.aiassist.ai.core.service.ConversationService;
+import com.aiassist.ai.core.service.ReactiveConversationService;
+import com.aiassist.ai.core.service.TitleGenerationService;
+import com.aiassist.chat.core.admission.AdmissionService;
+import com.aiassist.chat.core.admission.AdmissionType;
+import com.aiassist.chat.core.utils.IpUtils;
+import com.aiassist.chat.server.dto.req.ChatReq;
+import com.aiassist.chat.server.dto.res.ConversationsRes;
+import com.aiassist.chat.server.dto.res.CreateConversationRes;
+import com.aiassist.chat.server.dto.res.GenerateTitleRes;
+import com.aiassist.chat.server.dto.res.MessagesRes;
+import com.aiassist.chat.server.result.Result;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * 会话与消息查询控制器（reactive 部署模式）
+ * <p>
+ * 与 Servlet 模式的 ConversationController / MessageController 路径、参数一致：
+ * - 查询与创建走 ReactiveMongoTemplate
+ * - 删除（软删除并清理 Redis 缓存）与生成标题（调用 LLM）仍是阻塞调用，放到 chatScheduler 上执行
+ */
+@Slf4j
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConversationController {
+
+    /**
+     * 会话列表单页上限
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * 消息列表单页上限
+     */
+    private static final int MAX_MESSAGE_PAGE_SIZE = 200;
+
+    @Autowired
+    private ReactiveConversationService reactiveConversationService;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private TitleGenerationService titleGenerationService;
+
+    @Autowired
+    private Scheduler chatScheduler;
+
+    @Autowired
+    private AdmissionService admissionService;
+
+    /**
+     * 根据用户IP分页查询对话，参数同 Servlet 模式
+     */
+    @GetMapping("/conversation/getConversationsByIp")
+    public Mono<Result<ConversationsRes>> getConversationsByIp(@RequestParam(required = false) String cursor,
+                                                               @RequestParam(defaultValue = "20") int size,
+                                                               @RequestParam(defaultValue = "true") boolean withTotal,
+                                                               ServerHttpRequest request) {
+        String userIp = IpUtils.getClientIp(request);
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        Mono<Long> totalMono = withTotal && cursor == null
+                ? reactiveConversationService.countUserConversations(userIp)
+                : Mono.just(-1L);
+        return Mono.zip(reactiveConversationService.getUserConversationsPage(userIp, cursor, pageSize), totalMono)
+                .map(tuple -> {
+                    ConversationPage page = tuple.getT1();
+                    long total = tuple.getT2();
+                    log.info("查询用户对话列表 - IP: {} 本页 {} 个对话，总数: {}", userIp, page.getConversations().size(),
+                            total >= 0 ? total : "未统计");
+                    return Result.success(ConversationsRes.builder()
+                            .conversations(page.getConversations())
+                            .totalCount(total >= 0 ? (int) total : null)
+                            .nextCursor(page.getNextCursor())
+                            .hasMore(page.isHasMore())
+                            .build());
+                })
+                .onErrorMap(e -> {
+                    // 无效游标保持 IllegalArgumentException，由全局异常处理返回 400
+                    if (e instanceof IllegalArgumentException) {
+                        return e;
+                    }
+                    log.error("查询用户对话列表失败 - IP: {}", userIp, e);
+                    return new RuntimeException("查询失败", e);
+                });
+    }
+
+    /**
+     * 创建新会话
+     */
+    @PostMapping("/conversation/createNew")
+    public Mono<Result<CreateConversationRes>> createNew(ServerHttpRequest request) {
+        String userIp = IpUtils.getClientIp(request);
+        return reactiveConversationService.createNewConversation(userIp)
+                .map(conversation -> {
+                    log.info("创建新会话 - IP: {}, memoryId: {}", userIp, conversation.getMemoryId());
+                    return Result.success(CreateConversationRes.builder()
+                            .memoryId(conversation.getMemoryId())
+                            .title(conversation.getTitle())
+                            .message("会话创建成功")
+                            .build());
+                });
+    }
+
+    /**
+     * 获取会话详情
+     */
+    @GetMapping("/conversation/getConversationInfo/{memoryId}")
+    public Mono<Conversation> getConversationInfo(@PathVariable String memoryId) {
+        return reactiveConversationService.getConversation(memoryId)
+                .onErrorResume(e -> {
+                    log.error("获取会话详情失败: memoryId={}", memoryId, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 删除会话
+     */
+    @DeleteMapping("/conversation/delById/{memoryId}")
+    public Mono<Result<String>> deleteConversation(@PathVariable String memoryId) {
+        return Mono.fromCallable(() -> {
+                    conversationService.deleteConversation(memoryId);
+                    log.info("删除会话: memoryId={}", memoryId);
+                    return Result.<String>success("删除成功");
+                })
+                .subscribeOn(chatScheduler)
+                .onErrorMap(e -> new RuntimeException("删除会话失败: " + e.getMessage(), e));
+    }
+
+    /**
+     * 删除当前用户的全部会话
+     */
+    @DeleteMapping("/conversation/delAll")
+    public Mono<Result<Long>> deleteAllConversations(ServerHttpRequest request) {
+        String userIp = IpUtils.getClientIp(request);
+        return Mono.fromCallable(() -> {
+                    long deleted = conversationService.deleteUserConversations(userIp);
+                    log.info("删除用户全部会话 - IP: {}, 数量: {}", userIp, deleted);
+                    return Result.success(deleted);
+                })
+                .subscribeOn(chatScheduler)
+                .onErrorMap(e -> new RuntimeException("删除会话失败: " + e.getMessage(), e));
+    }
+
+    /**
+     * 生成新会话的标题（后台已生成时直接返回；按用户 IP 准入）
+     */
+    @PostMapping("/conversation/generateTitle")
+    public Mono<Result<GenerateTitleRes>> generateTitle(@RequestBody ChatReq chatReq, ServerHttpRequest request) {
+        String memoryId = chatReq.getMemoryId();
+        return admissionService.admit(AdmissionType.TITLE, IpUtils.getClientIp(request), () -> reactiveConversationService.getConversation(memoryId)
+                .filter(conversation -> !conversationService.isDefaultTitle(conversation.getTitle()))
+                .map(Conversation::getTitle)
+                .switchIfEmpty(Mono.fromCallable(() -> {
+                            // 后台任务进行中时等待其完成；条件更新失败时返回已保存的标题
+                            String title = titleGenerationService.generateForConversation(memoryId, chatReq.getMessage());
+                            log.info("生成标题 - memoryId: {}, title: {}", memoryId, title);
+                            return title;
+                        })
+                        .subscribeOn(chatScheduler))
+                .map(title -> Result.success(GenerateTitleRes.builder()
+                        .memoryId(memoryId)
+                        .title(title)
+                        .build()))
+                .onErrorMap(e -> new RuntimeException("生成会话标题失败: " + e.getMessage(), e)));
+    }
+
+    /**
+     * 根据对话ID分页查询消息列表（仅消息，不包含对话元信息），参数同 Servlet 模式
+     */
+    @GetMapping("/message/getMessagesById")
+    public Mono<Result<MessagesRes>> getMessagesById(@RequestParam String memoryId,
+                                                     @RequestParam(required = false) Integer beforeTurn,
+                                                     @RequestParam(defaultValue = "50") int size,
+                                                     @RequestParam(defaultValue = "false") boolean includeToolResults,
+                                                     @RequestParam(defaultValue = "true") boolean withTotal) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_MESSAGE_PAGE_SIZE);
+        Mono<Long> totalMono = withTotal && beforeTurn == null
+                ? reactiveConversationService.countMessages(memoryId)
+                : Mono.just(-1L);
+        return Mono.zip(reactiveConversationService.getMessagesPage(memoryId, beforeTurn, pageSize, includeToolResults), totalMono)
+                .map(tuple -> {
+                    MessagePage page = tuple.getT1();
+                    long total = tuple.getT2();
+                    log.info("查询对话消息列表 - memoryId: {}, 本页 {} 条，总数: {}", memoryId, page.getMessages().size(),
+                            total >= 0 ? total : "未统计");
+                    return Result.success(MessagesRes.builder()
+                            .memoryId(memoryId)
+                            .messages(page.getMessages())
+                            .totalCount(total >= 0 ? (int) total : null)
+                            .nextCursor(page.getNextCursor())
+                            .hasMore(page.isHasMore())
+                            .build());
+                })
+                .onErrorMap(e -> {
+                    log.error("查询对话消息列表失败 - memoryId: {}", memoryId, e);
+                    return new RuntimeException("查询失败", e);
+                });
+    }
+
+    /**
+     * 以 NDJSON 流式导出对话消息（每行一条消息，按 turn_index 倒序），随 Mongo 游标逐条写出
+     */
+    @GetMapping(value = "/message/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Message> streamMessages(@RequestParam String memoryId,
+                                        @RequestParam(required = false) Integer beforeTurn,
+                                        @RequestParam(defaultValue = "false") boolean includeToolResults) {
+        log.info("流式导出对话消息 - memoryId: {}", memoryId);
+        return reactiveConversationService.streamMessages(memoryId, beforeTurn, includeToolResults)
+                .doOnError(e -> log.error("流式导出对话消息失败 - memoryId: {}", memoryId, e));
+    }
+}
@@ -14,14 +14,12 @@ import java.util.List;
 @NoArgsConstructor
 public class ConversationsRes {
     private List<Conversation> conversations;
-    private Integer totalCount;
+    private Integer totalCount; // 会话总数，仅首页且请求统计时返回
+    private String nextCursor; // 下一页游标，没有更多时为 null
+    private Boolean hasMore; // 是否还有下一页
 
     // TODO 待添加
 
-//    private int currentPage;
-//    private int pageSize;
-//    private int totalPages;
-
 //        private int messageCount;
 //        private int totalTokensInput;
 //        private int totalTokensOutput;
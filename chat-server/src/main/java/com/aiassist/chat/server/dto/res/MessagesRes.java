@@ -15,9 +15,7 @@ import java.util.List;
 public class MessagesRes {
     private String memoryId;
     private List<Message> messages;
-    private int totalCount;
-
-//    private int currentPage;
-//    private int pageSize;
-//    private int totalPages;
+    private Integer totalCount; // 消息总数，仅首页且请求统计时返回
+    private Integer nextCursor; // 下一页游标（传给 beforeTurn），没有更多时为 null
+    private Boolean hasMore; // 是否还有下一页
 }
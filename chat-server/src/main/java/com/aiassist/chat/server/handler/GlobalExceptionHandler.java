@@ -0,0 +1,39 @@
+package com.aiassist.chat.server.handler;
+
+import com.aiassist.chat.core.admission.RateLimitedException;
+import com.aiassist.chat.server.result.Result;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * 全局异常处理（Servlet 与 reactive 模式通用）
+ */
+@Slf4j
+@RestControllerAdvice
+public class GlobalExceptionHandler {
+
+    /**
+     * 准入控制拒绝：返回 429，并通过 Retry-After（秒）告知客户端何时重试
+     */
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<Result<?>> handleRateLimited(RateLimitedException e) {
+        long retryAfterSeconds = Math.max(1, (e.getRetryAfterMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(Result.error(e.getMessage()));
+    }
+
+    /**
+     * 请求参数不合法（如无效的分页游标）：返回 400
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Result<?>> handleIllegalArgument(IllegalArgumentException e) {
+        log.warn("请求参数不合法: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Result.error(e.getMessage()));
+    }
+}
@@ -0,0 +1,106 @@
+package com.aiassist.chat.server.stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 流式输出合并
+ * <p>
+ * 模型逐 token 输出，逐 token 写回客户端会产生大量小帧与系统调用。
+ * 这里按时间窗口（默认30ms）或 token 数量把相邻片段合并为一帧：
+ * - 使用 bufferTimeout 的 fairBackpressure 模式，下游（客户端写出）慢时不会无界堆积
+ * - 下游取消（客户端断开）会沿链路向上取消模型调用
+ * <p>
+ * 配置说明：
+ * - chat.stream.coalesce.window-ms: 合并时间窗口，默认30
+ * - chat.stream.coalesce.max-tokens: 单帧最多合并的片段数，默认64
+ */
+@Component
+public class StreamCoalescer {
+
+    /**
+     * 客户端会去掉字段值开头的一个空格，前缀必须带空格，否则以空格开头的片段会丢失空格
+     */
+    private static final byte[] DATA_PREFIX = "data: ".getBytes(StandardCharsets.UTF_8);
+
+    @Value("${chat.stream.coalesce.window-ms:30}")
+    private long windowMs;
+
+    @Value("${chat.stream.coalesce.max-tokens:64}")
+    private int maxTokens;
+
+    /**
+     * 合并相邻片段
+     */
+    public Flux<String> coalesce(Flux<String> tokens) {
+        if (windowMs <= 0) {
+            return tokens;
+        }
+        return tokens
+                .bufferTimeout(maxTokens, Duration.ofMillis(windowMs), true)
+                .filter(list -> !list.isEmpty())
+                .map(StreamCoalescer::join);
+    }
+
+    /**
+     * 合并并预编码为 SSE 帧字节（每行以 "data: " 开头，空行结束一帧）
+     */
+    public Flux<byte[]> coalesceToSseFrames(Flux<String> tokens) {
+        return coalesce(tokens).map(StreamCoalescer::encodeSseFrame);
+    }
+
+    /**
+     * 编码一个 SSE 帧
+     * <p>
+     * SSE 中 \r\n、\r、\n 都是行结束符，先统一为 \n 再逐行加前缀，片段中单独的 \r 不会提前结束字段
+     */
+    public static byte[] encodeSseFrame(String data) {
+        if (data.indexOf('\r') >= 0) {
+            data = data.replace("\r\n", "\n").replace('\r', '\n');
+        }
+        byte[] body = data.getBytes(StandardCharsets.UTF_8);
+        int lines = 1;
+        for (byte b : body) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        // 原有换行保留，每行前加 "data: "，末尾 \n\n 结束一帧
+        byte[] frame = new byte[body.length + lines * DATA_PREFIX.length + 2];
+        int pos = 0;
+        System.arraycopy(DATA_PREFIX, 0, frame, pos, DATA_PREFIX.length);
+        pos += DATA_PREFIX.length;
+        for (byte b : body) {
+            if (b == '\n') {
+                frame[pos++] = '\n';
+                System.arraycopy(DATA_PREFIX, 0, frame, pos, DATA_PREFIX.length);
+                pos += DATA_PREFIX.length;
+            } else {
+                frame[pos++] = b;
+            }
+        }
+        frame[pos++] = '\n';
+        frame[pos] = '\n';
+        return frame;
+    }
+
+    private static String join(List<String> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int len = 0;
+        for (String p : parts) {
+            len += p.length();
+        }
+        StringBuilder sb = new StringBuilder(len);
+        for (String p : parts) {
+            sb.append(p);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package com.aiassist.chat.server.stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.HttpMessageConvertersAutoConfiguration;
+import org.springframework.boot.autoconfigure.http.codec.CodecsAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.reactive.HttpHandlerAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.reactive.ReactiveWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.reactive.WebFluxAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.WebMvcAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 流式输出部署模式对比基准：同一个流式接口分别跑在 Servlet（Tomcat）与 reactive（Netty）模式下
+ * <p>
+ * 接口按固定间隔吐出 token 并经 StreamCoalescer 合并，模拟模型流式回答；客户端并发打开大量流，
+ * 统计全部流完成的耗时与期间 JVM 线程数峰值。结果输出到标准输出，只断言每个流都完整收到
+ */
+class StreamingModeBenchmarkTest {
+
+    private static final int STREAMS = 500;
+
+    private static final int TOKENS = 50;
+
+    private static final Duration TOKEN_INTERVAL = Duration.ofMillis(10);
+
+    @Test
+    void servletVersusReactive() {
+        Result servlet = run(WebApplicationType.SERVLET, ServletApp.class);
+        Result reactive = run(WebApplicationType.REACTIVE, ReactiveApp.class);
+
+        System.out.printf("[streaming-mode] 并发流 %d, 每流 %d 个 token%n", STREAMS, TOKENS);
+        System.out.printf("[streaming-mode] servlet : 耗时 %d ms, 线程峰值 %d%n", servlet.elapsedMs, servlet.peakThreads);
+        System.out.printf("[streaming-mode] reactive: 耗时 %d ms, 线程峰值 %d%n", reactive.elapsedMs, reactive.peakThreads);
+    }
+
+    private Result run(WebApplicationType type, Class<?> app) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(app)
+                .web(type)
+                .properties("server.port=0", "spring.main.banner-mode=off")
+                .run()) {
+            int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            ConnectionProvider provider = ConnectionProvider.builder("benchmark-" + type)
+                    .maxConnections(STREAMS)
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            try {
+                WebClient client = WebClient.builder()
+                        .baseUrl("http://localhost:" + port)
+                        .clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider)))
+                        .build();
+                // 预热一轮，排除类加载与连接建立的影响
+                openStreams(client, 50);
+
+                ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+                AtomicInteger peak = new AtomicInteger(threads.getThreadCount());
+                ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+                sampler.scheduleAtFixedRate(() -> peak.accumulateAndGet(threads.getThreadCount(), Math::max),
+                        0, 5, TimeUnit.MILLISECONDS);
+                long begin = System.nanoTime();
+                try {
+                    openStreams(client, STREAMS);
+                } finally {
+                    sampler.shutdownNow();
+                }
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+                return new Result(elapsedMs, peak.get());
+            } finally {
+                provider.dispose();
+            }
+        }
+    }
+
+    private void openStreams(WebClient client, int count) {
+        String expected = expectedBody();
+        List<String> bodies = Flux.range(0, count)
+                .flatMap(i -> client.get()
+                        .uri("/bench/stream")
+                        .accept(MediaType.TEXT_PLAIN)
+                        .retrieve()
+                        .bodyToFlux(String.class)
+                        .reduce(new StringBuilder(), StringBuilder::append)
+                        .map(StringBuilder::toString), count)
+                .collectList()
+                .block(Duration.ofMinutes(2));
+        assertThat(bodies).hasSize(count).allMatch(expected::equals);
+    }
+
+    private static String expectedBody() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < TOKENS; i++) {
+            sb.append("t").append(i).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private record Result(long elapsedMs, int peakThreads) {
+    }
+
+    @RestController
+    static class BenchmarkController {
+
+        private final StreamCoalescer streamCoalescer;
+
+        BenchmarkController(StreamCoalescer streamCoalescer) {
+            this.streamCoalescer = streamCoalescer;
+        }
+
+        @GetMapping(value = "/bench/stream", produces = MediaType.TEXT_PLAIN_VALUE)
+        public Flux<String> stream() {
+            return streamCoalescer.coalesce(Flux.interval(TOKEN_INTERVAL)
+                    .take(TOKENS)
+                    .map(i -> "t" + i + " "));
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @Import({BenchmarkController.class, StreamCoalescer.class})
+    @ImportAutoConfiguration({
+            PropertyPlaceholderAutoConfiguration.class,
+            JacksonAutoConfiguration.class,
+            TaskExecutionAutoConfiguration.class,
+            HttpMessageConvertersAutoConfiguration.class,
+            ServletWebServerFactoryAutoConfiguration.class,
+            DispatcherServletAutoConfiguration.class,
+            WebMvcAutoConfiguration.class
+    })
+    static class ServletApp {
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @Import({BenchmarkController.class, StreamCoalescer.class})
+    @ImportAutoConfiguration({
+            PropertyPlaceholderAutoConfiguration.class,
+            JacksonAutoConfiguration.class,
+            CodecsAutoConfiguration.class,
+            ReactiveWebServerFactoryAutoConfiguration.class,
+            HttpHandlerAutoConfiguration.class,
+            WebFluxAutoConfiguration.class
+    })
+    static class ReactiveApp {
+
+        /**
+         * 与 ReactiveServerConfiguration 一致：Tomcat 也在类路径上，显式选择 Netty
+         */
+        @Bean
+        NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+            return new NettyReactiveWebServerFactory();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.aiassist.rpcservice.cache;
+
+import com.rpc.service.web.viewer.selectolax.ViewRequest;
+import com.rpc.service.web.viewer.selectolax.ViewResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 网页抓取结果缓存
+ * <p>
+ * 两级缓存：
+ * - L1：进程内 LRU（条数上限）
+ * - L2：本地磁盘，GZIP 压缩的 ViewResponse protobuf 字节，进程重启后仍可命中
+ * <p>
+ * Key：规范化 URL + 请求选项（include_links / include_images / preserve_newlines / 文本截取区间）
+ * 新鲜度：以 ViewResponse.viewed_at 为准（未设置时以写入时间为准），超过 TTL 视为过期
+ * 只缓存成功的响应（无错误信息且状态码 2xx）
+ * <p>
+ * 配置说明：
+ * - grpc.view.cache.enable: 是否启用，默认true
+ * - grpc.view.cache.ttl-seconds: 新鲜期（秒），默认600
+ * - grpc.view.cache.l1-max-entries: L1 条数上限，默认200
+ * - grpc.view.cache.disk-enable: 是否启用磁盘 L2，默认true
+ * - grpc.view.cache.disk-dir: 磁盘缓存目录
+ * - grpc.view.cache.disk-max-files: 磁盘文件数上限，超出按写入顺序淘汰最旧的，默认2000
+ * <p>
+ * 磁盘文件以内存索引记录（启动时扫描一次目录），写入时只比较索引大小，超出上限才淘汰，不在每次写入时列目录
+ */
+@Slf4j
+@Component
+public class PageCache {
+
+    @Value("${grpc.view.cache.enable:true}")
+    private boolean enable;
+
+    @Value("${grpc.view.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${grpc.view.cache.l1-max-entries:200}")
+    private int l1MaxEntries;
+
+    @Value("${grpc.view.cache.disk-enable:true}")
+    private boolean diskEnable;
+
+    @Value("${grpc.view.cache.disk-dir:${java.io.tmpdir}/aiassist-page-cache}")
+    private String diskDir;
+
+    @Value("${grpc.view.cache.disk-max-files:2000}")
+    private int diskMaxFiles;
+
+    private Map<String, Entry> l1;
+
+    private Path diskPath;
+
+    /**
+     * 磁盘文件索引（文件名），按写入顺序排列，最旧的在前
+     */
+    private final LinkedHashSet<String> diskIndex = new LinkedHashSet<>();
+
+    /**
+     * L1 缓存条目
+     *
+     * @param response  抓取结果
+     * @param freshAtMs 新鲜度基准时间（毫秒）
+     */
+    private record Entry(ViewResponse response, long freshAtMs) {
+    }
+
+    @PostConstruct
+    public void init() {
+        l1 = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > l1MaxEntries;
+            }
+        };
+        if (enable && diskEnable) {
+            try {
+                diskPath = Paths.get(diskDir);
+                Files.createDirectories(diskPath);
+                loadDiskIndex();
+            } catch (IOException e) {
+                log.warn("创建网页磁盘缓存目录失败，仅使用内存缓存: {}", diskDir, e);
+                diskPath = null;
+            }
+        }
+        log.info("网页缓存初始化 - 启用: {}, TTL: {}s, L1上限: {}, 磁盘目录: {}, 磁盘文件数: {}",
+                enable, ttlSeconds, l1MaxEntries, diskPath, diskIndex.size());
+    }
+
+    /**
+     * 启动时扫描一次磁盘目录，按修改时间建立索引，并淘汰超出上限的文件
+     */
+    private void loadDiskIndex() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(diskPath)) {
+            files = stream.filter(p -> p.getFileName().toString().endsWith(".gz"))
+                    .sorted(Comparator.comparingLong(p -> p.toFile().lastModified()))
+                    .toList();
+        }
+        synchronized (diskIndex) {
+            for (Path p : files) {
+                diskIndex.add(p.getFileName().toString());
+            }
+        }
+        evictDiskIfNeeded();
+    }
+
+    public boolean isEnabled() {
+        return enable;
+    }
+
+    /**
+     * 生成缓存 key；带自定义请求头的请求不缓存，返回 null
+     */
+    public String keyOf(ViewRequest request) {
+        if (!enable || request.getCustomHeadersCount() > 0) {
+            return null;
+        }
+        return normalizeUrl(request.getUrl())
+                + "|l=" + request.getIncludeLinks()
+                + "|i=" + request.getIncludeImages()
+                + "|n=" + request.getPreserveNewlines()
+                + "|s=" + (request.hasTextStartPos() ? request.getTextStartPos() : "")
+                + "|e=" + (request.hasTextEndPos() ? request.getTextEndPos() : "");
+    }
+
+    /**
+     * 读取新鲜的缓存，先 L1 后 L2；L2 命中会回填 L1
+     */
+    public ViewResponse get(String key) {
+        if (key == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (l1) {
+            entry = l1.get(key);
+        }
+        if (entry != null) {
+            if (isFresh(entry.freshAtMs(), now)) {
+                log.debug("网页缓存 L1 命中: {}", key);
+                return entry.response();
+            }
+            synchronized (l1) {
+                l1.remove(key);
+            }
+        }
+
+        entry = readDisk(key);
+        if (entry != null && isFresh(entry.freshAtMs(), now)) {
+            log.debug("网页缓存 L2 命中: {}", key);
+            synchronized (l1) {
+                l1.put(key, entry);
+            }
+            return entry.response();
+        }
+        return null;
+    }
+
+    /**
+     * 写入缓存，仅缓存成功响应
+     */
+    public void put(String key, ViewResponse response) {
+        if (key == null || response == null || !isCacheable(response)) {
+            return;
+        }
+        long freshAt = response.hasViewedAt() && response.getViewedAt().getSeconds() > 0
+                ? response.getViewedAt().getSeconds() * 1000L + response.getViewedAt().getNanos() / 1_000_000
+                : System.currentTimeMillis();
+        synchronized (l1) {
+            l1.put(key, new Entry(response, freshAt));
+        }
+        writeDisk(key, response);
+    }
+
+    private boolean isCacheable(ViewResponse response) {
+        int status = response.getStatusCode();
+        return response.getErrorMessage().isEmpty()
+                && (status == 0 || (status >= 200 && status < 300))
+                && !response.getTextContent().isEmpty();
+    }
+
+    private boolean isFresh(long freshAtMs, long now) {
+        return now - freshAtMs < ttlSeconds * 1000L;
+    }
+
+    // ==================== 磁盘 L2 ====================
+
+    private Entry readDisk(String key) {
+        if (diskPath == null) {
+            return null;
+        }
+        String fileName = fileNameOf(key);
+        Path file = diskPath.resolve(fileName);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ViewResponse response = ViewResponse.parseFrom(in);
+            long freshAt = response.hasViewedAt() && response.getViewedAt().getSeconds() > 0
+                    ? response.getViewedAt().getSeconds() * 1000L
+                    : Files.getLastModifiedTime(file).toMillis();
+            if (!isFresh(freshAt, System.currentTimeMillis())) {
+                Files.deleteIfExists(file);
+                synchronized (diskIndex) {
+                    diskIndex.remove(fileName);
+                }
+                return null;
+            }
+            return new Entry(response, freshAt);
+        } catch (IOException e) {
+            log.warn("读取网页磁盘缓存失败: {}", file, e);
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, ViewResponse response) {
+        if (diskPath == null) {
+            return;
+        }
+        String fileName = fileNameOf(key);
+        Path file = diskPath.resolve(fileName);
+        try {
+            // 先写临时文件再原子替换，避免并发读到半个文件
+            Path tmp = Files.createTempFile(diskPath, "page", ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                response.writeTo(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (diskIndex) {
+                // 覆盖写入的文件移到队尾
+                diskIndex.remove(fileName);
+                diskIndex.add(fileName);
+            }
+            evictDiskIfNeeded();
+        } catch (IOException e) {
+            log.warn("写入网页磁盘缓存失败: {}", file, e);
+        }
+    }
+
+    /**
+     * 磁盘文件数超出上限时，按写入顺序淘汰最旧的文件；只读内存索引，不列目录
+     */
+    private void evictDiskIfNeeded() throws IOException {
+        List<String> oldest;
+        synchronized (diskIndex) {
+            int overflow = diskIndex.size() - diskMaxFiles;
+            if (overflow <= 0) {
+                return;
+            }
+            oldest = new ArrayList<>(overflow);
+            Iterator<String> it = diskIndex.iterator();
+            while (overflow-- > 0 && it.hasNext()) {
+                oldest.add(it.next());
+                it.remove();
+            }
+        }
+        for (String name : oldest) {
+            Files.deleteIfExists(diskPath.resolve(name));
+        }
+        log.debug("网页磁盘缓存淘汰 {} 个文件", oldest.size());
+    }
+
+    private String fileNameOf(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest) + ".gz";
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 不可用", e);
+        }
+    }
+
+    /**
+     * URL 规范化：scheme/host 小写、去掉默认端口、去掉 fragment 和末尾斜杠
+     */
+    static String normalizeUrl(String url) {
+        try {
+            URI uri = new URI(url.trim());
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url.trim();
+            }
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            boolean defaultPort = port == -1
+                    || ("http".equals(scheme) && port == 80)
+                    || ("https".equals(scheme) && port == 443);
+            String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+            if (path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(scheme).append("://").append(uri.getHost().toLowerCase(Locale.ROOT));
+            if (!defaultPort) {
+                sb.append(':').append(port);
+            }
+            sb.append(path);
+            if (uri.getRawQuery() != null) {
+                sb.append('?').append(uri.getRawQuery());
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            return url.trim();
+        }
+    }
+}
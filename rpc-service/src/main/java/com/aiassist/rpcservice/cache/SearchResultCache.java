@@ -0,0 +1,124 @@
+package com.aiassist.rpcservice.cache;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.rpc.service.web.searcher.searxng.SearchRequest;
+import com.rpc.service.web.searcher.searxng.SearchResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 搜索结果缓存
+ * <p>
+ * Key：(query, page, timeRange, category, language, safeSearch)
+ * Value：SearchResponse 的 protobuf 字节 + 拉取时间
+ * <p>
+ * 三种状态：
+ * - 新鲜（ttl 内）：直接返回
+ * - 陈旧（ttl ~ ttl + stale 窗口）：先返回旧结果，同时由调用方在后台刷新（stale-while-revalidate）
+ * - 过期：视为未命中
+ * <p>
+ * 配置说明：
+ * - grpc.search.cache.enable: 是否启用，默认true
+ * - grpc.search.cache.ttl-seconds: 新鲜期，默认60
+ * - grpc.search.cache.stale-seconds: 过期后仍可返回旧结果的窗口，默认300
+ * - grpc.search.cache.max-entries: 条数上限（LRU），默认500
+ */
+@Slf4j
+@Component
+public class SearchResultCache {
+
+    @Value("${grpc.search.cache.enable:true}")
+    private boolean enable;
+
+    @Value("${grpc.search.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${grpc.search.cache.stale-seconds:300}")
+    private long staleSeconds;
+
+    @Value("${grpc.search.cache.max-entries:500}")
+    private int maxEntries;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    private record Entry(byte[] bytes, long fetchedAtMs) {
+    }
+
+    /**
+     * 缓存查询结果
+     *
+     * @param response 缓存的响应
+     * @param stale    是否已过新鲜期（需要后台刷新）
+     */
+    public record Lookup(SearchResponse response, boolean stale) {
+    }
+
+    /**
+     * 生成缓存 key；未启用时返回 null
+     */
+    public String keyOf(SearchRequest request) {
+        if (!enable) {
+            return null;
+        }
+        return String.join("\u0001",
+                request.getQuery().trim(),
+                String.valueOf(request.getPageNumber()),
+                request.getTimeRange(),
+                request.getCategory(),
+                request.getLanguage(),
+                String.valueOf(request.getSafeSearch()));
+    }
+
+    /**
+     * 查询缓存，未命中或彻底过期返回 null
+     */
+    public Lookup get(String key) {
+        if (key == null) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        long age = System.currentTimeMillis() - entry.fetchedAtMs();
+        if (age >= (ttlSeconds + staleSeconds) * 1000L) {
+            synchronized (entries) {
+                entries.remove(key);
+            }
+            return null;
+        }
+        try {
+            return new Lookup(SearchResponse.parseFrom(entry.bytes()), age >= ttlSeconds * 1000L);
+        } catch (InvalidProtocolBufferException e) {
+            log.warn("搜索缓存反序列化失败，丢弃: {}", key, e);
+            synchronized (entries) {
+                entries.remove(key);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存，空结果不缓存
+     */
+    public void put(String key, SearchResponse response) {
+        if (key == null || response == null || response.getResultsCount() == 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(response.toByteArray(), System.currentTimeMillis()));
+        }
+    }
+}
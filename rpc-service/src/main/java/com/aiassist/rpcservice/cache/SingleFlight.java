@@ -0,0 +1,127 @@
+package com.aiassist.rpcservice.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并（single-flight）
+ * <p>
+ * 同一个 key 的并发请求只触发一次上游调用，其余调用方共享同一个 CompletableFuture。
+ * 上游完成（成功或失败）后立即移除，下一次请求会重新发起。
+ * 返回给每个调用方的是共享 Future 的副本，调用方对其 complete/超时不会影响其他调用方。
+ * 调用方取消自己的副本时计数减一，所有调用方都取消后才取消上游调用。
+ *
+ * @param <K> 请求 key
+ * @param <V> 结果类型
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 一次进行中的上游调用
+     */
+    private static final class Flight<V> {
+
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        private CompletableFuture<V> upstream;
+
+        private int waiters;
+
+        /**
+         * 所有调用方都已取消，不再接受新的调用方
+         */
+        private boolean abandoned;
+
+        synchronized boolean join() {
+            if (abandoned) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        synchronized void attach(CompletableFuture<V> upstream) {
+            this.upstream = upstream;
+            if (abandoned) {
+                upstream.cancel(true);
+            }
+        }
+
+        /**
+         * 调用方取消；最后一个调用方取消时取消上游
+         *
+         * @return 是否已被所有调用方放弃
+         */
+        synchronized boolean leave() {
+            if (--waiters > 0) {
+                return false;
+            }
+            abandoned = true;
+            if (upstream != null) {
+                upstream.cancel(true);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 执行或加入已有的请求
+     *
+     * @param key    请求 key
+     * @param loader 真正发起上游调用的函数，仅在没有进行中的请求时调用
+     * @return 共享的结果 Future
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> loader) {
+        Flight<V> created = new Flight<>();
+        created.join();
+        Flight<V> existing;
+        while ((existing = inFlight.putIfAbsent(key, created)) != null) {
+            if (existing.join()) {
+                return subscribe(key, existing);
+            }
+            // 已被所有调用方放弃的请求不再加入，移除后重新发起
+            inFlight.remove(key, existing);
+        }
+
+        CompletableFuture<V> upstream;
+        try {
+            upstream = loader.get();
+        } catch (Exception e) {
+            inFlight.remove(key, created);
+            created.result.completeExceptionally(e);
+            return created.result.copy();
+        }
+        CompletableFuture<V> copy = subscribe(key, created);
+        created.attach(upstream);
+        upstream.whenComplete((v, e) -> {
+            inFlight.remove(key, created);
+            if (e != null) {
+                created.result.completeExceptionally(e);
+            } else {
+                created.result.complete(v);
+            }
+        });
+        return copy;
+    }
+
+    private CompletableFuture<V> subscribe(K key, Flight<V> flight) {
+        CompletableFuture<V> copy = flight.result.copy();
+        copy.whenComplete((v, e) -> {
+            if (copy.isCancelled() && flight.leave()) {
+                inFlight.remove(key, flight);
+            }
+        });
+        return copy;
+    }
+
+    /**
+     * 当前进行中的请求数量
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -1,5 +1,8 @@
 package com.aiassist.rpcservice.client;
 
+import com.aiassist.rpcservice.cache.SearchResultCache;
+import com.aiassist.rpcservice.cache.SingleFlight;
+import com.aiassist.rpcservice.utils.FutureUtils;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.rpc.service.web.searcher.searxng.AsyncSearchServiceGrpc;
 import com.rpc.service.web.searcher.searxng.SearchRequest;
@@ -11,19 +14,26 @@ import io.grpc.StatusRuntimeException;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
  * gRPC客户端，作为Spring Bean进行管理。
  * 通过依赖注入使用，并从配置文件中获取连接信息。
+ * 搜索结果经 {@link SearchResultCache} 缓存，并发的相同搜索合并为一次调用。
  */
 @Slf4j
 @Component
@@ -41,6 +51,21 @@ public class SearchServiceClient {
     //    private AsyncSearchServiceGrpc.AsyncSearchServiceBlockingStub blockingStub; // 换成了 FutureStub
     private AsyncSearchServiceGrpc.AsyncSearchServiceFutureStub futureStub;
 
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    /**
+     * 回调线程池，避免在 gRPC 事件循环线程上执行回调
+     */
+    @Autowired
+    @Qualifier("grpcCallbackExecutor")
+    private Executor callbackExecutor;
+
+    /**
+     * 同一搜索条件的并发请求合并为一次 gRPC 调用
+     */
+    private final SingleFlight<String, SearchResponse> singleFlight = new SingleFlight<>();
+
     /**
      * 使用@PostConstruct注解，在Bean初始化后执行此方法。
      * 负责建立gRPC连接。
@@ -49,6 +74,7 @@ public class SearchServiceClient {
     private void init() {
         channel = ManagedChannelBuilder.forAddress(host, port)
                 .usePlaintext() // 在生产环境中建议使用TLS加密
+                .executor(callbackExecutor)
                 .build();
 //        blockingStub = AsyncSearchServiceGrpc.newBlockingStub(channel);
         futureStub = AsyncSearchServiceGrpc.newFutureStub(channel);
@@ -83,10 +109,8 @@ public class SearchServiceClient {
 
 //            SearchResponse response = blockingStub.search(request);
 
-            // 使用Future客户端发送请求并等待结果 TODO 调整超时参数
-            ListenableFuture<SearchResponse> future = futureStub
-                    .withDeadlineAfter(5, TimeUnit.SECONDS)
-                    .search(request);
+            // 优先命中缓存，未命中则合并并发请求后调用 gRPC
+            CompletableFuture<SearchResponse> future = fetch(request);
             // 等待Future结果
             SearchResponse response = future.get(10, TimeUnit.SECONDS);
 
@@ -119,6 +143,118 @@ public class SearchServiceClient {
         }
     }
 
+    /**
+     * 异步执行完整的搜索请求，不阻塞调用线程
+     * <p>
+     * 超时或失败时以 RuntimeException 异常完成
+     */
+    public CompletableFuture<List<SearchResultItem>> searchAsync(String query, int pageNumber, String timeRange,
+                                                                 String category, String language, boolean safeSearch) {
+        logger.info("Executing async search request: query={}, page={}, timeRange={}, category={}, language={}, safeSearch={}",
+                query, pageNumber, timeRange, category, language, safeSearch);
+        SearchRequest request = SearchRequest.newBuilder()
+                .setQuery(query)
+                .setPageNumber(pageNumber)
+                .setTimeRange(timeRange)
+                .setCategory(category)
+                .setLanguage(language)
+                .setSafeSearch(safeSearch)
+                .build();
+
+        CompletableFuture<SearchResponse> fetched = fetch(request).orTimeout(10, TimeUnit.SECONDS);
+        return FutureUtils.cancelOnCancel(fetched.handle((response, e) -> {
+                    if (e == null) {
+                        return response.getResultsList();
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof TimeoutException) {
+                        log.error("网页搜索超时: query={}, pageNumber={}", query, pageNumber);
+                        throw new RuntimeException("网页搜索超时: " + query, cause);
+                    }
+                    if (cause instanceof StatusRuntimeException sre) {
+                        log.error("gRPC 调用失败: code={}, desc={}, query={}, pageNumber={}",
+                                sre.getStatus().getCode(), sre.getStatus().getDescription(), query, pageNumber);
+                        throw new RuntimeException("gRPC service call failed: " + sre.getStatus(), sre);
+                    }
+                    log.error("网页搜索执行失败: query={}, pageNumber={}", query, pageNumber, cause);
+                    throw new RuntimeException("网页搜索执行失败: " + query, cause);
+                }), fetched);
+    }
+
+    /**
+     * 异步搜索的简化版本
+     */
+    public CompletableFuture<List<SearchResultItem>> searchAsync(String query) {
+        return searchAsync(query, 1, "", "general", "auto", false);
+    }
+
+    /**
+     * 响应式搜索（Mono），订阅时才发起请求
+     */
+    public Mono<List<SearchResultItem>> searchMono(String query) {
+        return Mono.fromFuture(() -> searchAsync(query));
+    }
+
+    /**
+     * 搜索：缓存 -> single-flight -> gRPC
+     * <p>
+     * 陈旧缓存直接返回并在后台刷新；未命中时同一 key 的并发请求只发起一次 gRPC 调用
+     */
+    private CompletableFuture<SearchResponse> fetch(SearchRequest request) {
+        String key = searchResultCache.keyOf(request);
+        if (key == null) {
+            return callSearch(request);
+        }
+        SearchResultCache.Lookup cached = searchResultCache.get(key);
+        if (cached != null) {
+            if (cached.stale()) {
+                log.debug("搜索缓存已陈旧，后台刷新: query={}", request.getQuery());
+                loadAndCache(key, request).exceptionally(e -> {
+                    log.warn("搜索缓存后台刷新失败: query={}, error={}", request.getQuery(), e.getMessage());
+                    return null;
+                });
+            } else {
+                log.debug("搜索缓存命中: query={}", request.getQuery());
+            }
+            return CompletableFuture.completedFuture(cached.response());
+        }
+        return loadAndCache(key, request);
+    }
+
+    private CompletableFuture<SearchResponse> loadAndCache(String key, SearchRequest request) {
+        return singleFlight.execute(key, () -> {
+            CompletableFuture<SearchResponse> call = callSearch(request);
+            return FutureUtils.cancelOnCancel(call.thenApply(response -> {
+                searchResultCache.put(key, response);
+                return response;
+            }), call);
+        });
+    }
+
+    /**
+     * 发起 gRPC 调用并转换为 CompletableFuture，异常为原始异常
+     */
+    private CompletableFuture<SearchResponse> callSearch(SearchRequest request) {
+        // TODO 调整超时参数
+        ListenableFuture<SearchResponse> future = futureStub
+                .withDeadlineAfter(5, TimeUnit.SECONDS)
+                .search(request);
+
+        CompletableFuture<SearchResponse> completableFuture = new CompletableFuture<>();
+        // 取消时一并取消 gRPC 调用
+        FutureUtils.cancelOnCancel(completableFuture, future);
+        future.addListener(() -> {
+            try {
+                completableFuture.complete(future.get());
+            } catch (ExecutionException e) {
+                completableFuture.completeExceptionally(e.getCause());
+            } catch (Exception e) {
+                completableFuture.completeExceptionally(e);
+            }
+        }, callbackExecutor);
+        return completableFuture;
+    }
+
     /**
      * 执行搜索请求的简化版本
      */
@@ -1,5 +1,8 @@
 package com.aiassist.rpcservice.client;
 
+import com.aiassist.rpcservice.cache.PageCache;
+import com.aiassist.rpcservice.cache.SingleFlight;
+import com.aiassist.rpcservice.utils.FutureUtils;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.rpc.service.web.viewer.selectolax.ViewRequest;
 import com.rpc.service.web.viewer.selectolax.ViewResponse;
@@ -8,8 +11,11 @@ import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.StatusRuntimeException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -17,7 +23,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -31,6 +39,7 @@ import java.util.concurrent.TimeoutException;
  * - 提供同步和异步两种调用方式
  * - 同步方式：内部使用Future但等待结果，不阻塞gRPC线程池
  * - 异步方式：返回CompletableFuture，完全非阻塞
+ * - 抓取结果经 {@link PageCache} 缓存，同一网页的并发请求合并为一次调用
  */
 @Slf4j
 @Component
@@ -45,11 +54,27 @@ public class SelectolaxViewerClient {
     private ManagedChannel channel;
     private WebViewerServiceGrpc.WebViewerServiceFutureStub futureStub;
 
+    @Autowired
+    private PageCache pageCache;
+
+    /**
+     * 回调线程池，避免在 gRPC 事件循环线程上执行回调
+     */
+    @Autowired
+    @Qualifier("grpcCallbackExecutor")
+    private Executor callbackExecutor;
+
+    /**
+     * 同一网页的并发抓取合并为一次 gRPC 调用
+     */
+    private final SingleFlight<String, ViewResponse> singleFlight = new SingleFlight<>();
+
     @PostConstruct
     public void init() {
         // 创建gRPC通道
         channel = ManagedChannelBuilder.forAddress(host, port)
                 .usePlaintext() // 使用明文传输，生产环境建议使用TLS
+                .executor(callbackExecutor)
                 .build();
 
         // 创建Future式客户端存根（适合Web应用，避免阻塞线程）
@@ -107,35 +132,13 @@ public class SelectolaxViewerClient {
                                     boolean includeLinks, boolean includeImages, boolean preserveNewlines,
                                     Integer textStartPos, Integer textEndPos) {
         try {
-            // 构建请求
-            ViewRequest.Builder requestBuilder = ViewRequest.newBuilder()
-                    .setUrl(url)
-                    .setTimeoutSeconds(timeoutSeconds)
-                    .setIncludeLinks(includeLinks)
-                    .setIncludeImages(includeImages)
-                    .setPreserveNewlines(preserveNewlines);
-
-            // 添加自定义请求头
-            if (customHeaders != null && !customHeaders.isEmpty()) {
-                requestBuilder.putAllCustomHeaders(customHeaders);
-            }
-
-            // 设置文本截取位置
-            if (textStartPos != null) {
-                requestBuilder.setTextStartPos(textStartPos);
-            }
-            if (textEndPos != null) {
-                requestBuilder.setTextEndPos(textEndPos);
-            }
-
-            ViewRequest request = requestBuilder.build();
+            ViewRequest request = buildRequest(url, timeoutSeconds, customHeaders,
+                    includeLinks, includeImages, preserveNewlines, textStartPos, textEndPos);
 
             log.debug("发送网页抓取请求: url={}, timeout={}s", url, timeoutSeconds);
 
-            // 使用Future客户端发送请求并等待结果 TODO 调整超时参数
-            ListenableFuture<ViewResponse> future = futureStub
-                    .withDeadlineAfter(timeoutSeconds + 5, TimeUnit.SECONDS)
-                    .viewWebPage(request);
+            // 优先命中缓存，未命中则经 single-flight 合并后发起 gRPC 请求
+            CompletableFuture<ViewResponse> future = fetch(request, timeoutSeconds);
 
             // 等待Future结果
             ViewResponse response = future.get(timeoutSeconds + 10, TimeUnit.SECONDS);
@@ -207,52 +210,28 @@ public class SelectolaxViewerClient {
                                                             boolean preserveNewlines,
                                                             Integer textStartPos, Integer textEndPos) {
         try {
-            // 构建请求
-            ViewRequest.Builder requestBuilder = ViewRequest.newBuilder()
-                    .setUrl(url)
-                    .setTimeoutSeconds(timeoutSeconds)
-                    .setIncludeLinks(includeLinks)
-                    .setIncludeImages(includeImages)
-                    .setPreserveNewlines(preserveNewlines);
-
-            // 添加自定义请求头
-            if (customHeaders != null && !customHeaders.isEmpty()) {
-                requestBuilder.putAllCustomHeaders(customHeaders);
-            }
-
-            // 设置文本截取位置
-            if (textStartPos != null) {
-                requestBuilder.setTextStartPos(textStartPos);
-            }
-            if (textEndPos != null) {
-                requestBuilder.setTextEndPos(textEndPos);
-            }
-
-            ViewRequest request = requestBuilder.build();
+            ViewRequest request = buildRequest(url, timeoutSeconds, customHeaders,
+                    includeLinks, includeImages, preserveNewlines, textStartPos, textEndPos);
 
             log.debug("发送异步网页抓取请求: url={}, timeout={}s", url, timeoutSeconds);
 
-            // 使用Future客户端发送异步请求
-            ListenableFuture<ViewResponse> future = futureStub
-                    .withDeadlineAfter(timeoutSeconds + 5, TimeUnit.SECONDS)
-                    .viewWebPage(request);
-
-            // 转换为CompletableFuture
             CompletableFuture<ViewResponse> completableFuture = new CompletableFuture<>();
-
-            future.addListener(() -> {
-                try {
-                    ViewResponse response = future.get();
-                    log.debug("异步网页抓取完成: url={}, status={}, title={}, contentLength={}",
-                            response.getUrl(), response.getStatusCode(), response.getTitle(),
-                            response.getTextContent().length());
+            CompletableFuture<ViewResponse> fetched = fetch(request, timeoutSeconds);
+            FutureUtils.cancelOnCancel(completableFuture, fetched);
+            fetched.whenComplete((response, e) -> {
+                if (completableFuture.isDone()) {
+                    // 调用方已取消
+                    return;
+                }
+                if (e == null) {
                     completableFuture.complete(response);
-                } catch (Exception e) {
-                    log.error("异步网页抓取失败: url={}", url, e);
-                    completableFuture.completeExceptionally(
-                            new RuntimeException("异步网页抓取失败: " + e.getMessage(), e));
+                    return;
                 }
-            }, Runnable::run);
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                log.error("异步网页抓取失败: url={}", url, cause);
+                completableFuture.completeExceptionally(
+                        new RuntimeException("异步网页抓取失败: " + cause.getMessage(), cause));
+            });
 
             return completableFuture;
 
@@ -265,6 +244,98 @@ public class SelectolaxViewerClient {
     }
 
 
+    /**
+     * 响应式抓取网页内容（Mono），订阅时才发起请求
+     *
+     * @param url            要抓取的网页URL
+     * @param timeoutSeconds 超时时间（秒）
+     * @return Mono包装的响应
+     */
+    public Mono<ViewResponse> viewWebPageMono(String url, int timeoutSeconds) {
+        return Mono.fromFuture(() -> viewWebPageAsync(url, timeoutSeconds)
+                .orTimeout(timeoutSeconds + 10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 构建抓取请求
+     */
+    private ViewRequest buildRequest(String url, int timeoutSeconds, Map<String, String> customHeaders,
+                                     boolean includeLinks, boolean includeImages, boolean preserveNewlines,
+                                     Integer textStartPos, Integer textEndPos) {
+        ViewRequest.Builder requestBuilder = ViewRequest.newBuilder()
+                .setUrl(url)
+                .setTimeoutSeconds(timeoutSeconds)
+                .setIncludeLinks(includeLinks)
+                .setIncludeImages(includeImages)
+                .setPreserveNewlines(preserveNewlines);
+
+        // 添加自定义请求头
+        if (customHeaders != null && !customHeaders.isEmpty()) {
+            requestBuilder.putAllCustomHeaders(customHeaders);
+        }
+
+        // 设置文本截取位置
+        if (textStartPos != null) {
+            requestBuilder.setTextStartPos(textStartPos);
+        }
+        if (textEndPos != null) {
+            requestBuilder.setTextEndPos(textEndPos);
+        }
+        return requestBuilder.build();
+    }
+
+    /**
+     * 抓取网页：缓存 -> single-flight -> gRPC
+     * <p>
+     * 同一 key 的并发请求只发起一次 gRPC 调用；成功结果写入缓存。
+     * 返回的 Future 异常完成时，异常为原始异常（如 StatusRuntimeException）
+     */
+    private CompletableFuture<ViewResponse> fetch(ViewRequest request, int timeoutSeconds) {
+        String key = pageCache.keyOf(request);
+        if (key == null) {
+            return callViewWebPage(request, timeoutSeconds);
+        }
+        ViewResponse cached = pageCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return singleFlight.execute(key, () -> {
+            CompletableFuture<ViewResponse> call = callViewWebPage(request, timeoutSeconds);
+            return FutureUtils.cancelOnCancel(call.thenApply(response -> {
+                pageCache.put(key, response);
+                return response;
+            }), call);
+        });
+    }
+
+    /**
+     * 发起 gRPC 调用并转换为 CompletableFuture
+     */
+    private CompletableFuture<ViewResponse> callViewWebPage(ViewRequest request, int timeoutSeconds) {
+        // TODO 调整超时参数
+        ListenableFuture<ViewResponse> future = futureStub
+                .withDeadlineAfter(timeoutSeconds + 5, TimeUnit.SECONDS)
+                .viewWebPage(request);
+
+        CompletableFuture<ViewResponse> completableFuture = new CompletableFuture<>();
+        // 取消时一并取消 gRPC 调用
+        FutureUtils.cancelOnCancel(completableFuture, future);
+        future.addListener(() -> {
+            try {
+                ViewResponse response = future.get();
+                log.debug("网页抓取完成: url={}, status={}, title={}, contentLength={}",
+                        response.getUrl(), response.getStatusCode(), response.getTitle(),
+                        response.getTextContent().length());
+                completableFuture.complete(response);
+            } catch (ExecutionException e) {
+                completableFuture.completeExceptionally(e.getCause());
+            } catch (Exception e) {
+                completableFuture.completeExceptionally(e);
+            }
+        }, callbackExecutor);
+        return completableFuture;
+    }
+
     /**
      * 批量异步抓取网页内容
      *
@@ -322,6 +393,69 @@ public class SelectolaxViewerClient {
                 });
     }
 
+    /**
+     * 批量异步抓取网页内容 - 带全局截止时间
+     * <p>
+     * 与 {@link #viewWebPagesBatch(List, int)} 不同，到达截止时间后不再等待慢请求，
+     * 已完成的结果正常返回，未完成或失败的位置为 null（保持索引对应），未完成的请求会被取消；
+     * 取消返回的 Future 会取消整批请求
+     *
+     * @param urls           URL列表
+     * @param timeoutSeconds 单个网页的抓取超时（秒）
+     * @param deadlineMillis 整批的全局截止时间（毫秒）
+     * @return CompletableFuture包装的响应列表
+     */
+    public CompletableFuture<List<ViewResponse>> viewWebPagesBatch(List<String> urls, int timeoutSeconds, long deadlineMillis) {
+        if (urls == null || urls.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+
+        log.info("开始批量异步抓取 {} 个网页, 全局截止时间: {}ms", urls.size(), deadlineMillis);
+
+        List<CompletableFuture<ViewResponse>> calls = new ArrayList<>();
+        List<CompletableFuture<ViewResponse>> futures = new ArrayList<>();
+        for (String url : urls) {
+            CompletableFuture<ViewResponse> call = viewWebPageAsync(url, timeoutSeconds,
+                    null, false, false, true, null, null);
+            calls.add(call);
+            futures.add(call.exceptionally(e -> {
+                if (!call.isCancelled()) {
+                    log.warn("批量抓取失败: {}, 错误: {}", url, e.getMessage());
+                }
+                return null;
+            }));
+        }
+
+        CompletableFuture<List<ViewResponse>> batch = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .completeOnTimeout(null, deadlineMillis, TimeUnit.MILLISECONDS)
+                .thenApply(v -> {
+                    List<ViewResponse> results = new ArrayList<>();
+                    int timedOut = 0;
+                    for (int i = 0; i < futures.size(); i++) {
+                        CompletableFuture<ViewResponse> future = futures.get(i);
+                        if (future.isDone()) {
+                            results.add(future.join());
+                        } else {
+                            // 超过截止时间：取消请求，不再占用 gRPC 调用
+                            calls.get(i).cancel(true);
+                            results.add(null);
+                            timedOut++;
+                        }
+                    }
+                    long successCount = results.stream().filter(r -> r != null).count();
+                    log.info("批量异步抓取完成: 总数={}, 成功={}, 超时取消={}, 失败={}",
+                            urls.size(), successCount, timedOut, urls.size() - successCount - timedOut);
+                    return results;
+                });
+        // 调用方取消整批时取消所有请求
+        batch.whenComplete((r, e) -> {
+            if (batch.isCancelled()) {
+                calls.forEach(call -> call.cancel(true));
+            }
+        });
+        return batch;
+    }
+
     @PreDestroy
     public void shutdown() {
         if (channel != null && !channel.isShutdown()) {
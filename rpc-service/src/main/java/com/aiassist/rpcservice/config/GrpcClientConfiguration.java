@@ -0,0 +1,46 @@
+package com.aiassist.rpcservice.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * gRPC 客户端公共配置
+ * <p>
+ * 提供独立的回调线程池，用作 ManagedChannel 的 executor 以及 Future 监听器的执行器，
+ * 避免在 gRPC 网络事件循环线程上直接执行回调（Runnable::run）。
+ * <p>
+ * 配置说明：
+ * - grpc.client.callback-threads: 回调线程数，默认 CPU 核数 * 2
+ */
+@Slf4j
+@Configuration
+public class GrpcClientConfiguration {
+
+    @Value("${grpc.client.callback-threads:0}")
+    private int callbackThreads;
+
+    @Bean(name = "grpcCallbackExecutor", destroyMethod = "shutdown")
+    public ExecutorService grpcCallbackExecutor() {
+        int threads = callbackThreads > 0 ? callbackThreads : Runtime.getRuntime().availableProcessors() * 2;
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "grpc-callback-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        log.info("gRPC 回调线程池初始化完成，线程数: {}", threads);
+        return executor;
+    }
+}
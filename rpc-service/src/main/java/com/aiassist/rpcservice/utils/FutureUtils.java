@@ -0,0 +1,29 @@
+package com.aiassist.rpcservice.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * CompletableFuture 工具类
+ */
+public class FutureUtils {
+
+    private FutureUtils() {
+    }
+
+    /**
+     * 下游 Future 被取消时取消上游；CompletableFuture 的取消不会沿 thenApply 等依赖链向上传递
+     *
+     * @param downstream 返回给调用方的 Future
+     * @param upstream   真正执行请求的 Future
+     * @return downstream
+     */
+    public static <T> CompletableFuture<T> cancelOnCancel(CompletableFuture<T> downstream, Future<?> upstream) {
+        downstream.whenComplete((r, e) -> {
+            if (downstream.isCancelled()) {
+                upstream.cancel(true);
+            }
+        });
+        return downstream;
+    }
+}
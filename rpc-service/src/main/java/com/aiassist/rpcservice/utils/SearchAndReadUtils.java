@@ -0,0 +1,271 @@
+package com.aiassist.rpcservice.utils;
+
+import com.aiassist.rpcservice.client.SearchServiceClient;
+import com.aiassist.rpcservice.client.SelectolaxViewerClient;
+import com.rpc.service.web.searcher.searxng.SearchResultItem;
+import com.rpc.service.web.viewer.selectolax.ViewResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 搜索并阅读 组合工具类
+ * <p>
+ * 流程：搜索 -> 取前 top-k 个 URL 并发抓取（全局截止时间） -> 按关键词抽取相关段落 -> 打包为一个结果
+ * <p>
+ * 这样模型一次工具调用即可拿到搜索结果的正文，省去 N 次 get_web_content 往返。
+ * 抓取超时或失败的网页退化为搜索摘要，不影响整体返回。
+ * 全程异步，调用方可有界等待并在对话取消时取消请求。
+ */
+@Slf4j
+@Component
+public class SearchAndReadUtils {
+
+    @Autowired
+    private SearchServiceClient searchServiceClient;
+
+    @Autowired
+    private SelectolaxViewerClient selectolaxViewerClient;
+
+    /**
+     * 并发抓取的网页数量
+     */
+    @Value("${grpc.search-read.top-k:3}")
+    private int topK;
+
+    /**
+     * 单个网页抓取超时（秒）
+     */
+    @Value("${grpc.search-read.page-timeout-seconds:8}")
+    private int pageTimeoutSeconds;
+
+    /**
+     * 整批抓取的全局截止时间（毫秒）
+     */
+    @Value("${grpc.search-read.deadline-millis:10000}")
+    private long deadlineMillis;
+
+    /**
+     * 每个网页保留的最大字符数
+     */
+    @Value("${grpc.search-read.page-char-budget:1500}")
+    private int pageCharBudget;
+
+    /**
+     * 段落最小长度，过短的行会与后续行合并
+     */
+    private static final int MIN_PASSAGE_LENGTH = 80;
+
+    /**
+     * 段落分隔符
+     */
+    private static final String PASSAGE_SEPARATOR = " ... ";
+
+    /**
+     * 段落截断时追加的省略号
+     */
+    private static final String ELLIPSIS = "...";
+
+    /**
+     * 异步搜索并阅读前 top-k 个结果，不阻塞调用线程
+     * <p>
+     * 取消返回的 Future 会取消当前阶段的请求（搜索或网页抓取）；搜索失败时以异常完成，网页抓取失败时退化为搜索摘要
+     *
+     * @param keyWord 搜索关键字
+     * @return 打包结果（每个来源包含标题、URL、相关段落）
+     */
+    public CompletableFuture<String> searchAndReadAsync(String keyWord) {
+        log.info("SearchAndReadUtils 工具类, 异步搜索关键字: {}", keyWord);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        // 当前进行中的阶段，取消时一并取消
+        AtomicReference<Future<?>> stage = new AtomicReference<>();
+
+        CompletableFuture<List<SearchResultItem>> search = searchServiceClient.searchAsync(keyWord);
+        stage.set(search);
+        search.whenComplete((results, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (results == null || results.isEmpty()) {
+                result.complete("未找到任何搜索结果。");
+                return;
+            }
+            List<SearchResultItem> selected = selectTopK(results);
+            List<String> urls = selected.stream().map(SearchResultItem::getUrl).toList();
+            CompletableFuture<List<ViewResponse>> pages =
+                    selectolaxViewerClient.viewWebPagesBatch(urls, pageTimeoutSeconds, deadlineMillis);
+            stage.set(pages);
+            if (result.isDone()) {
+                pages.cancel(true);
+                return;
+            }
+            pages.whenComplete((list, ex) -> {
+                if (ex != null) {
+                    log.warn("批量抓取异常，退化为搜索摘要: {}", ex.getMessage());
+                    list = Collections.nCopies(urls.size(), null);
+                }
+                result.complete(format(keyWord, selected, list));
+            });
+        });
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                stage.get().cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 取前 top-k 个不重复的 http(s) 链接
+     */
+    private List<SearchResultItem> selectTopK(List<SearchResultItem> results) {
+        List<SearchResultItem> selected = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (SearchResultItem item : results) {
+            String url = item.getUrl();
+            if (url.startsWith("http") && seen.add(url)) {
+                selected.add(item);
+            }
+            if (selected.size() >= topK) {
+                break;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 打包结果，与 selected 一一对应的 pages 中为 null 的位置退化为搜索摘要
+     */
+    private String format(String keyWord, List<SearchResultItem> selected, List<ViewResponse> pages) {
+        List<String> terms = extractTerms(keyWord);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < selected.size(); i++) {
+            SearchResultItem item = selected.get(i);
+            ViewResponse page = pages.get(i);
+            sb.append("[").append(i + 1).append("] ").append(item.getTitle()).append("\n");
+            sb.append("URL: ").append(item.getUrl()).append("\n");
+            if (page != null && page.getErrorMessage().isEmpty() && !page.getTextContent().isBlank()) {
+                sb.append("内容: ").append(extractPassages(page.getTextContent(), terms, pageCharBudget)).append("\n");
+            } else {
+                sb.append("摘要(网页未能及时抓取): ").append(item.getContent()).append("\n");
+            }
+            sb.append("---\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 从正文中抽取与关键词最相关的段落，按原文顺序拼接，总长度（含段落分隔符与截断省略号）不超过 budget
+     */
+    static String extractPassages(String text, List<String> terms, int budget) {
+        List<String> passages = splitPassages(text);
+        if (passages.isEmpty()) {
+            return "";
+        }
+
+        // 按得分倒序选取段落下标
+        Integer[] order = new Integer[passages.size()];
+        int[] scores = new int[passages.size()];
+        for (int i = 0; i < passages.size(); i++) {
+            order[i] = i;
+            scores[i] = score(passages.get(i), terms);
+        }
+        Arrays.sort(order, (a, b) -> scores[b] != scores[a] ? scores[b] - scores[a] : a - b);
+
+        TreeMap<Integer, String> picked = new TreeMap<>();
+        int used = 0;
+        for (Integer idx : order) {
+            // 没有任何命中时，仅保留开头部分
+            if (scores[idx] == 0 && !picked.isEmpty()) {
+                break;
+            }
+            int remain = budget - used - (picked.isEmpty() ? 0 : PASSAGE_SEPARATOR.length());
+            String p = passages.get(idx);
+            if (p.length() > remain) {
+                // 省略号计入预算，放不下省略号之外的任何内容时停止
+                int cut = remain - ELLIPSIS.length();
+                if (cut > 0 && Character.isHighSurrogate(p.charAt(cut - 1))) {
+                    cut--;
+                }
+                if (cut <= 0) {
+                    break;
+                }
+                p = p.substring(0, cut) + ELLIPSIS;
+            }
+            picked.put(idx, p);
+            used += p.length() + (picked.size() > 1 ? PASSAGE_SEPARATOR.length() : 0);
+            if (used >= budget) {
+                break;
+            }
+        }
+        return String.join(PASSAGE_SEPARATOR, picked.values());
+    }
+
+    /**
+     * 按换行切分段落，过短的行与后续合并
+     */
+    private static List<String> splitPassages(String text) {
+        List<String> passages = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : text.split("\\n+")) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (current.length() > 0) {
+                current.append(' ');
+            }
+            current.append(trimmed);
+            if (current.length() >= MIN_PASSAGE_LENGTH) {
+                passages.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) {
+            passages.add(current.toString());
+        }
+        return passages;
+    }
+
+    /**
+     * 关键词切分：按空白/标点切分；中文片段再拆为二元组，提高命中率
+     */
+    private static List<String> extractTerms(String keyWord) {
+        List<String> terms = new ArrayList<>();
+        for (String token : keyWord.toLowerCase(Locale.ROOT).split("[\\s\\p{Punct}，。？！、；：]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            boolean cjk = token.codePoints().anyMatch(c -> Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN);
+            if (cjk && token.length() > 2) {
+                for (int i = 0; i + 2 <= token.length(); i++) {
+                    terms.add(token.substring(i, i + 2));
+                }
+            } else {
+                terms.add(token);
+            }
+        }
+        return terms;
+    }
+
+    private static int score(String passage, List<String> terms) {
+        String lower = passage.toLowerCase(Locale.ROOT);
+        int score = 0;
+        for (String term : terms) {
+            int from = 0;
+            int idx;
+            while ((idx = lower.indexOf(term, from)) >= 0) {
+                score++;
+                from = idx + term.length();
+            }
+        }
+        return score;
+    }
+}
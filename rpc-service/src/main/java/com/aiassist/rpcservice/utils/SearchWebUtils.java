@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Component
@@ -31,6 +32,18 @@ public class SearchWebUtils {
         return SearchResponseFormatter.toFormattedStringDirect(results);
     }
 
+    /**
+     * 异步搜索网页并返回格式化字符串，不阻塞调用线程
+     *
+     * @param keyWord 搜索关键字
+     * @return 格式化后的搜索结果字符串
+     */
+    public CompletableFuture<String> searchWebFormattedAsync(String keyWord) {
+        log.info("SearchWebUtils 工具类, 异步搜索关键字: {}", keyWord);
+        CompletableFuture<List<SearchResultItem>> search = searchServiceClient.searchAsync(keyWord);
+        return FutureUtils.cancelOnCancel(search.thenApply(SearchResponseFormatter::toFormattedStringDirect), search);
+    }
+
     /**
      * 打印搜索结果的辅助方法
      *
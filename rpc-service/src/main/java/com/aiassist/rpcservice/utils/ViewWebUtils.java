@@ -6,6 +6,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Slf4j
 @Component
 public class ViewWebUtils {
@@ -27,6 +29,22 @@ public class ViewWebUtils {
         return ViewResponseFormatter.toSimpleString(viewResponse);
     }
 
+    /**
+     * 异步抓取网页内容 - 返回简洁格式的字符串，不阻塞调用线程
+     *
+     * @param url            要抓取的网页URL
+     * @param timeoutSeconds 超时时间（秒）
+     * @return 简洁格式的网页内容响应
+     */
+    public CompletableFuture<String> getWebContentAsync(String url, int timeoutSeconds) {
+        CompletableFuture<ViewResponse> view =
+                selectolaxViewerClient.viewWebPageAsync(url, timeoutSeconds, null, false, false, true, null, null);
+        return FutureUtils.cancelOnCancel(view.thenApply(viewResponse -> {
+            log.info("抓取内容长度: {}", viewResponse.getTextContent().length());
+            return ViewResponseFormatter.toSimpleString(viewResponse);
+        }), view);
+    }
+
     /**
      * 抓取网页内容 - 返回详细格式的字符串
      *